@@ -0,0 +1,67 @@
+# REST vs gRPC payment creation load comparison
+# Requires ghz (https://ghz.sh) and hey (https://github.com/rakyll/hey) on the PATH, and the app
+# started with --transactiq.grpc.enabled=true --transactiq.grpc.plaintext=true
+param(
+    [Parameter(Mandatory = $true)][string]$Email,
+    [Parameter(Mandatory = $true)][string]$Password,
+    [Parameter(Mandatory = $true)][long]$FromAccountId,
+    [Parameter(Mandatory = $true)][long]$ToAccountId,
+    [int]$Requests = 5000,
+    [int]$Concurrency = 50,
+    [string]$Amount = "0.01"
+)
+
+$baseUrl = "http://localhost:8080"
+$grpcAddress = "localhost:9090"
+
+Write-Host "=== REST vs gRPC Payment Load Comparison ===" -ForegroundColor Cyan
+Write-Host ""
+
+foreach ($tool in @("ghz", "hey")) {
+    if (-not (Get-Command $tool -ErrorAction SilentlyContinue)) {
+        Write-Host "✗ $tool is not installed" -ForegroundColor Red
+        exit 1
+    }
+}
+
+# Login once; both runs use the same token
+Write-Host "Logging in as $Email..." -ForegroundColor Yellow
+try {
+    $login = Invoke-RestMethod -Uri "$baseUrl/api/auth/login" -Method POST -ContentType "application/json" `
+        -Body (@{ email = $Email; password = $Password } | ConvertTo-Json) -ErrorAction Stop
+    $token = $login.token
+    Write-Host "✓ Logged in" -ForegroundColor Green
+} catch {
+    Write-Host "✗ Login failed: $($_.Exception.Message)" -ForegroundColor Red
+    Write-Host "  Please start the backend first with: .\mvnw.cmd spring-boot:run" -ForegroundColor Yellow
+    exit 1
+}
+Write-Host ""
+
+Write-Host "Each run creates $Requests payments of $Amount from account $FromAccountId to $ToAccountId" -ForegroundColor Gray
+Write-Host "with $Concurrency concurrent clients. Make sure the from account can cover both runs." -ForegroundColor Gray
+Write-Host ""
+
+# REST: POST /api/payments with a JSON body
+$restBody = Join-Path $env:TEMP "transactiq-rest-payment.json"
+@{ fromAccountId = $FromAccountId; toAccountId = $ToAccountId; amount = $Amount; description = "load test" } |
+    ConvertTo-Json | Set-Content -Path $restBody -Encoding ascii
+
+Write-Host "=== REST: POST /api/payments ===" -ForegroundColor Cyan
+hey -n $Requests -c $Concurrency -m POST -T "application/json" `
+    -H "Authorization: Bearer $token" -D $restBody "$baseUrl/api/payments"
+Write-Host ""
+
+# gRPC: PaymentGateway/CreatePayment over one HTTP/2 connection
+$grpcBody = @{ from_account_id = $FromAccountId; to_account_id = $ToAccountId; amount = $Amount; description = "load test" } |
+    ConvertTo-Json -Compress
+
+Write-Host "=== gRPC: transactiq.payments.v1.PaymentGateway/CreatePayment ===" -ForegroundColor Cyan
+ghz --insecure --proto "src/main/proto/payment_gateway.proto" `
+    --call "transactiq.payments.v1.PaymentGateway.CreatePayment" `
+    --metadata "{`"authorization`":`"Bearer $token`"}" `
+    --data $grpcBody -n $Requests -c $Concurrency $grpcAddress
+Write-Host ""
+
+Remove-Item $restBody -ErrorAction SilentlyContinue
+Write-Host "Compare Requests/sec and the latency distributions of the two runs." -ForegroundColor Yellow
@@ -26,7 +26,7 @@ public class CorsConfig implements WebMvcConfigurer {
                 .allowedOrigins("http://localhost:5173")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("Authorization", "Content-Type")
-                .exposedHeaders("Authorization")
+                .exposedHeaders("Authorization", "X-Change-Token")
                 .allowCredentials(true);
     }
 }
@@ -0,0 +1,26 @@
+package com.transactiq.backend.config;
+
+import com.transactiq.backend.service.CounterpartyIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the per-user counterparty summaries from recent payments on application startup
+ */
+@Component
+@RequiredArgsConstructor
+public class CounterpartyIndexInitializer implements CommandLineRunner {
+    
+    private final CounterpartyIndex counterpartyIndex;
+    
+    @Override
+    public void run(String... args) {
+        try {
+            counterpartyIndex.warmUp();
+        } catch (Exception e) {
+            System.err.println("Failed to build counterparty index: " + e.getMessage());
+            // Don't fail startup - the transfer form falls back to account search
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.transactiq.backend.config;
+
+import com.transactiq.backend.service.CurrencyRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Seeds the currencies table if empty and loads the currency registry on application startup
+ * Runs before ExchangeRateInitializer, which seeds rates from the registry
+ */
+@Component
+@Order(0)
+@RequiredArgsConstructor
+public class CurrencyRegistryInitializer implements CommandLineRunner {
+    
+    private final CurrencyRegistry currencyRegistry;
+    
+    @Override
+    public void run(String... args) {
+        try {
+            currencyRegistry.seedDefaults();
+            currencyRegistry.reload();
+        } catch (Exception e) {
+            System.err.println("Failed to load currency registry: " + e.getMessage());
+            // Don't fail startup - the registry retries loading on first use
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.transactiq.backend.config;
 
+import com.transactiq.backend.service.ExchangeRateHistory;
 import com.transactiq.backend.service.ExchangeRateService;
+import com.transactiq.backend.service.ExchangeRateStore;
 import lombok.RequiredArgsConstructor;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 /**
@@ -10,10 +13,13 @@ import org.springframework.stereotype.Component;
  * This ensures exchange rates are available for currency conversion
  */
 @Component
+@Order(1)
 @RequiredArgsConstructor
 public class ExchangeRateInitializer implements CommandLineRunner {
     
     private final ExchangeRateService exchangeRateService;
+    private final ExchangeRateStore exchangeRateStore;
+    private final ExchangeRateHistory exchangeRateHistory;
     
     @Override
     public void run(String... args) {
@@ -24,6 +30,18 @@ public class ExchangeRateInitializer implements CommandLineRunner {
             System.err.println("Failed to initialize exchange rates: " + e.getMessage());
             // Don't fail startup if rates already exist
         }
+        try {
+            exchangeRateStore.reload();
+        } catch (Exception e) {
+            System.err.println("Failed to load exchange rate snapshot: " + e.getMessage());
+            // Snapshot is loaded lazily on first lookup instead
+        }
+        try {
+            exchangeRateHistory.warmUp();
+        } catch (Exception e) {
+            System.err.println("Failed to load exchange rate history: " + e.getMessage());
+            // Don't fail startup - only as-of lookups are affected
+        }
     }
 }
 
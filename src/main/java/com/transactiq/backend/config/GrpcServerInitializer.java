@@ -0,0 +1,26 @@
+package com.transactiq.backend.config;
+
+import com.transactiq.backend.grpc.GrpcServer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Starts the gRPC payment gateway on application startup
+ */
+@Component
+@RequiredArgsConstructor
+public class GrpcServerInitializer implements CommandLineRunner {
+    
+    private final GrpcServer grpcServer;
+    
+    @Override
+    public void run(String... args) {
+        try {
+            grpcServer.start();
+        } catch (Exception e) {
+            System.err.println("Failed to start gRPC payment gateway: " + e.getMessage());
+            // Don't fail startup - the REST API does not depend on it
+        }
+    }
+}
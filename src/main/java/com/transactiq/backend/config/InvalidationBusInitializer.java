@@ -0,0 +1,26 @@
+package com.transactiq.backend.config;
+
+import com.transactiq.backend.service.InvalidationBus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Starts listening for other instances' cache invalidations on application startup
+ */
+@Component
+@RequiredArgsConstructor
+public class InvalidationBusInitializer implements CommandLineRunner {
+    
+    private final InvalidationBus invalidationBus;
+    
+    @Override
+    public void run(String... args) {
+        try {
+            invalidationBus.start();
+        } catch (Exception e) {
+            System.err.println("Failed to start invalidation bus: " + e.getMessage());
+            // Don't fail startup - this instance only serves its own changes until restarted
+        }
+    }
+}
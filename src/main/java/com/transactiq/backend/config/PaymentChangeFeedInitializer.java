@@ -0,0 +1,26 @@
+package com.transactiq.backend.config;
+
+import com.transactiq.backend.service.PaymentChangeFeed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Installs the payments change_seq trigger on application startup
+ */
+@Component
+@RequiredArgsConstructor
+public class PaymentChangeFeedInitializer implements CommandLineRunner {
+    
+    private final PaymentChangeFeed paymentChangeFeed;
+    
+    @Override
+    public void run(String... args) {
+        try {
+            paymentChangeFeed.install();
+        } catch (Exception e) {
+            System.err.println("Failed to install payment change feed: " + e.getMessage());
+            // Don't fail startup - only /api/payments/changes depends on it
+        }
+    }
+}
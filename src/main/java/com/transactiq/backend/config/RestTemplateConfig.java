@@ -1,24 +1,43 @@
 package com.transactiq.backend.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
 /**
  * Configuration for RestTemplate bean
- * Used for making HTTP requests to external services (n8n webhooks)
+ * Used for making HTTP requests to external services (n8n webhooks).
+ * Backed by one shared java.net.http.HttpClient, which keeps connections alive and reuses them
+ * across requests instead of opening a new connection per webhook.
  */
 @Configuration
 public class RestTemplateConfig {
     
+    @Value("${transactiq.notifications.webhook.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+    
+    @Value("${transactiq.notifications.webhook.read-timeout-ms:10000}")
+    private long readTimeoutMs;
+    
     @Bean
-    public RestTemplate restTemplate() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(5000); // 5 seconds connection timeout
-        factory.setReadTimeout(10000); // 10 seconds read timeout
+    public HttpClient webhookHttpClient() {
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1) // n8n webhooks are plain HTTP/1.1; skips the h2 upgrade attempt
+            .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+    }
+    
+    @Bean
+    public RestTemplate restTemplate(HttpClient webhookHttpClient) {
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(webhookHttpClient);
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
         
         return new RestTemplate(factory);
     }
 }
-
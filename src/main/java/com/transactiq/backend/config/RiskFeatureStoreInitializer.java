@@ -0,0 +1,27 @@
+package com.transactiq.backend.config;
+
+import com.transactiq.backend.service.RiskFeatureStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads the risk feature store on application startup
+ * (snapshot first, then replay of payments written since its watermark)
+ */
+@Component
+@RequiredArgsConstructor
+public class RiskFeatureStoreInitializer implements CommandLineRunner {
+    
+    private final RiskFeatureStore riskFeatureStore;
+    
+    @Override
+    public void run(String... args) {
+        try {
+            riskFeatureStore.warmUp();
+        } catch (Exception e) {
+            System.err.println("Failed to load risk feature store: " + e.getMessage());
+            // Don't fail startup - history risk is skipped until the store is ready
+        }
+    }
+}
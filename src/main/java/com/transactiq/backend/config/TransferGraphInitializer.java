@@ -0,0 +1,26 @@
+package com.transactiq.backend.config;
+
+import com.transactiq.backend.service.TransferGraph;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the recent transfer graph from approved payments on application startup
+ */
+@Component
+@RequiredArgsConstructor
+public class TransferGraphInitializer implements CommandLineRunner {
+    
+    private final TransferGraph transferGraph;
+    
+    @Override
+    public void run(String... args) {
+        try {
+            transferGraph.warmUp();
+        } catch (Exception e) {
+            System.err.println("Failed to build transfer graph: " + e.getMessage());
+            // Don't fail startup - network risk is skipped until the graph is ready
+        }
+    }
+}
@@ -2,11 +2,15 @@ package com.transactiq.backend.controller;
 
 import com.transactiq.backend.entity.Account;
 import com.transactiq.backend.service.AccountService;
+import com.transactiq.backend.service.CounterpartyIndex;
+import com.transactiq.backend.service.CurrencyRegistry;
+import com.transactiq.backend.service.ResourceVersions;
 import com.transactiq.backend.util.SecurityUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
@@ -19,15 +23,22 @@ import java.util.Map;
 public class AccountController {
     
     private final AccountService accountService;
+    private final CurrencyRegistry currencyRegistry;
+    private final CounterpartyIndex counterpartyIndex;
+    private final ResourceVersions resourceVersions;
     
     @GetMapping
-    public ResponseEntity<?> getAccounts() {
+    public ResponseEntity<?> getAccounts(WebRequest webRequest) {
         try {
             Long userId = SecurityUtil.getCurrentUserId();
             if (userId == null) {
                 return ResponseEntity.status(401).body(Map.of("message", "Unauthorized"));
             }
             
+            if (resourceVersions.notModified(webRequest, "accounts", resourceVersions.userEtag(userId))) {
+                return null;
+            }
+            
             List<Account> accounts = accountService.getActiveAccountsByUserId(userId);
             
             // Format response to match API spec
@@ -85,17 +96,18 @@ public class AccountController {
                         .body(Map.of("message", "Invalid account type. Must be: checking, savings, or business"));
             }
             
-            // Validate currency enum
-            String currency = request.get("currency").toString().toUpperCase();
-            if (!currency.equals("USD") && !currency.equals("CAD") && !currency.equals("EUR")) {
+            // Validate currency against the currency registry
+            int currencyIndex = currencyRegistry.activeIndexOf(request.get("currency").toString());
+            if (currencyIndex < 0) {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                        .body(Map.of("message", "Invalid currency. Must be: USD, CAD, or EUR"));
+                        .body(Map.of("message", "Invalid currency. Must be one of: "
+                            + String.join(", ", currencyRegistry.getActiveCodes())));
             }
             
             // Create account entity
             Account account = new Account();
             account.setAccountType(accountType.toUpperCase());
-            account.setCurrency(currency);
+            account.setCurrency(currencyRegistry.code(currencyIndex)); // Canonical interned code
             
             // Set balance if provided, otherwise default to 0
             if (request.containsKey("balance") && request.get("balance") != null) {
@@ -201,6 +213,36 @@ public class AccountController {
         }
     }
     
+    /**
+     * Accounts the current user pays most often and most recently (served from memory)
+     * Optional q filters by account number, name, email or account type
+     */
+    @GetMapping("/counterparties")
+    public ResponseEntity<?> getCounterparties(
+            @RequestParam(required = false) String q,
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            Long userId = SecurityUtil.getCurrentUserId();
+            if (userId == null) {
+                return ResponseEntity.status(401).body(Map.of("message", "Unauthorized"));
+            }
+            
+            CounterpartyIndex.Counterparties counterparties =
+                    counterpartyIndex.lookup(userId, q, Math.max(1, Math.min(limit, 50)));
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("frequent", counterparties.getFrequent().stream().map(this::formatCounterparty).toList());
+            response.put("recent", counterparties.getRecent().stream().map(this::formatCounterparty).toList());
+            response.put("ready", counterparties.isReady());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Failed to fetch counterparties: " + e.getMessage()));
+        }
+    }
+    
     /**
      * Search for external accounts by account number, email, user name, or account type
      * Excludes current user's accounts
@@ -264,5 +306,22 @@ public class AccountController {
                     .body(Map.of("message", "Failed to search accounts: " + e.getMessage()));
         }
     }
+    
+    /**
+     * Same shape as an account search result, plus the payment count estimate
+     */
+    private Map<String, Object> formatCounterparty(CounterpartyIndex.Entry entry) {
+        Map<String, Object> accMap = new HashMap<>();
+        accMap.put("id", entry.getAccountId());
+        accMap.put("accountNumber", entry.getAccountNumber());
+        accMap.put("name", entry.getAccountType() + " Account");
+        accMap.put("type", entry.getAccountType().toLowerCase());
+        accMap.put("currency", entry.getCurrency() != null ? entry.getCurrency() : "USD");
+        accMap.put("userId", entry.getUserId());
+        accMap.put("userName", entry.getUserName());
+        accMap.put("userEmail", entry.getUserEmail());
+        accMap.put("createdAt", entry.getCreatedAt());
+        accMap.put("paymentCount", entry.getCount());
+        return accMap;
+    }
 }
-
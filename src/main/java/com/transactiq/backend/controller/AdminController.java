@@ -2,13 +2,24 @@ package com.transactiq.backend.controller;
 
 import com.transactiq.backend.entity.User;
 import com.transactiq.backend.repository.UserRepository;
+import com.transactiq.backend.service.DuplicatePaymentDetector;
+import com.transactiq.backend.service.InvalidationBus;
+import com.transactiq.backend.service.NotificationDispatcher;
+import com.transactiq.backend.service.ResourceVersions;
+import com.transactiq.backend.service.RiskBacktestService;
+import com.transactiq.backend.service.RiskPolicy;
+import com.transactiq.backend.service.RiskRescoringService;
+import com.transactiq.backend.service.RiskScoreService;
 import com.transactiq.backend.util.RoleUtil;
 import com.transactiq.backend.util.SecurityUtil;
+import com.transactiq.backend.util.SingleFlight;
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +34,14 @@ import java.util.Map;
 public class AdminController {
     
     private final UserRepository userRepository;
+    private final RiskRescoringService riskRescoringService;
+    private final RiskBacktestService riskBacktestService;
+    private final RiskScoreService riskScoreService;
+    private final DuplicatePaymentDetector duplicatePaymentDetector;
+    private final InvalidationBus invalidationBus;
+    private final NotificationDispatcher notificationDispatcher;
+    private final ResourceVersions resourceVersions;
+    private final SingleFlight<String, Map<String, Object>> dashboardFlights = new SingleFlight<>();
     
     /**
      * Get all users (ADMIN only)
@@ -105,6 +124,8 @@ public class AdminController {
                 User.UserRole role = User.UserRole.valueOf(newRole.toUpperCase());
                 user.setRole(role);
                 userRepository.save(user);
+                // Bumps the user directory version here and, on commit, on every other instance
+                resourceVersions.touchUsers();
                 
                 Map<String, Object> response = new HashMap<>();
                 response.put("id", user.getId());
@@ -146,29 +167,9 @@ public class AdminController {
                         .body(Map.of("message", "Only admins can access admin dashboard"));
             }
             
-            // Get all users count
-            long totalUsers = userRepository.count();
-            long activeUsers = userRepository.findAll().stream()
-                    .filter(u -> u.getIsActive() != null && u.getIsActive())
-                    .count();
-            
-            // Get users by role
-            long userCount = userRepository.findAll().stream()
-                    .filter(u -> u.getRole() == User.UserRole.USER)
-                    .count();
-            long checkerCount = userRepository.findAll().stream()
-                    .filter(u -> u.getRole() == User.UserRole.CHECKER)
-                    .count();
-            long adminCount = userRepository.findAll().stream()
-                    .filter(u -> u.getRole() == User.UserRole.ADMIN)
-                    .count();
-            
-            Map<String, Object> dashboard = new HashMap<>();
-            dashboard.put("totalUsers", totalUsers);
-            dashboard.put("activeUsers", activeUsers);
-            dashboard.put("userCount", userCount);
-            dashboard.put("checkerCount", checkerCount);
-            dashboard.put("adminCount", adminCount);
+            // Admins arriving together share one user scan, unless a user changed in between
+            Map<String, Object> dashboard = dashboardFlights.execute(
+                    "admin-dashboard:" + resourceVersions.usersEtag(), this::adminDashboard);
             
             // Note: Payment statistics would be added here if needed
             // For now, admins can use checker dashboard for payment stats
@@ -180,5 +181,175 @@ public class AdminController {
                     .body(Map.of("message", "Failed to fetch admin dashboard: " + e.getMessage()));
         }
     }
+    
+    /**
+     * User counts by status and role, from a single pass over the users table
+     */
+    private Map<String, Object> adminDashboard() {
+        List<User> users = userRepository.findAll();
+        long activeUsers = users.stream()
+                .filter(u -> u.getIsActive() != null && u.getIsActive())
+                .count();
+        
+        // Get users by role
+        long userCount = users.stream()
+                .filter(u -> u.getRole() == User.UserRole.USER)
+                .count();
+        long checkerCount = users.stream()
+                .filter(u -> u.getRole() == User.UserRole.CHECKER)
+                .count();
+        long adminCount = users.stream()
+                .filter(u -> u.getRole() == User.UserRole.ADMIN)
+                .count();
+        
+        Map<String, Object> dashboard = new HashMap<>();
+        dashboard.put("totalUsers", (long) users.size());
+        dashboard.put("activeUsers", activeUsers);
+        dashboard.put("userCount", userCount);
+        dashboard.put("checkerCount", checkerCount);
+        dashboard.put("adminCount", adminCount);
+        dashboard.put("duplicateDetection", duplicatePaymentDetector.getStats());
+        return dashboard;
+    }
+    
+    /**
+     * Re-score all pending payments with the current rules and risk model (ADMIN only)
+     */
+    @PostMapping("/risk/rescore")
+    public ResponseEntity<?> rescorePendingPayments() {
+        try {
+            Long userId = SecurityUtil.getCurrentUserId();
+            if (userId == null) {
+                return ResponseEntity.status(401).body(Map.of("message", "Unauthorized"));
+            }
+            
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            
+            if (!RoleUtil.isAdmin(user)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(Map.of("message", "Only admins can re-score payments"));
+            }
+            
+            return ResponseEntity.ok(riskRescoringService.rescorePendingPayments());
+            
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Failed to re-score payments: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Cluster cache-invalidation bus status and propagation latency on this instance (ADMIN only)
+     */
+    @GetMapping("/cluster/invalidation")
+    public ResponseEntity<?> getInvalidationStats() {
+        try {
+            Long userId = SecurityUtil.getCurrentUserId();
+            if (userId == null) {
+                return ResponseEntity.status(401).body(Map.of("message", "Unauthorized"));
+            }
+            
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            
+            if (!RoleUtil.isAdmin(user)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(Map.of("message", "Only admins can view cluster status"));
+            }
+            
+            return ResponseEntity.ok(invalidationBus.getStats());
+            
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Failed to fetch invalidation stats: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Webhook notification outbox backlog and delivery stats (ADMIN only)
+     */
+    @GetMapping("/notifications/outbox")
+    public ResponseEntity<?> getOutboxStats() {
+        try {
+            Long userId = SecurityUtil.getCurrentUserId();
+            if (userId == null) {
+                return ResponseEntity.status(401).body(Map.of("message", "Unauthorized"));
+            }
+            
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            
+            if (!RoleUtil.isAdmin(user)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(Map.of("message", "Only admins can view notification stats"));
+            }
+            
+            return ResponseEntity.ok(notificationDispatcher.getStats());
+            
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Failed to fetch notification stats: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Replay all historical payments against candidate risk thresholds and compare
+     * with the current policy (ADMIN only). Omitted thresholds keep their current value.
+     */
+    @PostMapping("/risk/backtest")
+    public ResponseEntity<?> backtestRiskPolicy(@RequestBody(required = false) RiskBacktestRequest request) {
+        try {
+            Long userId = SecurityUtil.getCurrentUserId();
+            if (userId == null) {
+                return ResponseEntity.status(401).body(Map.of("message", "Unauthorized"));
+            }
+            
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            
+            if (!RoleUtil.isAdmin(user)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(Map.of("message", "Only admins can backtest risk policies"));
+            }
+            
+            if (request == null) {
+                request = new RiskBacktestRequest();
+            }
+            
+            RiskPolicy candidate = riskScoreService.getCurrentPolicy().withOverrides(
+                    request.getAutoApproveMaxRisk(), request.getAutoApproveMaxAmount(),
+                    request.getVeryLowRiskMax(), request.getVeryLowRiskMaxAmount(),
+                    request.getLowRiskMax(), request.getMediumRiskMax(), request.getHighRiskMax());
+            
+            if (candidate.getLowRiskMax().compareTo(candidate.getMediumRiskMax()) > 0
+                    || candidate.getMediumRiskMax().compareTo(candidate.getHighRiskMax()) > 0) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("message", "Risk level thresholds must be ascending (low <= medium <= high)"));
+            }
+            
+            int partitions = request.getPartitions() != null
+                    ? request.getPartitions() : Runtime.getRuntime().availableProcessors();
+            return ResponseEntity.ok(riskBacktestService.backtest(candidate, partitions));
+            
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Failed to backtest risk policy: " + e.getMessage()));
+        }
+    }
+    
+    @Data
+    static class RiskBacktestRequest {
+        private BigDecimal autoApproveMaxRisk;
+        private BigDecimal autoApproveMaxAmount;
+        private BigDecimal veryLowRiskMax;
+        private BigDecimal veryLowRiskMaxAmount;
+        private BigDecimal lowRiskMax;
+        private BigDecimal mediumRiskMax;
+        private BigDecimal highRiskMax;
+        private Integer partitions;
+    }
 }
-
@@ -2,6 +2,7 @@ package com.transactiq.backend.controller;
 
 import com.transactiq.backend.entity.User;
 import com.transactiq.backend.repository.UserRepository;
+import com.transactiq.backend.service.ResourceVersions;
 import com.transactiq.backend.util.JwtUtil;
 import com.transactiq.backend.util.SecurityUtil;
 import lombok.Data;
@@ -23,6 +24,7 @@ public class AuthController {
     private final UserRepository userRepository;
     private final JwtUtil jwtUtil;
     private final PasswordEncoder passwordEncoder;
+    private final ResourceVersions resourceVersions;
     
     @PostMapping("/register")
     public ResponseEntity<Map<String, Object>> register(@RequestBody RegisterRequest request) {
@@ -78,6 +80,7 @@ public class AuthController {
             
             // Save user
             User savedUser = userRepository.save(user);
+            resourceVersions.touchUsers();
             
             // Generate JWT token
             String token = jwtUtil.generateToken(savedUser.getId(), savedUser.getEmail());
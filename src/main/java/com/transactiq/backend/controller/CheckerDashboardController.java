@@ -3,13 +3,21 @@ package com.transactiq.backend.controller;
 import com.transactiq.backend.entity.Payment;
 import com.transactiq.backend.entity.User;
 import com.transactiq.backend.repository.UserRepository;
+import com.transactiq.backend.service.ApprovalQueueStream;
 import com.transactiq.backend.service.PaymentService;
+import com.transactiq.backend.service.ResourceVersions;
+import com.transactiq.backend.util.JwtUtil;
 import com.transactiq.backend.util.RoleUtil;
 import com.transactiq.backend.util.SecurityUtil;
+import com.transactiq.backend.util.SingleFlight;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -27,6 +35,13 @@ public class CheckerDashboardController {
     
     private final PaymentService paymentService;
     private final UserRepository userRepository;
+    private final ApprovalQueueStream approvalQueueStream;
+    private final ResourceVersions resourceVersions;
+    private final JwtUtil jwtUtil;
+    private final SingleFlight<String, Map<String, Object>> dashboardFlights = new SingleFlight<>();
+    
+    @Value("${transactiq.checker.stream.token-ttl-ms:60000}")
+    private long streamTokenTtlMs;
     
     /**
      * Get approval queue for checkers
@@ -49,87 +64,7 @@ public class CheckerDashboardController {
                         .body(Map.of("message", "Only checkers and admins can access approval queue"));
             }
             
-            // Get all pending payments
-            List<Payment> allPayments = paymentService.getAllPayments();
-            List<Payment> pendingPayments = allPayments.stream()
-                    .filter(p -> p.getStatus() == Payment.PaymentStatus.PENDING)
-                    .sorted((p1, p2) -> {
-                        // Sort by risk score (highest first), then by creation date (oldest first)
-                        java.math.BigDecimal risk1 = p1.getRiskScore() != null ? p1.getRiskScore() : java.math.BigDecimal.ZERO;
-                        java.math.BigDecimal risk2 = p2.getRiskScore() != null ? p2.getRiskScore() : java.math.BigDecimal.ZERO;
-                        int riskCompare = risk2.compareTo(risk1);
-                        if (riskCompare != 0) {
-                            return riskCompare;
-                        }
-                        return p1.getCreatedAt().compareTo(p2.getCreatedAt());
-                    })
-                    .collect(Collectors.toList());
-            
-            // Format response with risk information
-            List<Map<String, Object>> formattedPayments = pendingPayments.stream()
-                    .map(payment -> {
-                        Map<String, Object> payMap = new HashMap<>();
-                        payMap.put("id", payment.getId());
-                        payMap.put("transactionId", payment.getTransactionId());
-                        payMap.put("amount", payment.getAmount());
-                        payMap.put("currency", payment.getCurrency());
-                        payMap.put("description", payment.getDescription());
-                        payMap.put("riskScore", payment.getRiskScore() != null ? payment.getRiskScore() : 0);
-                        payMap.put("riskLevel", payment.getRiskLevel() != null ? payment.getRiskLevel().name() : "LOW");
-                        payMap.put("transferType", payment.getTransferType() != null ? payment.getTransferType().name() : "INTERNAL");
-                        payMap.put("createdAt", payment.getCreatedAt());
-                        
-                        // From account info
-                        Map<String, Object> fromAccount = new HashMap<>();
-                        fromAccount.put("id", payment.getFromAccount().getId());
-                        fromAccount.put("accountNumber", maskAccountNumber(payment.getFromAccount().getAccountNumber()));
-                        fromAccount.put("currency", payment.getFromAccount().getCurrency());
-                        fromAccount.put("balance", payment.getFromAccount().getBalance());
-                        fromAccount.put("userName", getUserName(payment.getFromAccount().getUser()));
-                        fromAccount.put("userEmail", payment.getFromAccount().getUser().getEmail());
-                        payMap.put("fromAccount", fromAccount);
-                        
-                        // To account info
-                        Map<String, Object> toAccount = new HashMap<>();
-                        toAccount.put("id", payment.getToAccount().getId());
-                        toAccount.put("accountNumber", maskAccountNumber(payment.getToAccount().getAccountNumber()));
-                        toAccount.put("currency", payment.getToAccount().getCurrency());
-                        toAccount.put("userName", getUserName(payment.getToAccount().getUser()));
-                        toAccount.put("userEmail", payment.getToAccount().getUser().getEmail());
-                        payMap.put("toAccount", toAccount);
-                        
-                        // Conversion info if applicable
-                        if (payment.getExchangeRate() != null && payment.getExchangeRate().compareTo(java.math.BigDecimal.ONE) != 0) {
-                            Map<String, Object> conversion = new HashMap<>();
-                            conversion.put("exchangeRate", payment.getExchangeRate());
-                            conversion.put("originalAmount", payment.getAmount());
-                            conversion.put("originalCurrency", payment.getCurrency());
-                            conversion.put("convertedAmount", payment.getConvertedAmount());
-                            conversion.put("convertedCurrency", payment.getConvertedCurrency());
-                            payMap.put("conversion", conversion);
-                        }
-                        
-                        return payMap;
-                    })
-                    .collect(Collectors.toList());
-            
-            // Build dashboard response
-            Map<String, Object> dashboard = new HashMap<>();
-            dashboard.put("pendingPayments", formattedPayments);
-            dashboard.put("totalPending", pendingPayments.size());
-            dashboard.put("highRiskCount", pendingPayments.stream()
-                    .filter(p -> p.getRiskLevel() != null && 
-                            (p.getRiskLevel() == Payment.RiskLevel.HIGH || 
-                             p.getRiskLevel() == Payment.RiskLevel.VERY_HIGH))
-                    .count());
-            dashboard.put("mediumRiskCount", pendingPayments.stream()
-                    .filter(p -> p.getRiskLevel() != null && p.getRiskLevel() == Payment.RiskLevel.MEDIUM)
-                    .count());
-            dashboard.put("lowRiskCount", pendingPayments.stream()
-                    .filter(p -> p.getRiskLevel() == null || p.getRiskLevel() == Payment.RiskLevel.LOW)
-                    .count());
-            
-            return ResponseEntity.ok(dashboard);
+            return ResponseEntity.ok(approvalQueue(paymentService.getAllPayments()));
             
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -137,11 +72,53 @@ public class CheckerDashboardController {
         }
     }
     
+    /**
+     * Pending payments sorted by risk score (highest first), with risk-bucket counts
+     */
+    private Map<String, Object> approvalQueue(List<Payment> allPayments) {
+        List<Payment> pendingPayments = allPayments.stream()
+                .filter(p -> p.getStatus() == Payment.PaymentStatus.PENDING)
+                .sorted((p1, p2) -> {
+                    // Sort by risk score (highest first), then by creation date (oldest first)
+                    java.math.BigDecimal risk1 = p1.getRiskScore() != null ? p1.getRiskScore() : java.math.BigDecimal.ZERO;
+                    java.math.BigDecimal risk2 = p2.getRiskScore() != null ? p2.getRiskScore() : java.math.BigDecimal.ZERO;
+                    int riskCompare = risk2.compareTo(risk1);
+                    if (riskCompare != 0) {
+                        return riskCompare;
+                    }
+                    return p1.getCreatedAt().compareTo(p2.getCreatedAt());
+                })
+                .collect(Collectors.toList());
+        
+        // Format response with risk information (same items the approval queue stream pushes)
+        List<Map<String, Object>> formattedPayments = pendingPayments.stream()
+                .map(ApprovalQueueStream::toQueueItem)
+                .collect(Collectors.toList());
+        
+        // Build dashboard response
+        Map<String, Object> dashboard = new HashMap<>();
+        dashboard.put("pendingPayments", formattedPayments);
+        dashboard.put("totalPending", pendingPayments.size());
+        dashboard.put("highRiskCount", pendingPayments.stream()
+                .filter(p -> p.getRiskLevel() != null && 
+                        (p.getRiskLevel() == Payment.RiskLevel.HIGH || 
+                         p.getRiskLevel() == Payment.RiskLevel.VERY_HIGH))
+                .count());
+        dashboard.put("mediumRiskCount", pendingPayments.stream()
+                .filter(p -> p.getRiskLevel() != null && p.getRiskLevel() == Payment.RiskLevel.MEDIUM)
+                .count());
+        dashboard.put("lowRiskCount", pendingPayments.stream()
+                .filter(p -> p.getRiskLevel() == null || p.getRiskLevel() == Payment.RiskLevel.LOW)
+                .count());
+        
+        return dashboard;
+    }
+    
     /**
      * Get risk statistics for checker dashboard
      */
     @GetMapping("/risk-statistics")
-    public ResponseEntity<?> getRiskStatistics() {
+    public ResponseEntity<?> getRiskStatistics(WebRequest webRequest) {
         try {
             Long userId = SecurityUtil.getCurrentUserId();
             if (userId == null) {
@@ -156,55 +133,11 @@ public class CheckerDashboardController {
                         .body(Map.of("message", "Only checkers and admins can access risk statistics"));
             }
             
-            List<Payment> allPayments = paymentService.getAllPayments();
-            List<Payment> pendingPayments = allPayments.stream()
-                    .filter(p -> p.getStatus() == Payment.PaymentStatus.PENDING)
-                    .collect(Collectors.toList());
-            
-            // Calculate statistics
-            Map<String, Object> stats = new HashMap<>();
-            
-            // Risk level distribution
-            long lowRisk = pendingPayments.stream()
-                    .filter(p -> p.getRiskLevel() == null || p.getRiskLevel() == Payment.RiskLevel.LOW)
-                    .count();
-            long mediumRisk = pendingPayments.stream()
-                    .filter(p -> p.getRiskLevel() == Payment.RiskLevel.MEDIUM)
-                    .count();
-            long highRisk = pendingPayments.stream()
-                    .filter(p -> p.getRiskLevel() == Payment.RiskLevel.HIGH)
-                    .count();
-            long veryHighRisk = pendingPayments.stream()
-                    .filter(p -> p.getRiskLevel() == Payment.RiskLevel.VERY_HIGH)
-                    .count();
-            
-            stats.put("lowRisk", lowRisk);
-            stats.put("mediumRisk", mediumRisk);
-            stats.put("highRisk", highRisk);
-            stats.put("veryHighRisk", veryHighRisk);
-            
-            // Average risk score
-            double avgRiskScore = pendingPayments.stream()
-                    .filter(p -> p.getRiskScore() != null)
-                    .mapToDouble(p -> p.getRiskScore().doubleValue())
-                    .average()
-                    .orElse(0.0);
-            stats.put("averageRiskScore", Math.round(avgRiskScore * 100.0) / 100.0);
-            
-            // Total pending amount
-            double totalPendingAmount = pendingPayments.stream()
-                    .mapToDouble(p -> p.getAmount().doubleValue())
-                    .sum();
-            stats.put("totalPendingAmount", totalPendingAmount);
-            
-            // Auto-approved count (for reference)
-            long autoApprovedCount = allPayments.stream()
-                    .filter(p -> p.getAutoApproved() != null && p.getAutoApproved() && 
-                            p.getStatus() == Payment.PaymentStatus.APPROVED)
-                    .count();
-            stats.put("autoApprovedCount", autoApprovedCount);
+            if (resourceVersions.notModified(webRequest, "risk-statistics", resourceVersions.paymentsEtag())) {
+                return null;
+            }
             
-            return ResponseEntity.ok(stats);
+            return ResponseEntity.ok(riskStatistics(paymentService.getAllPayments()));
             
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -212,6 +145,60 @@ public class CheckerDashboardController {
         }
     }
     
+    /**
+     * Risk distribution of the pending payments
+     */
+    private Map<String, Object> riskStatistics(List<Payment> allPayments) {
+        List<Payment> pendingPayments = allPayments.stream()
+                .filter(p -> p.getStatus() == Payment.PaymentStatus.PENDING)
+                .collect(Collectors.toList());
+        
+        // Calculate statistics
+        Map<String, Object> stats = new HashMap<>();
+        
+        // Risk level distribution
+        long lowRisk = pendingPayments.stream()
+                .filter(p -> p.getRiskLevel() == null || p.getRiskLevel() == Payment.RiskLevel.LOW)
+                .count();
+        long mediumRisk = pendingPayments.stream()
+                .filter(p -> p.getRiskLevel() == Payment.RiskLevel.MEDIUM)
+                .count();
+        long highRisk = pendingPayments.stream()
+                .filter(p -> p.getRiskLevel() == Payment.RiskLevel.HIGH)
+                .count();
+        long veryHighRisk = pendingPayments.stream()
+                .filter(p -> p.getRiskLevel() == Payment.RiskLevel.VERY_HIGH)
+                .count();
+        
+        stats.put("lowRisk", lowRisk);
+        stats.put("mediumRisk", mediumRisk);
+        stats.put("highRisk", highRisk);
+        stats.put("veryHighRisk", veryHighRisk);
+        
+        // Average risk score
+        double avgRiskScore = pendingPayments.stream()
+                .filter(p -> p.getRiskScore() != null)
+                .mapToDouble(p -> p.getRiskScore().doubleValue())
+                .average()
+                .orElse(0.0);
+        stats.put("averageRiskScore", Math.round(avgRiskScore * 100.0) / 100.0);
+        
+        // Total pending amount
+        double totalPendingAmount = pendingPayments.stream()
+                .mapToDouble(p -> p.getAmount().doubleValue())
+                .sum();
+        stats.put("totalPendingAmount", totalPendingAmount);
+        
+        // Auto-approved count (for reference)
+        long autoApprovedCount = allPayments.stream()
+                .filter(p -> p.getAutoApproved() != null && p.getAutoApproved() && 
+                        p.getStatus() == Payment.PaymentStatus.APPROVED)
+                .count();
+        stats.put("autoApprovedCount", autoApprovedCount);
+        
+        return stats;
+    }
+    
     /**
      * Get checker dashboard summary
      * Shows overview for checkers when they log in
@@ -232,23 +219,18 @@ public class CheckerDashboardController {
                         .body(Map.of("message", "Only checkers and admins can access checker dashboard"));
             }
             
-            // Get approval queue data
-            ResponseEntity<?> queueResponse = getApprovalQueue();
-            if (queueResponse.getStatusCode() != HttpStatus.OK) {
-                return queueResponse;
-            }
-            
-            // Get risk statistics
-            ResponseEntity<?> statsResponse = getRiskStatistics();
-            if (statsResponse.getStatusCode() != HttpStatus.OK) {
-                return statsResponse;
-            }
-            
-            // Combine into dashboard
-            Map<String, Object> dashboard = new HashMap<>();
-            dashboard.put("approvalQueue", queueResponse.getBody());
-            dashboard.put("riskStatistics", statsResponse.getBody());
-            dashboard.put("userRole", RoleUtil.getRoleLowercase(user));
+            // Checkers arriving together share one scan. The payments version is part of the key,
+            // so nobody joins a scan that started before the latest payment change.
+            String userRole = RoleUtil.getRoleLowercase(user);
+            Map<String, Object> dashboard = dashboardFlights.execute(
+                    "checker-dashboard:" + userRole + ":" + resourceVersions.paymentsEtag(), () -> {
+                        List<Payment> allPayments = paymentService.getAllPayments();
+                        Map<String, Object> combined = new HashMap<>();
+                        combined.put("approvalQueue", approvalQueue(allPayments));
+                        combined.put("riskStatistics", riskStatistics(allPayments));
+                        combined.put("userRole", userRole);
+                        return combined;
+                    });
             
             return ResponseEntity.ok(dashboard);
             
@@ -258,18 +240,64 @@ public class CheckerDashboardController {
         }
     }
     
-    private String maskAccountNumber(String accountNumber) {
-        if (accountNumber == null || accountNumber.length() <= 4) {
-            return "****" + accountNumber;
+    /**
+     * Short-lived token for opening the approval queue stream from an EventSource, which
+     * cannot send the Authorization header. It is only accepted by GET /stream and only
+     * needs to be valid when the stream is opened; fetch a new one before reconnecting.
+     */
+    @PostMapping("/stream-token")
+    public ResponseEntity<?> createStreamToken() {
+        try {
+            Long userId = SecurityUtil.getCurrentUserId();
+            if (userId == null) {
+                return ResponseEntity.status(401).body(Map.of("message", "Unauthorized"));
+            }
+            
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            if (!RoleUtil.canApprovePayments(user)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(Map.of("message", "Only checkers and admins can access approval queue"));
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("token", jwtUtil.generateStreamToken(user.getId(), user.getEmail(), streamTokenTtlMs));
+            response.put("expiresInMs", streamTokenTtlMs);
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Failed to create stream token: " + e.getMessage()));
         }
-        return "****" + accountNumber.substring(accountNumber.length() - 4);
     }
     
-    private String getUserName(User user) {
-        String fullName = (user.getFirstName() != null ? user.getFirstName() : "") + 
-                         " " + (user.getLastName() != null ? user.getLastName() : "");
-        fullName = fullName.trim();
-        return fullName.isEmpty() ? user.getUsername() : fullName;
+    /**
+     * Live approval queue over Server-Sent Events, replacing dashboard polling.
+     * Sends a "snapshot" event with the whole queue, then a "queue" event with
+     * added/updated items, removed ids and risk-bucket counts whenever it changes.
+     * Apply deltas by payment id; any "snapshot" (first, after a reconnect, or after rates
+     * re-priced the queue) replaces local state. Authenticate with the Authorization header
+     * (fetch-based clients) or, for EventSource, with ?token= from POST /stream-token.
+     * Errors are reported by status only (the body of a stream cannot be a JSON message).
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamApprovalQueue() {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        
+        User user = userRepository.findById(userId).orElse(null);
+        if (user == null || !RoleUtil.canApprovePayments(user)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        
+        SseEmitter emitter = approvalQueueStream.subscribe();
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok()
+                .header("X-Accel-Buffering", "no") // Don't let nginx buffer the stream
+                .body(emitter);
     }
 }
-
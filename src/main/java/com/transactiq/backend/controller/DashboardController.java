@@ -4,10 +4,12 @@ import com.transactiq.backend.entity.Account;
 import com.transactiq.backend.entity.Payment;
 import com.transactiq.backend.service.AccountService;
 import com.transactiq.backend.service.PaymentService;
+import com.transactiq.backend.service.ResourceVersions;
 import com.transactiq.backend.util.SecurityUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
@@ -21,15 +23,20 @@ public class DashboardController {
     
     private final AccountService accountService;
     private final PaymentService paymentService;
+    private final ResourceVersions resourceVersions;
     
     @GetMapping
-    public ResponseEntity<Map<String, Object>> getDashboardData() {
+    public ResponseEntity<Map<String, Object>> getDashboardData(WebRequest webRequest) {
         try {
             Long userId = SecurityUtil.getCurrentUserId();
             if (userId == null) {
                 return ResponseEntity.status(401).body(createErrorResponse("Unauthorized"));
             }
             
+            if (resourceVersions.notModified(webRequest, "dashboard", resourceVersions.userEtag(userId))) {
+                return null;
+            }
+            
             // Get user's accounts
             List<Account> accounts = accountService.getActiveAccountsByUserId(userId);
             
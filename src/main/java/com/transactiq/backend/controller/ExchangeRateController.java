@@ -1,14 +1,24 @@
 package com.transactiq.backend.controller;
 
 import com.transactiq.backend.entity.ExchangeRate;
+import com.transactiq.backend.service.ConversionBatch;
+import com.transactiq.backend.service.ExchangeRateHistory;
+import com.transactiq.backend.service.ExchangeRateQuote;
+import com.transactiq.backend.service.ExchangeRateRefresher;
 import com.transactiq.backend.service.ExchangeRateService;
+import com.transactiq.backend.service.ResourceVersions;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,7 +31,12 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ExchangeRateController {
     
+    private static final int MAX_BATCH_SIZE = 1000;
+    
     private final ExchangeRateService exchangeRateService;
+    private final ExchangeRateHistory exchangeRateHistory;
+    private final ExchangeRateRefresher exchangeRateRefresher;
+    private final ResourceVersions resourceVersions;
     
     /**
      * Get exchange rate for a currency pair
@@ -31,15 +46,19 @@ public class ExchangeRateController {
             @PathVariable String fromCurrency,
             @PathVariable String toCurrency) {
         try {
-            BigDecimal rate = exchangeRateService.getExchangeRate(
+            ExchangeRateQuote quote = exchangeRateService.getQuote(
                 fromCurrency.toUpperCase(), 
                 toCurrency.toUpperCase()
             );
+            BigDecimal rate = quote.getRate();
             
             Map<String, Object> response = new HashMap<>();
             response.put("fromCurrency", fromCurrency.toUpperCase());
             response.put("toCurrency", toCurrency.toUpperCase());
             response.put("rate", rate);
+            response.put("path", quote.getPath());
+            response.put("snapshotVersion", quote.getSnapshotVersion());
+            response.put("ratesAsOf", asOf(quote.getSnapshotVersion()));
             response.put("description", String.format("1 %s = %s %s", 
                 fromCurrency.toUpperCase(), rate, toCurrency.toUpperCase()));
             
@@ -56,6 +75,59 @@ public class ExchangeRateController {
         }
     }
     
+    /**
+     * Get the exchange rate that was live at a given time
+     */
+    @GetMapping("/{fromCurrency}/{toCurrency}/at")
+    public ResponseEntity<?> getExchangeRateAt(
+            @PathVariable String fromCurrency,
+            @PathVariable String toCurrency,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime timestamp) {
+        try {
+            ExchangeRateHistory.AsOfRate rate = exchangeRateService.getExchangeRateAt(
+                fromCurrency.toUpperCase(),
+                toCurrency.toUpperCase(),
+                timestamp
+            );
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("fromCurrency", fromCurrency.toUpperCase());
+            response.put("toCurrency", toCurrency.toUpperCase());
+            response.put("timestamp", timestamp);
+            response.put("rate", rate.getRate());
+            response.put("path", rate.getPath());
+            response.put("effectiveAt", rate.getEffectiveAtMillis() > 0
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(rate.getEffectiveAtMillis()), ZoneId.systemDefault())
+                : null);
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("message", "Exchange rate not available for " +
+                        fromCurrency.toUpperCase() + " to " + toCurrency.toUpperCase() + " at " + timestamp));
+        }
+    }
+    
+    /**
+     * Rate history index statistics (size, memory, build time)
+     */
+    @GetMapping("/history/stats")
+    public ResponseEntity<?> getHistoryStats() {
+        return ResponseEntity.ok(exchangeRateHistory.getStats());
+    }
+    
+    /**
+     * Rate provider refresh status (provider, last refresh, stale pairs)
+     */
+    @GetMapping("/provider/stats")
+    public ResponseEntity<?> getProviderStats() {
+        return ResponseEntity.ok(exchangeRateRefresher.getStats());
+    }
+    
     /**
      * Convert amount between currencies
      */
@@ -69,11 +141,10 @@ public class ExchangeRateController {
                 fromCurrency.toUpperCase(), 
                 toCurrency.toUpperCase()
             );
-            BigDecimal convertedAmount = exchangeRateService.convertAmount(
-                amount, 
-                fromCurrency.toUpperCase(), 
-                toCurrency.toUpperCase()
-            );
+            if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+                throw new IllegalArgumentException("Amount must be greater than 0");
+            }
+            BigDecimal convertedAmount = exchangeRateService.applyRate(amount, rate);
             
             Map<String, Object> response = new HashMap<>();
             response.put("originalAmount", amount);
@@ -103,13 +174,68 @@ public class ExchangeRateController {
         }
     }
     
+    /**
+     * Convert many amounts at once, all priced from the same rate snapshot
+     */
+    @PostMapping("/convert/batch")
+    public ResponseEntity<?> convertBatch(@RequestBody ConvertBatchRequest request) {
+        try {
+            if (request.getConversions() == null || request.getConversions().isEmpty()) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(Map.of("message", "conversions must contain at least one item"));
+            }
+            if (request.getConversions().size() > MAX_BATCH_SIZE) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(Map.of("message", "At most " + MAX_BATCH_SIZE + " conversions per request"));
+            }
+            
+            List<ConversionBatch.Item> items = request.getConversions().stream()
+                    .map(item -> new ConversionBatch.Item(item.getAmount(), item.getFromCurrency(), item.getToCurrency()))
+                    .toList();
+            ConversionBatch batch = exchangeRateService.convertBatch(items);
+            
+            List<Map<String, Object>> conversions = batch.getConversions().stream()
+                    .map(line -> {
+                        Map<String, Object> conversion = new HashMap<>();
+                        conversion.put("originalAmount", line.getOriginalAmount());
+                        conversion.put("originalCurrency", line.getOriginalCurrency());
+                        conversion.put("convertedAmount", line.getConvertedAmount());
+                        conversion.put("convertedCurrency", line.getConvertedCurrency());
+                        conversion.put("exchangeRate", line.getExchangeRate());
+                        conversion.put("path", line.getPath());
+                        if (line.getError() != null) {
+                            conversion.put("error", line.getError());
+                        }
+                        return conversion;
+                    })
+                    .toList();
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("snapshotVersion", batch.getSnapshotVersion());
+            response.put("ratesAsOf", asOf(batch.getSnapshotVersion())); // Same rates again: GET /{from}/{to}/at?timestamp=
+            response.put("distinctPairs", batch.getDistinctPairs());
+            response.put("count", conversions.size());
+            response.put("conversions", conversions);
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Conversion failed: " + e.getMessage()));
+        }
+    }
+    
     /**
      * Get all active exchange rates
      * Returns formatted list matching frontend requirements
      */
     @GetMapping
-    public ResponseEntity<?> getAllExchangeRates() {
+    public ResponseEntity<?> getAllExchangeRates(WebRequest webRequest) {
         try {
+            if (resourceVersions.notModified(webRequest, "exchange-rates", resourceVersions.exchangeRatesEtag())) {
+                return null;
+            }
+            
             List<ExchangeRate> rates = exchangeRateService.getAllActiveRates();
             
             // Format response to match frontend requirements
@@ -187,11 +313,31 @@ public class ExchangeRateController {
         }
     }
     
+    /**
+     * Time the rates of a snapshot were live, usable as the timestamp of GET /{from}/{to}/at
+     */
+    private static LocalDateTime asOf(long snapshotVersion) {
+        return snapshotVersion > 0
+            ? LocalDateTime.ofInstant(Instant.ofEpochMilli(snapshotVersion), ZoneId.systemDefault())
+            : null;
+    }
+    
     @Data
     static class ExchangeRateRequest {
         private String fromCurrency;
         private String toCurrency;
         private BigDecimal rate;
     }
+    
+    @Data
+    static class ConvertBatchRequest {
+        private List<ConversionItem> conversions;
+    }
+    
+    @Data
+    static class ConversionItem {
+        private BigDecimal amount;
+        private String fromCurrency;
+        private String toCurrency;
+    }
 }
-
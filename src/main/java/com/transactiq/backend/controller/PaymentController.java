@@ -3,10 +3,12 @@ package com.transactiq.backend.controller;
 import com.transactiq.backend.entity.Payment;
 import com.transactiq.backend.entity.User;
 import com.transactiq.backend.repository.UserRepository;
+import com.transactiq.backend.service.PaymentChangeFeed;
 import com.transactiq.backend.service.PaymentService;
 import com.transactiq.backend.util.RoleUtil;
 import com.transactiq.backend.util.SecurityUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -27,6 +29,12 @@ public class PaymentController {
     private final PaymentService paymentService;
     private final AccountService accountService;
     private final UserRepository userRepository;
+    private final PaymentChangeFeed paymentChangeFeed;
+    
+    private static final String CHANGE_TOKEN_HEADER = "X-Change-Token";
+    
+    @Value("${transactiq.payments.changes.max-rows:1000}")
+    private int maxChangeRows;
     
     @PostMapping
     public ResponseEntity<?> createPayment(@RequestBody Map<String, Object> request) {
@@ -214,6 +222,13 @@ public class PaymentController {
                                 "code", "INSUFFICIENT_BALANCE"
                             ));
                 }
+                if (errorMessage.contains("Possible duplicate payment")) {
+                    return ResponseEntity.status(HttpStatus.CONFLICT)
+                            .body(Map.of(
+                                "message", errorMessage,
+                                "code", "DUPLICATE_PAYMENT"
+                            ));
+                }
                 // Generic error
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                         .body(Map.of("message", errorMessage));
@@ -231,6 +246,7 @@ public class PaymentController {
             response.put("riskLevel", createdPayment.getRiskLevel() != null ? 
                 createdPayment.getRiskLevel().name() : "LOW");
             response.put("autoApproved", createdPayment.getAutoApproved() != null && createdPayment.getAutoApproved());
+            response.put("duplicateSuspected", Boolean.TRUE.equals(createdPayment.getDuplicateSuspected()));
             
             // Add exchange rate information if currencies differ
             String fromCurrency = createdPayment.getFromAccount().getCurrency();
@@ -238,6 +254,8 @@ public class PaymentController {
             if (!fromCurrency.equalsIgnoreCase(toCurrency) && createdPayment.getExchangeRate() != null) {
                 Map<String, Object> conversionInfo = new HashMap<>();
                 conversionInfo.put("exchangeRate", createdPayment.getExchangeRate());
+                conversionInfo.put("exchangeRatePath", createdPayment.getExchangeRatePath());
+                conversionInfo.put("quoteVersion", createdPayment.getQuoteVersion());
                 conversionInfo.put("originalAmount", createdPayment.getAmount());
                 conversionInfo.put("originalCurrency", fromCurrency);
                 conversionInfo.put("convertedAmount", createdPayment.getConvertedAmount());
@@ -325,6 +343,9 @@ public class PaymentController {
             User user = userRepository.findById(userId)
                     .orElseThrow(() -> new RuntimeException("User not found"));
             
+            // Taken before reading, so nothing written while the list loads is missed by /changes
+            long changeToken = paymentChangeFeed.currentToken();
+            
             List<Payment> allPayments;
             
             // If user is admin or checker, show ALL payments
@@ -345,93 +366,154 @@ public class PaymentController {
             
             // Format response to match API spec
             List<Map<String, Object>> formattedPayments = allPayments.stream()
-                    .map(payment -> {
-                        Map<String, Object> payMap = new HashMap<>();
-                        payMap.put("id", payment.getId());
-                        payMap.put("description", payment.getDescription() != null ? payment.getDescription() : "Payment");
-                        payMap.put("amount", payment.getAmount());
-                        payMap.put("currency", payment.getCurrency() != null ? payment.getCurrency() : "USD");
-                        payMap.put("transferType", payment.getTransferType() != null ? 
-                            payment.getTransferType().name().toLowerCase() : "internal");
-                        payMap.put("riskScore", payment.getRiskScore() != null ? payment.getRiskScore() : 0);
-                        payMap.put("riskLevel", payment.getRiskLevel() != null ? 
-                            payment.getRiskLevel().name() : "LOW");
-                        payMap.put("autoApproved", payment.getAutoApproved() != null && payment.getAutoApproved());
-                        payMap.put("fromAccountId", payment.getFromAccount().getId());
-                        
-                        // Format fromAccount object
-                        Map<String, Object> fromAccountMap = new HashMap<>();
-                        fromAccountMap.put("id", payment.getFromAccount().getId());
-                        fromAccountMap.put("name", payment.getFromAccount().getAccountType() + " Account");
-                        fromAccountMap.put("currency", payment.getFromAccount().getCurrency()); // Add currency
-                        String fromAccountNumber = payment.getFromAccount().getAccountNumber();
-                        String maskedFromNumber = fromAccountNumber.length() > 4 
-                            ? "****" + fromAccountNumber.substring(fromAccountNumber.length() - 4)
-                            : "****" + fromAccountNumber;
-                        fromAccountMap.put("accountNumber", maskedFromNumber);
-                        payMap.put("fromAccount", fromAccountMap);
-                        
-                        payMap.put("toAccountId", payment.getToAccount().getId());
-                        
-                        // Format toAccount object
-                        Map<String, Object> toAccountMap = new HashMap<>();
-                        toAccountMap.put("id", payment.getToAccount().getId());
-                        toAccountMap.put("name", payment.getToAccount().getAccountType() + " Account");
-                        toAccountMap.put("currency", payment.getToAccount().getCurrency()); // Add currency
-                        String toAccountNumber = payment.getToAccount().getAccountNumber();
-                        String maskedToNumber = toAccountNumber.length() > 4 
-                            ? "****" + toAccountNumber.substring(toAccountNumber.length() - 4)
-                            : "****" + toAccountNumber;
-                        toAccountMap.put("accountNumber", maskedToNumber);
-                        
-                        // Add recipient info for external transfers
-                        if (payment.getTransferType() == Payment.TransferType.EXTERNAL) {
-                            toAccountMap.put("userId", payment.getToAccount().getUser().getId());
-                            String fullName = (payment.getToAccount().getUser().getFirstName() != null ? 
-                                payment.getToAccount().getUser().getFirstName() : "") + 
-                                " " + (payment.getToAccount().getUser().getLastName() != null ? 
-                                payment.getToAccount().getUser().getLastName() : "");
-                            fullName = fullName.trim();
-                            if (fullName.isEmpty()) {
-                                fullName = payment.getToAccount().getUser().getUsername();
-                            }
-                            toAccountMap.put("userName", fullName);
-                        }
-                        
-                        payMap.put("toAccount", toAccountMap);
-                        
-                        payMap.put("date", payment.getCreatedAt());
-                        payMap.put("createdAt", payment.getCreatedAt());
-                        payMap.put("status", payment.getStatus().name());
-                        
-                        // Add currency conversion info if currencies differ
-                        String fromCurr = payment.getFromAccount().getCurrency();
-                        String toCurr = payment.getToAccount().getCurrency();
-                        if (!fromCurr.equalsIgnoreCase(toCurr) && payment.getExchangeRate() != null) {
-                            Map<String, Object> conversionInfo = new HashMap<>();
-                            conversionInfo.put("exchangeRate", payment.getExchangeRate());
-                            conversionInfo.put("originalAmount", payment.getAmount());
-                            conversionInfo.put("originalCurrency", payment.getCurrency());
-                            conversionInfo.put("convertedAmount", payment.getConvertedAmount());
-                            conversionInfo.put("convertedCurrency", payment.getConvertedCurrency());
-                            payMap.put("conversion", conversionInfo);
-                        } else {
-                            // Same currency - no conversion needed
-                            payMap.put("conversion", null);
-                        }
-                        
-                        return payMap;
-                    })
+                    .map(this::formatPayment)
                     .toList();
             
-            return ResponseEntity.ok(formattedPayments);
-            
+            return ResponseEntity.ok()
+                    .header(CHANGE_TOKEN_HEADER, String.valueOf(changeToken))
+                    .body(formattedPayments);
+                    
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("message", "Failed to fetch payments: " + e.getMessage()));
         }
     }
     
+    /**
+     * Payments created or updated since a change token from GET /api/payments (X-Change-Token)
+     * or from a previous call. Apply them by id over the cached list. "reset": true means too
+     * much changed to send as a delta; refetch the full list instead.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<?> getPaymentChanges(@RequestParam String since) {
+        try {
+            Long userId = SecurityUtil.getCurrentUserId();
+            if (userId == null) {
+                return ResponseEntity.status(401).body(Map.of("message", "Unauthorized"));
+            }
+            
+            long token;
+            try {
+                token = Long.parseLong(since);
+            } catch (NumberFormatException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(Map.of("message", "Invalid change token"));
+            }
+            
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            
+            // Same visibility as GET /api/payments: admins and checkers see all payments
+            List<Long> accountIds = null;
+            if (!RoleUtil.canApprovePayments(user)) {
+                accountIds = accountService.getActiveAccountsByUserId(userId).stream()
+                        .map(Account::getId)
+                        .toList();
+            }
+            
+            PaymentChangeFeed.Changes changes = paymentChangeFeed.changesSince(token, accountIds, maxChangeRows);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("token", String.valueOf(changes.getToken()));
+            response.put("reset", changes.isReset());
+            response.put("payments", changes.getPayments().stream()
+                    .map(this::formatPayment)
+                    .toList());
+            
+            return ResponseEntity.ok()
+                    .header(CHANGE_TOKEN_HEADER, String.valueOf(changes.getToken()))
+                    .body(response);
+                    
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Failed to fetch payment changes: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Format a payment as a list item, matching the API spec
+     */
+    private Map<String, Object> formatPayment(Payment payment) {
+        Map<String, Object> payMap = new HashMap<>();
+        payMap.put("id", payment.getId());
+        payMap.put("description", payment.getDescription() != null ? payment.getDescription() : "Payment");
+        payMap.put("amount", payment.getAmount());
+        payMap.put("currency", payment.getCurrency() != null ? payment.getCurrency() : "USD");
+        payMap.put("transferType", payment.getTransferType() != null ? 
+            payment.getTransferType().name().toLowerCase() : "internal");
+        payMap.put("riskScore", payment.getRiskScore() != null ? payment.getRiskScore() : 0);
+        payMap.put("riskLevel", payment.getRiskLevel() != null ? 
+            payment.getRiskLevel().name() : "LOW");
+        payMap.put("autoApproved", payment.getAutoApproved() != null && payment.getAutoApproved());
+        payMap.put("duplicateSuspected", Boolean.TRUE.equals(payment.getDuplicateSuspected()));
+        payMap.put("fromAccountId", payment.getFromAccount().getId());
+        
+        // Format fromAccount object
+        Map<String, Object> fromAccountMap = new HashMap<>();
+        fromAccountMap.put("id", payment.getFromAccount().getId());
+        fromAccountMap.put("name", payment.getFromAccount().getAccountType() + " Account");
+        fromAccountMap.put("currency", payment.getFromAccount().getCurrency()); // Add currency
+        String fromAccountNumber = payment.getFromAccount().getAccountNumber();
+        String maskedFromNumber = fromAccountNumber.length() > 4 
+            ? "****" + fromAccountNumber.substring(fromAccountNumber.length() - 4)
+            : "****" + fromAccountNumber;
+        fromAccountMap.put("accountNumber", maskedFromNumber);
+        payMap.put("fromAccount", fromAccountMap);
+        
+        payMap.put("toAccountId", payment.getToAccount().getId());
+        
+        // Format toAccount object
+        Map<String, Object> toAccountMap = new HashMap<>();
+        toAccountMap.put("id", payment.getToAccount().getId());
+        toAccountMap.put("name", payment.getToAccount().getAccountType() + " Account");
+        toAccountMap.put("currency", payment.getToAccount().getCurrency()); // Add currency
+        String toAccountNumber = payment.getToAccount().getAccountNumber();
+        String maskedToNumber = toAccountNumber.length() > 4 
+            ? "****" + toAccountNumber.substring(toAccountNumber.length() - 4)
+            : "****" + toAccountNumber;
+        toAccountMap.put("accountNumber", maskedToNumber);
+        
+        // Add recipient info for external transfers
+        if (payment.getTransferType() == Payment.TransferType.EXTERNAL) {
+            toAccountMap.put("userId", payment.getToAccount().getUser().getId());
+            String fullName = (payment.getToAccount().getUser().getFirstName() != null ? 
+                payment.getToAccount().getUser().getFirstName() : "") + 
+                " " + (payment.getToAccount().getUser().getLastName() != null ? 
+                payment.getToAccount().getUser().getLastName() : "");
+            fullName = fullName.trim();
+            if (fullName.isEmpty()) {
+                fullName = payment.getToAccount().getUser().getUsername();
+            }
+            toAccountMap.put("userName", fullName);
+        }
+        
+        payMap.put("toAccount", toAccountMap);
+        
+        payMap.put("date", payment.getCreatedAt());
+        payMap.put("createdAt", payment.getCreatedAt());
+        payMap.put("status", payment.getStatus().name());
+        
+        // Add currency conversion info if currencies differ
+        String fromCurr = payment.getFromAccount().getCurrency();
+        String toCurr = payment.getToAccount().getCurrency();
+        if (!fromCurr.equalsIgnoreCase(toCurr) && payment.getExchangeRate() != null) {
+            Map<String, Object> conversionInfo = new HashMap<>();
+            conversionInfo.put("exchangeRate", payment.getExchangeRate());
+            conversionInfo.put("exchangeRatePath", payment.getExchangeRatePath());
+            conversionInfo.put("quoteVersion", payment.getQuoteVersion());
+            conversionInfo.put("originalAmount", payment.getAmount());
+            conversionInfo.put("originalCurrency", payment.getCurrency());
+            conversionInfo.put("convertedAmount", payment.getConvertedAmount());
+            conversionInfo.put("convertedCurrency", payment.getConvertedCurrency());
+            payMap.put("conversion", conversionInfo);
+        } else {
+            // Same currency - no conversion needed
+            payMap.put("conversion", null);
+        }
+        
+        return payMap;
+    }
+    
     @GetMapping("/{id}")
     public ResponseEntity<Payment> getPaymentById(@PathVariable Long id) {
         return paymentService.getPaymentById(id)
@@ -0,0 +1,188 @@
+package com.transactiq.backend.controller;
+
+import com.transactiq.backend.entity.Account;
+import com.transactiq.backend.entity.Payment;
+import com.transactiq.backend.entity.User;
+import com.transactiq.backend.repository.AccountRepository;
+import com.transactiq.backend.repository.PaymentRepository;
+import com.transactiq.backend.repository.UserRepository;
+import com.transactiq.backend.util.RoleUtil;
+import com.transactiq.backend.util.SecurityUtil;
+import graphql.GraphQLContext;
+import org.dataloader.DataLoader;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.data.method.annotation.SchemaMapping;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * GraphQL read API over payments, accounts and users (schema: graphql/schema.graphqls)
+ *
+ * Root queries load only payment rows. Accounts and users are resolved only when selected,
+ * through per-request DataLoaders keyed by id: every account (or user) referenced anywhere in
+ * the response is fetched with a single IN query, however many payments point at it.
+ * Visibility follows the REST endpoints: users see payments on their own active accounts,
+ * checkers and admins see all of them.
+ */
+@Controller
+public class PaymentGraphQlController {
+    
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final String VIEWER = PaymentGraphQlController.class.getName() + ".viewer";
+    
+    private final PaymentRepository paymentRepository;
+    private final AccountRepository accountRepository;
+    private final UserRepository userRepository;
+    
+    public PaymentGraphQlController(PaymentRepository paymentRepository,
+                                    AccountRepository accountRepository,
+                                    UserRepository userRepository,
+                                    BatchLoaderRegistry batchLoaderRegistry) {
+        this.paymentRepository = paymentRepository;
+        this.accountRepository = accountRepository;
+        this.userRepository = userRepository;
+        
+        batchLoaderRegistry.forTypePair(Long.class, Account.class).registerMappedBatchLoader((ids, env) ->
+            Mono.fromCallable(() -> accountRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Account::getId, account -> account))));
+        batchLoaderRegistry.forTypePair(Long.class, User.class).registerMappedBatchLoader((ids, env) ->
+            Mono.fromCallable(() -> userRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(User::getId, user -> user))));
+    }
+    
+    @QueryMapping
+    public List<Payment> payments(@Argument Payment.PaymentStatus status, @Argument int first,
+                                  @Argument Long before, GraphQLContext context) {
+        Viewer viewer = viewer(context);
+        PageRequest page = PageRequest.of(0, Math.max(1, Math.min(first, MAX_PAGE_SIZE)));
+        long beforeId = before != null ? before : Long.MAX_VALUE;
+        if (viewer.isPrivileged()) {
+            return paymentRepository.findPageBefore(status, beforeId, page);
+        }
+        if (viewer.getAccountIds().isEmpty()) {
+            return List.of();
+        }
+        return paymentRepository.findPageBeforeForAccounts(status, viewer.getAccountIds(), beforeId, page);
+    }
+    
+    @QueryMapping
+    public Payment payment(@Argument Long id, GraphQLContext context) {
+        Viewer viewer = viewer(context);
+        return paymentRepository.findById(id)
+                .filter(payment -> viewer.isPrivileged()
+                        || viewer.getAccountIds().contains(payment.getFromAccount().getId())
+                        || viewer.getAccountIds().contains(payment.getToAccount().getId()))
+                .orElse(null);
+    }
+    
+    @QueryMapping
+    public List<Account> accounts(GraphQLContext context) {
+        return viewer(context).getAccounts();
+    }
+    
+    @QueryMapping
+    public User me(GraphQLContext context) {
+        return viewer(context).getUser();
+    }
+    
+    @SchemaMapping(typeName = "Payment")
+    public CompletableFuture<Account> fromAccount(Payment payment, DataLoader<Long, Account> accounts) {
+        return accounts.load(payment.getFromAccount().getId()); // Id of the lazy proxy; no query
+    }
+    
+    @SchemaMapping(typeName = "Payment")
+    public CompletableFuture<Account> toAccount(Payment payment, DataLoader<Long, Account> accounts) {
+        return accounts.load(payment.getToAccount().getId());
+    }
+    
+    @SchemaMapping(typeName = "Payment")
+    public CompletableFuture<User> approvedBy(Payment payment, DataLoader<Long, User> users) {
+        if (payment.getApprovedBy() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return users.load(payment.getApprovedBy().getId());
+    }
+    
+    @SchemaMapping(typeName = "Payment")
+    public Map<String, Object> conversion(Payment payment) {
+        if (payment.getConvertedCurrency() == null || payment.getExchangeRate() == null
+                || payment.getConvertedCurrency().equalsIgnoreCase(payment.getCurrency())) {
+            return null;
+        }
+        Map<String, Object> conversion = new HashMap<>();
+        conversion.put("exchangeRate", payment.getExchangeRate());
+        conversion.put("exchangeRatePath", payment.getExchangeRatePath());
+        conversion.put("quoteVersion", payment.getQuoteVersion());
+        conversion.put("originalAmount", payment.getAmount());
+        conversion.put("originalCurrency", payment.getCurrency());
+        conversion.put("convertedAmount", payment.getConvertedAmount());
+        conversion.put("convertedCurrency", payment.getConvertedCurrency());
+        return conversion;
+    }
+    
+    @SchemaMapping(typeName = "Account")
+    public String accountNumber(Account account) {
+        String accountNumber = account.getAccountNumber();
+        return accountNumber.length() > 4
+            ? "****" + accountNumber.substring(accountNumber.length() - 4)
+            : "****" + accountNumber;
+    }
+    
+    @SchemaMapping(typeName = "Account")
+    public BigDecimal balance(Account account, GraphQLContext context) {
+        Viewer viewer = viewer(context);
+        return viewer.isPrivileged() || account.getUser().getId().equals(viewer.getUser().getId())
+            ? account.getBalance() : null;
+    }
+    
+    @SchemaMapping(typeName = "Account")
+    public CompletableFuture<User> owner(Account account, DataLoader<Long, User> users) {
+        return users.load(account.getUser().getId());
+    }
+    
+    @SchemaMapping(typeName = "User")
+    public String email(User user, GraphQLContext context) {
+        Viewer viewer = viewer(context);
+        return viewer.isPrivileged() || user.getId().equals(viewer.getUser().getId()) ? user.getEmail() : null;
+    }
+    
+    /**
+     * Caller, their role and their active accounts, loaded once per request
+     */
+    private Viewer viewer(GraphQLContext context) {
+        Viewer viewer = context.get(VIEWER);
+        if (viewer == null) {
+            Long userId = SecurityUtil.getCurrentUserId();
+            if (userId == null) {
+                throw new AccessDeniedException("Unauthorized");
+            }
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new AccessDeniedException("User not found"));
+            List<Account> accounts = accountRepository.findByUserIdAndIsActiveTrue(userId);
+            Set<Long> accountIds = accounts.stream().map(Account::getId).collect(Collectors.toSet());
+            viewer = new Viewer(user, RoleUtil.canApprovePayments(user), accounts, accountIds);
+            context.put(VIEWER, viewer);
+        }
+        return viewer;
+    }
+    
+    @lombok.Value
+    private static class Viewer {
+        User user;
+        boolean privileged;
+        List<Account> accounts;
+        Set<Long> accountIds;
+    }
+}
@@ -0,0 +1,47 @@
+package com.transactiq.backend.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Supported currency
+ * Loaded into CurrencyRegistry at startup; rows are ordered by id to assign dense indices
+ */
+@Entity
+@Table(name = "currencies")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Currency {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotBlank
+    @Column(name = "code", length = 3, unique = true, nullable = false)
+    private String code; // ISO 4217, e.g. "USD"
+    
+    @Column(name = "name", length = 100)
+    private String name;
+    
+    @Column(name = "minor_units", nullable = false)
+    private Integer minorUnits = 2; // Digits after the decimal point (e.g. 2 for cents)
+    
+    @Column(name = "default_usd_rate", precision = 19, scale = 6)
+    private BigDecimal defaultUsdRate; // 1 USD = defaultUsdRate of this currency (seed rate)
+    
+    @Column(name = "is_active")
+    private Boolean isActive = true;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+}
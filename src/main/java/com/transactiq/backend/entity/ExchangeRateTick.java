@@ -0,0 +1,47 @@
+package com.transactiq.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One published value of an exchange rate (append-only history)
+ * exchange_rates holds the current rate per pair; every change is also recorded here
+ * so the rate that was live at any past instant can be looked up
+ */
+@Entity
+@Table(name = "exchange_rate_ticks", indexes = {
+    @Index(name = "idx_exchange_rate_ticks_pair_time", columnList = "from_currency, to_currency, effective_at"),
+    @Index(name = "idx_exchange_rate_ticks_change_seq", columnList = "change_seq")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExchangeRateTick {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "from_currency", length = 3, nullable = false)
+    private String fromCurrency;
+    
+    @Column(name = "to_currency", length = 3, nullable = false)
+    private String toCurrency;
+    
+    @Column(name = "rate", nullable = false, precision = 19, scale = 6)
+    private BigDecimal rate; // 1 fromCurrency = rate toCurrency
+    
+    @Column(name = "effective_at", nullable = false)
+    private LocalDateTime effectiveAt; // Rate is live from this instant until the next tick
+    
+    @Column(name = "source", length = 50)
+    private String source; // MANUAL, DEFAULT, BACKFILL, provider name
+    
+    @Column(name = "change_seq", insertable = false, updatable = false)
+    private Long changeSeq; // Id of the writing transaction, stamped by a trigger (see ExchangeRateHistory)
+}
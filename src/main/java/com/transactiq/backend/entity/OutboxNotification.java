@@ -0,0 +1,60 @@
+package com.transactiq.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A webhook notification waiting to be delivered (transactional outbox).
+ * Rows are inserted in the same transaction as the change they announce, so a notification
+ * exists if and only if that change committed; NotificationDispatcher delivers them afterwards.
+ */
+@Entity
+@Table(name = "notification_outbox", indexes = {
+    @Index(name = "idx_notification_outbox_due", columnList = "status, next_attempt_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxNotification {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "event_type", length = 50, nullable = false)
+    private String eventType; // e.g. payment_approved
+    
+    @Column(name = "payload", nullable = false, columnDefinition = "text")
+    private String payload; // JSON body sent as-is
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20, nullable = false)
+    private Status status = Status.PENDING;
+    
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+    
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt; // Also the claim lease while a delivery is in flight
+    
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false, nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "delivered_at")
+    private LocalDateTime deliveredAt;
+    
+    public enum Status {
+        PENDING,
+        DELIVERED,
+        FAILED // Gave up after max attempts
+    }
+}
@@ -13,7 +13,10 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+    @Index(name = "idx_payments_status_currency_pair", columnList = "status, currency, converted_currency"),
+    @Index(name = "idx_payments_change_seq", columnList = "change_seq")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -44,6 +47,12 @@ public class Payment {
     @Column(name = "exchange_rate", precision = 19, scale = 6)
     private BigDecimal exchangeRate; // Exchange rate used for conversion
     
+    @Column(name = "exchange_rate_path", length = 100)
+    private String exchangeRatePath; // Currencies the rate was chained through, e.g. "CAD>USD>EUR"
+    
+    @Column(name = "quote_version")
+    private Long quoteVersion = 1L; // Bumped each time a pending payment is re-quoted after a rate change
+    
     @Column(name = "status", nullable = false)
     @Enumerated(EnumType.STRING)
     private PaymentStatus status = PaymentStatus.PENDING;
@@ -65,6 +74,9 @@ public class Payment {
     @Column(name = "auto_approved")
     private Boolean autoApproved = false; // True if auto-approved based on risk score
     
+    @Column(name = "duplicate_suspected")
+    private Boolean duplicateSuspected = false; // True if a matching payment was created moments before
+    
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "from_account_id", nullable = false)
     private Account fromAccount;
@@ -84,6 +96,9 @@ public class Payment {
     @JoinColumn(name = "approved_by")
     private User approvedBy;
     
+    @Column(name = "change_seq", insertable = false, updatable = false)
+    private Long changeSeq; // Id of the last transaction that wrote the row; set by a database trigger (see PaymentChangeFeed)
+    
     public enum PaymentStatus {
         PENDING,
         APPROVED,
@@ -0,0 +1,39 @@
+package com.transactiq.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Persisted snapshot of one in-memory risk feature aggregate.
+ * Rows are written in bulk by RiskFeatureStore and read back on startup so the
+ * store does not have to replay the whole payments table after a restart.
+ */
+@Entity
+@Table(name = "risk_feature_snapshots", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"scope", "entity_id"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RiskFeatureSnapshot {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "scope", length = 1, nullable = false)
+    private String scope; // A = account, U = user, P = counted payment steps, M = store metadata
+    
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+    
+    @Column(name = "data", nullable = false, columnDefinition = "bytea")
+    private byte[] data; // Binary encoded aggregate (see RiskFeatureStore)
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,18 @@
+package com.transactiq.backend.event;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * Published by ExchangeRateService when an exchange rate is created or updated.
+ * Listeners run after commit, so they always see the new rate in the database.
+ */
+@Value
+public class ExchangeRatesChangedEvent {
+    
+    String fromCurrency;
+    String toCurrency;
+    BigDecimal rate;
+    long effectiveAtMillis;
+}
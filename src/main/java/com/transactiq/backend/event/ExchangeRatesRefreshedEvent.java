@@ -0,0 +1,17 @@
+package com.transactiq.backend.event;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Published by ExchangeRateRefresher when a provider refresh changed one or more rates.
+ * Carries every changed pair so listeners can apply the whole batch at once
+ * (e.g. rebuild the rate snapshot a single time). Listeners run after commit.
+ */
+@Value
+public class ExchangeRatesRefreshedEvent {
+    
+    String source;
+    List<ExchangeRatesChangedEvent> changes;
+}
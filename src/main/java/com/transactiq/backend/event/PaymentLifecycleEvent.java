@@ -0,0 +1,69 @@
+package com.transactiq.backend.event;
+
+import com.transactiq.backend.entity.Payment;
+import com.transactiq.backend.util.Money;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Application event published by PaymentService whenever a payment changes state.
+ * Carries only flat ids and values so listeners never touch lazy associations
+ * after the originating transaction has committed.
+ */
+@Value
+public class PaymentLifecycleEvent {
+    
+    public enum Type {
+        CREATED,
+        APPROVED,
+        REJECTED,
+        RESCORED
+    }
+    
+    Type type;
+    long paymentId;
+    long fromAccountId;
+    long toAccountId;
+    long fromUserId;
+    long toUserId;
+    BigDecimal amount;
+    String currency;
+    Payment.PaymentStatus status;
+    Payment.RiskLevel riskLevel;
+    boolean autoApproved;
+    long fromAccountCreatedAtMillis;
+    long occurredAtMillis;
+    
+    public static PaymentLifecycleEvent of(Type type, Payment payment) {
+        return new PaymentLifecycleEvent(
+            type,
+            payment.getId(),
+            payment.getFromAccount().getId(),
+            payment.getToAccount().getId(),
+            payment.getFromAccount().getUser().getId(),
+            payment.getToAccount().getUser().getId(),
+            payment.getAmount(),
+            payment.getCurrency(),
+            payment.getStatus(),
+            payment.getRiskLevel(),
+            Boolean.TRUE.equals(payment.getAutoApproved()),
+            toEpochMillis(payment.getFromAccount().getCreatedAt()),
+            type == Type.CREATED && payment.getCreatedAt() != null
+                ? toEpochMillis(payment.getCreatedAt()) : System.currentTimeMillis()
+        );
+    }
+    
+    /**
+     * Amount in minor units (cents) of the payment currency, rounded HALF_UP
+     */
+    public long getAmountMinor() {
+        return Money.toMinor(amount);
+    }
+    
+    private static long toEpochMillis(LocalDateTime time) {
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L;
+    }
+}
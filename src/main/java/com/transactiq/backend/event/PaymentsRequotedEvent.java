@@ -0,0 +1,14 @@
+package com.transactiq.backend.event;
+
+import lombok.Value;
+
+/**
+ * Published by PendingPaymentRequoter when an exchange rate change re-priced pending
+ * payments in bulk. No per-payment lifecycle events are published for a re-quote, so
+ * anything derived from the pending payments must be reloaded. Listeners run after commit.
+ */
+@Value
+public class PaymentsRequotedEvent {
+    
+    int requoted;
+}
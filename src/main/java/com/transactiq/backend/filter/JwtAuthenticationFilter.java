@@ -14,11 +14,19 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Objects;
 
+/**
+ * Authenticates requests carrying a login token in the Authorization header. The approval
+ * queue stream also accepts a stream-scoped token in its "token" query parameter, for
+ * EventSource clients that cannot set headers; scoped tokens are good for nothing else.
+ */
 @Component
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
+    static final String STREAM_PATH = "/api/checker/stream";
+    
     private final JwtUtil jwtUtil;
     
     @Override
@@ -26,12 +34,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
         
         String authHeader = request.getHeader("Authorization");
-        
+        String token = null;
+        String requiredScope = null;
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
-            
+            token = authHeader.substring(7);
+        } else if (STREAM_PATH.equals(request.getServletPath()) && request.getParameter("token") != null) {
+            token = request.getParameter("token");
+            requiredScope = JwtUtil.STREAM_SCOPE;
+        }
+        
+        if (token != null) {
             try {
-                if (jwtUtil.validateToken(token)) {
+                if (jwtUtil.validateToken(token) && Objects.equals(jwtUtil.extractScope(token), requiredScope)) {
                     String email = jwtUtil.extractUsername(token);
                     Long userId = jwtUtil.extractUserId(token);
                     
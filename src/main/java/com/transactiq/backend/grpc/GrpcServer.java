@@ -0,0 +1,107 @@
+package com.transactiq.backend.grpc;
+
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.Server;
+import io.grpc.ServerCredentials;
+import io.grpc.ServerInterceptors;
+import io.grpc.TlsServerCredentials;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hosts the gRPC payment gateway on its own port (HTTP/2, one long-lived connection per client
+ * instead of a connection per burst of REST calls). Calls run on a bounded pool, since every
+ * call does blocking database work.
+ *
+ * Off by default. Calls carry bearer tokens, so the server only starts with TLS configured
+ * (cert-chain and private-key, PEM) or with plaintext explicitly allowed, for local testing
+ * or behind a TLS-terminating proxy.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GrpcServer {
+    
+    private final PaymentGatewayService paymentGatewayService;
+    private final JwtServerInterceptor jwtServerInterceptor;
+    
+    @Value("${transactiq.grpc.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${transactiq.grpc.port:9090}")
+    private int port;
+    
+    @Value("${transactiq.grpc.threads:32}")
+    private int threads;
+    
+    @Value("${transactiq.grpc.tls.cert-chain:}")
+    private String certChainPath;
+    
+    @Value("${transactiq.grpc.tls.private-key:}")
+    private String privateKeyPath;
+    
+    @Value("${transactiq.grpc.plaintext:false}")
+    private boolean plaintext;
+    
+    private Server server;
+    private ExecutorService executor;
+    
+    public synchronized void start() throws IOException {
+        if (!enabled || server != null) {
+            return;
+        }
+        ServerCredentials credentials = credentials();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "grpc-payment-gateway");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = Grpc.newServerBuilderForPort(port, credentials)
+            .executor(executor)
+            .addService(ServerInterceptors.intercept(paymentGatewayService, jwtServerInterceptor))
+            .build()
+            .start();
+        log.info("gRPC payment gateway listening on port {} ({})", port,
+            credentials instanceof TlsServerCredentials ? "TLS" : "plaintext");
+    }
+    
+    private ServerCredentials credentials() throws IOException {
+        if (!certChainPath.isBlank() && !privateKeyPath.isBlank()) {
+            return TlsServerCredentials.create(new File(certChainPath), new File(privateKeyPath));
+        }
+        if (!plaintext) {
+            throw new IllegalStateException("transactiq.grpc.tls.cert-chain and private-key are required " +
+                "(or set transactiq.grpc.plaintext=true behind a TLS-terminating proxy)");
+        }
+        log.warn("gRPC payment gateway is running without TLS: bearer tokens are sent in clear text");
+        return InsecureServerCredentials.create();
+    }
+    
+    @PreDestroy
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.shutdown();
+        try {
+            if (!server.awaitTermination(5, TimeUnit.SECONDS)) {
+                server.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            server.shutdownNow();
+        }
+        executor.shutdownNow();
+        server = null;
+    }
+}
@@ -0,0 +1,53 @@
+package com.transactiq.backend.grpc;
+
+import com.transactiq.backend.util.JwtUtil;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * gRPC counterpart of JwtAuthenticationFilter: every call must carry
+ * "authorization: Bearer <jwt>" metadata. The caller's user id is available to the
+ * service through USER_ID; calls without a valid token are closed as UNAUTHENTICATED.
+ */
+@Component
+@RequiredArgsConstructor
+public class JwtServerInterceptor implements ServerInterceptor {
+    
+    public static final Context.Key<Long> USER_ID = Context.key("transactiq-user-id");
+    
+    private static final Metadata.Key<String> AUTHORIZATION =
+        Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+    
+    private final JwtUtil jwtUtil;
+    
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        Long userId = null;
+        String authHeader = headers.get(AUTHORIZATION);
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            String token = authHeader.substring(7);
+            try {
+                // Scoped tokens (approval queue stream) are not login tokens
+                if (jwtUtil.validateToken(token) && jwtUtil.extractScope(token) == null) {
+                    userId = jwtUtil.extractUserId(token);
+                }
+            } catch (Exception e) {
+                // Token validation failed, rejected below
+            }
+        }
+        if (userId == null) {
+            call.close(Status.UNAUTHENTICATED.withDescription("Missing or invalid bearer token"), new Metadata());
+            return new ServerCall.Listener<>() {
+            };
+        }
+        return Contexts.interceptCall(Context.current().withValue(USER_ID, userId), call, headers, next);
+    }
+}
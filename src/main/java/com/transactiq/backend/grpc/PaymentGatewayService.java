@@ -0,0 +1,390 @@
+package com.transactiq.backend.grpc;
+
+import com.transactiq.backend.entity.Account;
+import com.transactiq.backend.entity.Payment;
+import com.transactiq.backend.event.PaymentLifecycleEvent;
+import com.transactiq.backend.grpc.proto.*;
+import com.transactiq.backend.repository.PaymentRepository;
+import com.transactiq.backend.repository.UserRepository;
+import com.transactiq.backend.service.PaymentService;
+import com.transactiq.backend.util.RoleUtil;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * gRPC payment gateway (src/main/proto/payment_gateway.proto), backed by the same
+ * PaymentService as POST /api/payments, so validation, risk scoring, duplicate detection and
+ * auto-approval are identical. Errors carry the REST API's error codes.
+ *
+ * Status watches are fed from PaymentLifecycleEvent (including changes relayed from other
+ * instances). Watched payments are reloaded and sent from a single thread, so each stream
+ * sees a payment's states in order; a client that stops reading is disconnected.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentGatewayService extends PaymentGatewayGrpc.PaymentGatewayImplBase {
+    
+    private static final BigDecimal MIN_AMOUNT = new BigDecimal("0.01");
+    
+    private final PaymentService paymentService;
+    private final PaymentRepository paymentRepository;
+    private final UserRepository userRepository;
+    
+    @Value("${transactiq.grpc.max-batch-size:500}")
+    private int maxBatchSize;
+    
+    @Value("${transactiq.grpc.max-watched-payments:1000}")
+    private int maxWatchedPayments;
+    
+    private final Map<Long, Set<Watcher>> watchers = new ConcurrentHashMap<>();
+    private ExecutorService notifier;
+    
+    @PostConstruct
+    public void init() {
+        notifier = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "grpc-payment-watch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        notifier.shutdownNow();
+    }
+    
+    @Override
+    public void createPayment(CreatePaymentRequest request, StreamObserver<PaymentReply> responseObserver) {
+        try {
+            responseObserver.onNext(create(JwtServerInterceptor.USER_ID.get(), request));
+            responseObserver.onCompleted();
+        } catch (GatewayException e) {
+            responseObserver.onError(e.toStatus().asRuntimeException());
+        }
+    }
+    
+    @Override
+    public void createPayments(CreatePaymentsRequest request, StreamObserver<CreatePaymentsReply> responseObserver) {
+        if (request.getPaymentsCount() > maxBatchSize) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                .withDescription("At most " + maxBatchSize + " payments per batch").asRuntimeException());
+            return;
+        }
+        long userId = JwtServerInterceptor.USER_ID.get();
+        CreatePaymentsReply.Builder reply = CreatePaymentsReply.newBuilder();
+        for (CreatePaymentRequest item : request.getPaymentsList()) {
+            try {
+                reply.addResults(CreatePaymentResult.newBuilder().setPayment(create(userId, item)));
+            } catch (GatewayException e) {
+                reply.addResults(CreatePaymentResult.newBuilder().setError(e.toError()));
+            }
+        }
+        responseObserver.onNext(reply.build());
+        responseObserver.onCompleted();
+    }
+    
+    @Override
+    public void getPaymentStatus(PaymentStatusRequest request, StreamObserver<PaymentReply> responseObserver) {
+        if (request.getKeyCase() == PaymentStatusRequest.KeyCase.KEY_NOT_SET) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                .withDescription("id or transactionId is required").asRuntimeException());
+            return;
+        }
+        Optional<Payment> payment = request.getKeyCase() == PaymentStatusRequest.KeyCase.ID
+            ? paymentRepository.findWithAccountsByIdIn(List.of(request.getId())).stream().findFirst()
+            : paymentRepository.findWithAccountsByTransactionId(request.getTransactionId());
+        long userId = JwtServerInterceptor.USER_ID.get();
+        if (payment.isEmpty() || !canView(userId, isPrivileged(userId), payment.get())) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription("Payment not found").asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(toReply(payment.get()));
+        responseObserver.onCompleted();
+    }
+    
+    @Override
+    public void watchPayments(WatchPaymentsRequest request, StreamObserver<PaymentReply> responseObserver) {
+        Set<Long> ids = new LinkedHashSet<>(request.getIdsList());
+        if (ids.isEmpty() || ids.size() > maxWatchedPayments) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                .withDescription("Watch between 1 and " + maxWatchedPayments + " payments").asRuntimeException());
+            return;
+        }
+        Watcher watcher = new Watcher((ServerCallStreamObserver<PaymentReply>) responseObserver, ids);
+        watcher.observer.setOnCancelHandler(() -> unregister(watcher));
+        long userId = JwtServerInterceptor.USER_ID.get();
+        // Registered before the initial states are loaded, so no change in between is missed
+        for (Long id : ids) {
+            watchers.computeIfAbsent(id, key -> new CopyOnWriteArraySet<>()).add(watcher);
+        }
+        notifier.execute(() -> {
+            try {
+                boolean privileged = isPrivileged(userId);
+                List<Payment> payments = paymentRepository.findWithAccountsByIdIn(ids);
+                if (payments.size() < ids.size() || !payments.stream().allMatch(p -> canView(userId, privileged, p))) {
+                    unregister(watcher);
+                    watcher.observer.onError(Status.NOT_FOUND
+                        .withDescription("Payment not found").asRuntimeException());
+                    return;
+                }
+                // Updates queued before this point are skipped: these states are at least as new
+                watcher.started = true;
+                for (Payment payment : payments) {
+                    watcher.send(toReply(payment));
+                }
+            } catch (Exception e) {
+                unregister(watcher);
+                watcher.observer.onError(Status.INTERNAL.withDescription(e.getMessage()).asRuntimeException());
+            }
+        });
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentEvent(PaymentLifecycleEvent event) {
+        long paymentId = event.getPaymentId();
+        if (watchers.containsKey(paymentId)) {
+            notifier.execute(() -> push(paymentId));
+        }
+    }
+    
+    private void push(long paymentId) {
+        Set<Watcher> interested = watchers.get(paymentId);
+        if (interested == null || interested.isEmpty()) {
+            return;
+        }
+        try {
+            paymentRepository.findById(paymentId).ifPresent(payment -> {
+                PaymentReply reply = toReply(payment);
+                for (Watcher watcher : interested) {
+                    watcher.send(reply);
+                }
+            });
+        } catch (Exception e) {
+            log.error("Failed to push status of payment {}: {}", paymentId, e.getMessage());
+        }
+    }
+    
+    private void unregister(Watcher watcher) {
+        for (Long id : watcher.ids) {
+            watchers.computeIfPresent(id, (key, set) -> {
+                set.remove(watcher);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+    
+    private PaymentReply create(long userId, CreatePaymentRequest request) {
+        if (request.getFromAccountId() == 0 || request.getToAccountId() == 0) {
+            throw new GatewayException(Status.Code.INVALID_ARGUMENT, "INVALID_REQUEST",
+                "fromAccountId and toAccountId are required");
+        }
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(request.getAmount());
+        } catch (NumberFormatException e) {
+            throw new GatewayException(Status.Code.INVALID_ARGUMENT, "INVALID_AMOUNT", "Invalid amount format");
+        }
+        if (amount.compareTo(MIN_AMOUNT) < 0) {
+            throw new GatewayException(Status.Code.INVALID_ARGUMENT, "INVALID_AMOUNT", "Amount must be at least 0.01");
+        }
+        
+        Account fromAccount = new Account();
+        fromAccount.setId(request.getFromAccountId());
+        Account toAccount = new Account();
+        toAccount.setId(request.getToAccountId());
+        
+        Payment payment = new Payment();
+        payment.setFromAccount(fromAccount);
+        payment.setToAccount(toAccount);
+        payment.setAmount(amount);
+        payment.setDescription(request.getDescription().isEmpty() ? null : request.getDescription());
+        payment.setStatus(Payment.PaymentStatus.PENDING);
+        payment.setTransferType(switch (request.getTransferType()) {
+            case INTERNAL -> Payment.TransferType.INTERNAL;
+            case EXTERNAL -> Payment.TransferType.EXTERNAL;
+            default -> null; // Auto-detected
+        });
+        
+        try {
+            return toReply(paymentService.createPayment(payment, userId));
+        } catch (RuntimeException e) {
+            throw GatewayException.of(e);
+        }
+    }
+    
+    private boolean isPrivileged(long userId) {
+        return userRepository.findById(userId).map(RoleUtil::canApprovePayments).orElse(false);
+    }
+    
+    private static boolean canView(long userId, boolean privileged, Payment payment) {
+        return privileged
+            || payment.getFromAccount().getUser().getId() == userId
+            || payment.getToAccount().getUser().getId() == userId;
+    }
+    
+    private static PaymentReply toReply(Payment payment) {
+        PaymentReply.Builder reply = PaymentReply.newBuilder()
+            .setId(payment.getId())
+            .setTransactionId(payment.getTransactionId() != null ? payment.getTransactionId() : "")
+            .setStatus(PaymentStatus.valueOf(payment.getStatus().name()))
+            .setAmount(payment.getAmount().toPlainString())
+            .setCurrency(payment.getCurrency())
+            .setAutoApproved(Boolean.TRUE.equals(payment.getAutoApproved()))
+            .setDuplicateSuspected(Boolean.TRUE.equals(payment.getDuplicateSuspected()))
+            .setFromAccountId(payment.getFromAccount().getId())
+            .setToAccountId(payment.getToAccount().getId())
+            .setCreatedAtMillis(toEpochMillis(payment.getCreatedAt()))
+            .setApprovedAtMillis(toEpochMillis(payment.getApprovedAt()));
+        if (payment.getConvertedAmount() != null && payment.getConvertedCurrency() != null
+                && !payment.getConvertedCurrency().equalsIgnoreCase(payment.getCurrency())) {
+            reply.setConvertedAmount(payment.getConvertedAmount().toPlainString())
+                .setConvertedCurrency(payment.getConvertedCurrency());
+        }
+        if (payment.getRiskScore() != null) {
+            reply.setRiskScore(payment.getRiskScore().toPlainString());
+        }
+        if (payment.getRiskLevel() != null) {
+            reply.setRiskLevel(RiskLevel.valueOf(payment.getRiskLevel().name()));
+        }
+        if (payment.getTransferType() != null) {
+            reply.setTransferType(TransferType.valueOf(payment.getTransferType().name()));
+        }
+        return reply.build();
+    }
+    
+    private static long toEpochMillis(LocalDateTime time) {
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L;
+    }
+    
+    /**
+     * One WatchPayments stream; only ever written from the notifier thread
+     */
+    private class Watcher {
+        final ServerCallStreamObserver<PaymentReply> observer;
+        final Set<Long> ids;
+        boolean started; // Set once the caller may see these payments
+        
+        Watcher(ServerCallStreamObserver<PaymentReply> observer, Set<Long> ids) {
+            this.observer = observer;
+            this.ids = ids;
+        }
+        
+        void send(PaymentReply reply) {
+            if (!started) {
+                return;
+            }
+            if (observer.isCancelled()) {
+                unregister(this);
+                return;
+            }
+            if (!observer.isReady()) {
+                // Flow-control window is full: the client is not reading its updates
+                unregister(this);
+                observer.onError(Status.RESOURCE_EXHAUSTED
+                    .withDescription("Too many unread status updates").asRuntimeException());
+                return;
+            }
+            observer.onNext(reply);
+        }
+    }
+    
+    /**
+     * A rejected payment request, with the REST API's error code
+     */
+    private static class GatewayException extends RuntimeException {
+        final Status.Code status;
+        final String code;
+        
+        GatewayException(Status.Code status, String code, String message) {
+            super(message);
+            this.status = status;
+            this.code = code;
+        }
+        
+        /**
+         * Classify a PaymentService failure. Only the business rules PaymentService reports
+         * (plain RuntimeExceptions with known messages) are the caller's fault; database
+         * trouble is UNAVAILABLE (retry later) and anything else INTERNAL, never a rejection.
+         */
+        static GatewayException of(RuntimeException e) {
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (e instanceof TransientDataAccessException || e instanceof DataAccessResourceFailureException
+                    || e instanceof CannotCreateTransactionException) {
+                // Lock and query timeouts, deadlocks, no connection from the pool
+                log.warn("Payment creation unavailable: {}", message);
+                return new GatewayException(Status.Code.UNAVAILABLE, "SERVICE_UNAVAILABLE",
+                    "Payment service temporarily unavailable, retry later");
+            }
+            if (e.getClass() != RuntimeException.class) {
+                return internal(e);
+            }
+            if (message.contains("Cannot mark as internal")) {
+                return new GatewayException(Status.Code.FAILED_PRECONDITION, "INVALID_TRANSFER_TYPE", message);
+            }
+            if (message.contains("Cannot mark as external")) {
+                return new GatewayException(Status.Code.FAILED_PRECONDITION, "SELF_TRANSFER_EXTERNAL", message);
+            }
+            if (message.contains("does not belong")) {
+                return new GatewayException(Status.Code.PERMISSION_DENIED, "UNAUTHORIZED_ACCESS", message);
+            }
+            if (message.contains("account not found")) {
+                return new GatewayException(Status.Code.NOT_FOUND, "ACCOUNT_NOT_FOUND", message);
+            }
+            if (message.contains("not active")) {
+                return new GatewayException(Status.Code.FAILED_PRECONDITION, "ACCOUNT_INACTIVE", message);
+            }
+            if (message.contains("Insufficient balance")) {
+                return new GatewayException(Status.Code.FAILED_PRECONDITION, "INSUFFICIENT_BALANCE", message);
+            }
+            if (message.contains("Possible duplicate payment")) {
+                return new GatewayException(Status.Code.ALREADY_EXISTS, "DUPLICATE_PAYMENT", message);
+            }
+            if (message.contains("Cannot transfer to the same account")) {
+                return new GatewayException(Status.Code.INVALID_ARGUMENT, "PAYMENT_REJECTED", message);
+            }
+            if (message.contains("Failed to convert currency")) {
+                return new GatewayException(Status.Code.FAILED_PRECONDITION, "CURRENCY_CONVERSION_FAILED", message);
+            }
+            return internal(e);
+        }
+        
+        private static GatewayException internal(RuntimeException e) {
+            // Details stay in the log, not in the reply
+            log.error("Payment creation failed", e);
+            return new GatewayException(Status.Code.INTERNAL, "INTERNAL_ERROR", "Payment creation failed");
+        }
+        
+        Status toStatus() {
+            return Status.fromCode(status).withDescription(code + ": " + getMessage());
+        }
+        
+        PaymentError toError() {
+            return PaymentError.newBuilder().setCode(code).setMessage(getMessage()).build();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.transactiq.backend.repository;
+
+import com.transactiq.backend.entity.Currency;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CurrencyRepository extends JpaRepository<Currency, Long> {
+    List<Currency> findAllByOrderByIdAsc();
+    boolean existsByCode(String code);
+}
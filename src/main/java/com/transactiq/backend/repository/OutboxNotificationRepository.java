@@ -0,0 +1,9 @@
+package com.transactiq.backend.repository;
+
+import com.transactiq.backend.entity.OutboxNotification;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OutboxNotificationRepository extends JpaRepository<OutboxNotification, Long> {
+}
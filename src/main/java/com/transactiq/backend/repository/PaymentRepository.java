@@ -1,9 +1,14 @@
 package com.transactiq.backend.repository;
 
 import com.transactiq.backend.entity.Payment;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,5 +18,48 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     List<Payment> findByFromAccountId(Long fromAccountId);
     List<Payment> findByToAccountId(Long toAccountId);
     List<Payment> findByFromAccountIdOrToAccountId(Long fromAccountId, Long toAccountId);
+    
+    /**
+     * Keyset page of payments in a status, ordered by id
+     * Used for bulk processing (e.g. re-scoring) without offset scans
+     * Accounts and owners are fetched in the same query to avoid N+1 lookups
+     */
+    @EntityGraph(attributePaths = {"fromAccount", "fromAccount.user", "toAccount", "toAccount.user"})
+    List<Payment> findByStatusAndIdGreaterThanOrderByIdAsc(Payment.PaymentStatus status, Long afterId, Pageable pageable);
+    
+    /**
+     * Payments in a status with accounts and owners, in one query
+     */
+    @EntityGraph(attributePaths = {"fromAccount", "fromAccount.user", "toAccount", "toAccount.user"})
+    List<Payment> findWithAccountsByStatus(Payment.PaymentStatus status);
+    
+    /**
+     * Payments by id with accounts and owners, in one query
+     */
+    @EntityGraph(attributePaths = {"fromAccount", "fromAccount.user", "toAccount", "toAccount.user"})
+    List<Payment> findWithAccountsByIdIn(Collection<Long> ids);
+    
+    /**
+     * Payment by transaction id with accounts and owners, in one query
+     */
+    @EntityGraph(attributePaths = {"fromAccount", "fromAccount.user", "toAccount", "toAccount.user"})
+    Optional<Payment> findWithAccountsByTransactionId(String transactionId);
+    
+    /**
+     * Keyset page of payments with ids below beforeId, newest first (status null = any status)
+     * Associations are left lazy for the GraphQL loaders
+     */
+    @Query("SELECT p FROM Payment p WHERE p.id < :beforeId AND (:status IS NULL OR p.status = :status) ORDER BY p.id DESC")
+    List<Payment> findPageBefore(@Param("status") Payment.PaymentStatus status, @Param("beforeId") Long beforeId,
+                                 Pageable pageable);
+    
+    /**
+     * Same as findPageBefore, limited to payments from or to the given accounts
+     */
+    @Query("SELECT p FROM Payment p WHERE p.id < :beforeId AND (:status IS NULL OR p.status = :status) " +
+           "AND (p.fromAccount.id IN :accountIds OR p.toAccount.id IN :accountIds) ORDER BY p.id DESC")
+    List<Payment> findPageBeforeForAccounts(@Param("status") Payment.PaymentStatus status,
+                                            @Param("accountIds") Collection<Long> accountIds,
+                                            @Param("beforeId") Long beforeId, Pageable pageable);
 }
 
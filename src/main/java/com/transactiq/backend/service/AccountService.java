@@ -20,6 +20,7 @@ public class AccountService {
     
     private final AccountRepository accountRepository;
     private final UserRepository userRepository;
+    private final ResourceVersions resourceVersions;
     
     public Account createAccount(Account account, Long userId) {
         User user = userRepository.findById(userId)
@@ -36,6 +37,7 @@ public class AccountService {
         }
         
         account.setUser(user);
+        resourceVersions.touchUser(userId);
         return accountRepository.save(account);
     }
     
@@ -77,6 +79,7 @@ public class AccountService {
             account.setIsActive(accountDetails.getIsActive());
         }
         
+        resourceVersions.touchUser(account.getUser().getId());
         return accountRepository.save(account);
     }
     
@@ -84,6 +87,7 @@ public class AccountService {
         Account account = accountRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Account not found with id: " + id));
         account.setIsActive(false);
+        resourceVersions.touchUser(account.getUser().getId());
         accountRepository.save(account);
     }
     
@@ -97,6 +101,7 @@ public class AccountService {
         }
         
         account.setBalance(newBalance);
+        resourceVersions.touchUser(account.getUser().getId());
         return accountRepository.save(account);
     }
     
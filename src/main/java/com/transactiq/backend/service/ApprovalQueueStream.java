@@ -0,0 +1,432 @@
+package com.transactiq.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.transactiq.backend.entity.Payment;
+import com.transactiq.backend.entity.User;
+import com.transactiq.backend.event.PaymentLifecycleEvent;
+import com.transactiq.backend.event.PaymentsRequotedEvent;
+import com.transactiq.backend.repository.PaymentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes approval-queue changes to connected checkers over Server-Sent Events.
+ *
+ * Committed payment lifecycle events (including ones replayed from other instances) are
+ * collected and flushed every flush-interval-ms as one "queue" event: added and updated
+ * items, removed ids, and the pending counts per risk bucket. Each flush loads the changed
+ * payments and the counts once and serializes the frame once, however many checkers are
+ * connected. New subscribers first get a "snapshot" of the whole queue. Changes that come
+ * without per-payment events (a bulk re-quote here or on another instance, or events missed
+ * while the InvalidationBus was disconnected) send every subscriber a fresh "snapshot" instead.
+ *
+ * Every subscriber has a small bounded frame queue drained by a shared sender pool. A
+ * checker that falls max-queued-frames behind is disconnected; its EventSource reconnects
+ * and resynchronizes from a fresh snapshot, and nobody else waits for it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ApprovalQueueStream {
+    
+    private static final Frame HEARTBEAT = new Frame(null, null, null);
+    
+    private final PaymentRepository paymentRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final InvalidationBus invalidationBus;
+    
+    @Value("${transactiq.checker.stream.max-subscribers:500}")
+    private int maxSubscribers;
+    
+    @Value("${transactiq.checker.stream.max-queued-frames:32}")
+    private int maxQueuedFrames;
+    
+    @Value("${transactiq.checker.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+    
+    @Value("${transactiq.checker.stream.send-threads:4}")
+    private int sendThreads;
+    
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Map<Long, Change> changes = new LinkedHashMap<>(); // Guarded by itself
+    private final AtomicLong frameSequence = new AtomicLong();
+    private final AtomicBoolean resyncRequested = new AtomicBoolean();
+    private ExecutorService senders;
+    private Counter framesSent;
+    private Counter slowConsumersDropped;
+    
+    @PostConstruct
+    public void init() {
+        senders = Executors.newFixedThreadPool(sendThreads, runnable -> {
+            Thread thread = new Thread(runnable, "approval-queue-sse");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("transactiq.checker.stream.subscribers", subscribers, List::size)
+            .description("Connected approval queue streams")
+            .register(meterRegistry);
+        framesSent = Counter.builder("transactiq.checker.stream.frames")
+            .description("Approval queue frames written to subscribers")
+            .register(meterRegistry);
+        slowConsumersDropped = Counter.builder("transactiq.checker.stream.dropped")
+            .description("Subscribers disconnected for falling behind")
+            .register(meterRegistry);
+        invalidationBus.subscribe(ResourceVersions.REGION, keys -> {
+            if (keys == null || keys.contains(ResourceVersions.REQUOTED)) {
+                resyncRequested.set(true);
+            }
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        senders.shutdownNow();
+    }
+    
+    /**
+     * Open a stream, or null if the subscriber limit is reached. The first event is the
+     * current queue ("snapshot"); "queue" events with deltas follow.
+     */
+    public SseEmitter subscribe() {
+        if (subscribers.size() >= maxSubscribers) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, new ArrayBlockingQueue<>(maxQueuedFrames));
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        
+        // Register before reading the snapshot so no committed change falls between the two
+        subscribers.add(subscriber);
+        enqueue(subscriber, frame("snapshot", snapshot()));
+        return emitter;
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentEvent(PaymentLifecycleEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        synchronized (changes) {
+            Change change = changes.computeIfAbsent(event.getPaymentId(), id -> new Change());
+            switch (event.getType()) {
+                case CREATED -> change.added = event.getStatus() == Payment.PaymentStatus.PENDING;
+                case APPROVED, REJECTED -> change.removed = true;
+                case RESCORED -> change.updated = true;
+            }
+        }
+    }
+    
+    /**
+     * Re-quoted payments are not announced one by one: resend the whole queue
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentsRequoted(PaymentsRequotedEvent event) {
+        resyncRequested.set(true);
+    }
+    
+    /**
+     * Turn the changes collected since the last flush into one frame for every subscriber
+     */
+    @Scheduled(fixedDelayString = "${transactiq.checker.stream.flush-interval-ms:250}")
+    public void flush() {
+        boolean resync = resyncRequested.getAndSet(false);
+        Map<Long, Change> batch;
+        synchronized (changes) {
+            if (changes.isEmpty() && !resync) {
+                return;
+            }
+            batch = new LinkedHashMap<>(changes);
+            changes.clear();
+        }
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        try {
+            if (resync) {
+                // The snapshot is read after the changes were taken, so it covers them too
+                Frame frame = frame("snapshot", snapshot());
+                for (Subscriber subscriber : subscribers) {
+                    enqueue(subscriber, frame);
+                }
+                return;
+            }
+            List<Long> removed = new ArrayList<>();
+            List<Long> reload = new ArrayList<>();
+            for (Map.Entry<Long, Change> entry : batch.entrySet()) {
+                Change change = entry.getValue();
+                if (change.removed) {
+                    removed.add(entry.getKey());
+                } else if (change.added || change.updated) {
+                    reload.add(entry.getKey());
+                }
+            }
+            List<Map<String, Object>> added = new ArrayList<>();
+            List<Map<String, Object>> updated = new ArrayList<>();
+            for (Payment payment : load(reload)) {
+                if (payment.getStatus() != Payment.PaymentStatus.PENDING) {
+                    removed.add(payment.getId());
+                } else if (batch.get(payment.getId()).added) {
+                    added.add(toQueueItem(payment));
+                } else {
+                    updated.add(toQueueItem(payment));
+                }
+            }
+            
+            Map<String, Object> delta = new HashMap<>();
+            delta.put("added", added);
+            delta.put("updated", updated);
+            delta.put("removed", removed);
+            delta.put("counts", counts());
+            Frame frame = frame("queue", delta);
+            for (Subscriber subscriber : subscribers) {
+                enqueue(subscriber, frame);
+            }
+        } catch (Exception e) {
+            // Clients would miss this delta: make them resynchronize
+            log.error("Approval queue flush failed, disconnecting streams: {}", e.getMessage());
+            for (Subscriber subscriber : subscribers) {
+                subscriber.emitter.complete();
+            }
+        }
+    }
+    
+    /**
+     * Comment line that keeps idle connections open through proxies and detects dead clients
+     */
+    @Scheduled(fixedDelayString = "${transactiq.checker.stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, HEARTBEAT);
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("subscribers", subscribers.size());
+        stats.put("framesSent", (long) framesSent.count());
+        stats.put("slowConsumersDropped", (long) slowConsumersDropped.count());
+        return stats;
+    }
+    
+    /**
+     * Whole pending queue, highest risk first, plus counts
+     */
+    private Map<String, Object> snapshot() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        List<Payment> pending = new ArrayList<>(readOnly.execute(status ->
+            paymentRepository.findWithAccountsByStatus(Payment.PaymentStatus.PENDING)));
+        pending.sort(Comparator
+            .comparing((Payment p) -> p.getRiskScore() != null ? p.getRiskScore() : BigDecimal.ZERO)
+            .reversed()
+            .thenComparing(Payment::getCreatedAt));
+        List<Map<String, Object>> items = new ArrayList<>(pending.size());
+        for (Payment payment : pending) {
+            items.add(toQueueItem(payment));
+        }
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("pendingPayments", items);
+        snapshot.put("counts", counts());
+        return snapshot;
+    }
+    
+    private List<Payment> load(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> paymentRepository.findWithAccountsByIdIn(ids));
+    }
+    
+    /**
+     * Pending counts in the approval queue's risk buckets
+     */
+    private Map<String, Object> counts() {
+        Map<String, Long> byLevel = new HashMap<>();
+        jdbcTemplate.query(
+            "SELECT risk_level, count(*) FROM payments WHERE status = 'PENDING' GROUP BY risk_level",
+            rs -> {
+                // Unscored payments count as low risk, like the dashboard
+                String level = rs.getString(1) != null ? rs.getString(1) : "LOW";
+                byLevel.merge(level, rs.getLong(2), Long::sum);
+            });
+        long low = byLevel.getOrDefault("LOW", 0L);
+        long medium = byLevel.getOrDefault("MEDIUM", 0L);
+        long high = byLevel.getOrDefault("HIGH", 0L) + byLevel.getOrDefault("VERY_HIGH", 0L);
+        Map<String, Object> counts = new HashMap<>();
+        counts.put("totalPending", low + medium + high);
+        counts.put("highRiskCount", high);
+        counts.put("mediumRiskCount", medium);
+        counts.put("lowRiskCount", low);
+        return counts;
+    }
+    
+    /**
+     * One SSE event with its data serialized once, shared by every subscriber
+     */
+    private Frame frame(String name, Object data) {
+        try {
+            return new Frame(String.valueOf(frameSequence.incrementAndGet()), name, objectMapper.writeValueAsString(data));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to serialize approval queue event: " + e.getMessage());
+        }
+    }
+    
+    private void enqueue(Subscriber subscriber, Frame frame) {
+        if (!subscriber.frames.offer(frame)) {
+            // Too far behind: cut it loose; the client reconnects and gets a fresh snapshot
+            subscribers.remove(subscriber);
+            slowConsumersDropped.increment();
+            subscriber.emitter.complete();
+            return;
+        }
+        if (subscriber.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+    
+    private void drain(Subscriber subscriber) {
+        try {
+            Frame frame;
+            while ((frame = subscriber.frames.poll()) != null) {
+                subscriber.emitter.send(frame == HEARTBEAT
+                    ? SseEmitter.event().comment("")
+                    : SseEmitter.event().id(frame.getId()).name(frame.getName()).data(frame.getJson()));
+                framesSent.increment();
+            }
+        } catch (Exception e) {
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+            return;
+        } finally {
+            subscriber.draining.set(false);
+        }
+        if (!subscriber.frames.isEmpty() && subscriber.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+    
+    /**
+     * Approval queue entry for a payment (accounts and owners must be loaded)
+     */
+    public static Map<String, Object> toQueueItem(Payment payment) {
+        Map<String, Object> payMap = new HashMap<>();
+        payMap.put("id", payment.getId());
+        payMap.put("transactionId", payment.getTransactionId());
+        payMap.put("amount", payment.getAmount());
+        payMap.put("currency", payment.getCurrency());
+        payMap.put("description", payment.getDescription());
+        payMap.put("riskScore", payment.getRiskScore() != null ? payment.getRiskScore() : 0);
+        payMap.put("riskLevel", payment.getRiskLevel() != null ? payment.getRiskLevel().name() : "LOW");
+        payMap.put("transferType", payment.getTransferType() != null ? payment.getTransferType().name() : "INTERNAL");
+        payMap.put("createdAt", payment.getCreatedAt());
+        
+        Map<String, Object> fromAccount = new HashMap<>();
+        fromAccount.put("id", payment.getFromAccount().getId());
+        fromAccount.put("accountNumber", maskAccountNumber(payment.getFromAccount().getAccountNumber()));
+        fromAccount.put("currency", payment.getFromAccount().getCurrency());
+        fromAccount.put("balance", payment.getFromAccount().getBalance());
+        fromAccount.put("userName", getUserName(payment.getFromAccount().getUser()));
+        fromAccount.put("userEmail", payment.getFromAccount().getUser().getEmail());
+        payMap.put("fromAccount", fromAccount);
+        
+        Map<String, Object> toAccount = new HashMap<>();
+        toAccount.put("id", payment.getToAccount().getId());
+        toAccount.put("accountNumber", maskAccountNumber(payment.getToAccount().getAccountNumber()));
+        toAccount.put("currency", payment.getToAccount().getCurrency());
+        toAccount.put("userName", getUserName(payment.getToAccount().getUser()));
+        toAccount.put("userEmail", payment.getToAccount().getUser().getEmail());
+        payMap.put("toAccount", toAccount);
+        
+        if (payment.getExchangeRate() != null && payment.getExchangeRate().compareTo(BigDecimal.ONE) != 0) {
+            Map<String, Object> conversion = new HashMap<>();
+            conversion.put("exchangeRate", payment.getExchangeRate());
+            conversion.put("exchangeRatePath", payment.getExchangeRatePath());
+            conversion.put("quoteVersion", payment.getQuoteVersion());
+            conversion.put("originalAmount", payment.getAmount());
+            conversion.put("originalCurrency", payment.getCurrency());
+            conversion.put("convertedAmount", payment.getConvertedAmount());
+            conversion.put("convertedCurrency", payment.getConvertedCurrency());
+            payMap.put("conversion", conversion);
+        }
+        return payMap;
+    }
+    
+    private static String maskAccountNumber(String accountNumber) {
+        if (accountNumber == null || accountNumber.length() <= 4) {
+            return "****" + accountNumber;
+        }
+        return "****" + accountNumber.substring(accountNumber.length() - 4);
+    }
+    
+    private static String getUserName(User user) {
+        String fullName = (user.getFirstName() != null ? user.getFirstName() : "") +
+                         " " + (user.getLastName() != null ? user.getLastName() : "");
+        fullName = fullName.trim();
+        return fullName.isEmpty() ? user.getUsername() : fullName;
+    }
+    
+    /**
+     * What happened to one payment since the last flush
+     */
+    private static final class Change {
+        boolean added;
+        boolean updated;
+        boolean removed;
+    }
+    
+    @lombok.Value
+    private static class Frame {
+        String id;
+        String name;
+        String json;
+    }
+    
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final Queue<Frame> frames;
+        final AtomicBoolean draining = new AtomicBoolean();
+        
+        Subscriber(SseEmitter emitter, Queue<Frame> frames) {
+            this.emitter = emitter;
+            this.frames = frames;
+        }
+    }
+}
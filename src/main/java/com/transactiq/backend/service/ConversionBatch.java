@@ -0,0 +1,41 @@
+package com.transactiq.backend.service;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Result of converting many amounts against a single ExchangeRateSnapshot
+ */
+@Value
+public class ConversionBatch {
+    
+    long snapshotVersion;      // Every line was priced from this snapshot (ExchangeRateSnapshot.getAsOfMillis)
+    int distinctPairs;         // Rate lookups made (one per distinct currency pair)
+    List<Line> conversions;    // Same order as the request
+    
+    /**
+     * One amount to convert
+     */
+    @Value
+    public static class Item {
+        BigDecimal amount;
+        String fromCurrency;
+        String toCurrency;
+    }
+    
+    /**
+     * One converted amount, or the reason it could not be converted (error != null)
+     */
+    @Value
+    public static class Line {
+        BigDecimal originalAmount;
+        String originalCurrency;
+        BigDecimal convertedAmount;
+        String convertedCurrency;
+        BigDecimal exchangeRate;
+        String path;
+        String error;
+    }
+}
@@ -0,0 +1,476 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.event.PaymentLifecycleEvent;
+import com.transactiq.backend.util.LongKeyedMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Per-user summary of the accounts they pay, served from memory for the transfer form.
+ *
+ * Each user keeps a space-saving top-K of recipient accounts (approximate counts with a known
+ * error bound, fixed size) and a small move-to-front list of the most recent recipients.
+ * Summaries are fed by payment creation events after commit and rebuilt from payments on
+ * startup. Users are kept in least-recently-active order and the oldest are dropped beyond
+ * max-users; the account cards shown in the form are reference counted, so total memory is
+ * bounded by max-users * (top-k + recent).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CounterpartyIndex {
+    
+    private static final int FETCH_SIZE = 10_000;
+    private static final long DAY_MILLIS = 86_400_000L;
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${transactiq.accounts.counterparties.top-k:10}")
+    private int topK;
+    
+    @Value("${transactiq.accounts.counterparties.recent:5}")
+    private int recentSize;
+    
+    @Value("${transactiq.accounts.counterparties.max-users:100000}")
+    private int maxUsers;
+    
+    @Value("${transactiq.accounts.counterparties.warmup-days:90}")
+    private int warmupDays;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State(); // Guarded by lock; replaced whole by warmUp
+    private List<long[]> pendingEvents; // {userId, accountId} applied during a rebuild; guarded by lock
+    private volatile boolean ready;
+    
+    /**
+     * Frequent and recent recipients of a user, optionally filtered by a case-insensitive
+     * match on account number, owner name, email or account type
+     */
+    public Counterparties lookup(long userId, String query, int limit) {
+        String needle = query != null && !query.isBlank() ? query.trim().toLowerCase(Locale.ROOT) : null;
+        lock.readLock().lock();
+        try {
+            Summary summary = state.summaries.get(userId);
+            if (summary == null) {
+                return new Counterparties(List.of(), List.of(), ready);
+            }
+            return new Counterparties(summary.frequent(state.cards, needle, limit),
+                summary.recent(state.cards, needle, limit), ready);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentEvent(PaymentLifecycleEvent event) {
+        if (event.getType() != PaymentLifecycleEvent.Type.CREATED || event.getFromUserId() == event.getToUserId()) {
+            return;
+        }
+        lock.writeLock().lock();
+        boolean known;
+        try {
+            state.record(event.getFromUserId(), event.getToAccountId());
+            if (pendingEvents != null) {
+                pendingEvents.add(new long[] {event.getFromUserId(), event.getToAccountId()});
+            }
+            Card card = state.cards.get(event.getToAccountId());
+            known = card == null || card.accountNumber != null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!known) {
+            // First time anyone pays this account: load its card once (off the keystroke path)
+            loadCards(null, new long[] {event.getToAccountId()});
+        }
+    }
+    
+    /**
+     * Rebuild all summaries from recent payments, oldest first so recency ends up correct.
+     * The new index is built off-lock while lookups keep using the current one, then swapped
+     * in together with the payments recorded meanwhile (a payment that committed during the
+     * scan may be counted twice; counts are estimates anyway).
+     */
+    @Transactional(readOnly = true)
+    public synchronized void warmUp() {
+        long started = System.currentTimeMillis();
+        long[] count = {0};
+        lock.writeLock().lock();
+        try {
+            pendingEvents = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        State rebuilt = new State();
+        try {
+            JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+            streaming.setFetchSize(FETCH_SIZE);
+            streaming.query(
+                "SELECT fa.user_id, p.to_account_id FROM payments p " +
+                "JOIN accounts fa ON fa.id = p.from_account_id " +
+                "JOIN accounts ta ON ta.id = p.to_account_id " +
+                "WHERE p.created_at >= ? AND fa.user_id <> ta.user_id " +
+                "ORDER BY p.created_at, p.id",
+                rs -> {
+                    rebuilt.record(rs.getLong(1), rs.getLong(2));
+                    count[0]++;
+                },
+                new Timestamp(started - warmupDays * DAY_MILLIS));
+            
+            long[] accountIds = new long[rebuilt.cards.size()];
+            int[] i = {0};
+            rebuilt.cards.forEach((accountId, card) -> accountIds[i[0]++] = accountId);
+            loadCards(rebuilt, accountIds);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pendingEvents = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        
+        int users;
+        int accounts;
+        lock.writeLock().lock();
+        try {
+            for (long[] event : pendingEvents) {
+                rebuilt.record(event[0], event[1]);
+            }
+            pendingEvents = null;
+            state = rebuilt;
+            users = rebuilt.summaries.size();
+            accounts = rebuilt.cards.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Cards of recipients first paid during the scan
+        loadCards(null, missingCards());
+        ready = true;
+        log.info("Counterparty index ready: {} users, {} accounts from {} payments in {} ms (~{} bytes)",
+            users, accounts, count[0], System.currentTimeMillis() - started,
+            footprintBytes(users, accounts));
+    }
+    
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("users", state.summaries.size());
+            stats.put("accounts", state.cards.size());
+            stats.put("topK", topK);
+            stats.put("recent", recentSize);
+            stats.put("maxUsers", maxUsers);
+            stats.put("memoryBytes", footprintBytes());
+            stats.put("ready", ready);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private long[] missingCards() {
+        lock.readLock().lock();
+        try {
+            List<Long> missing = new ArrayList<>();
+            state.cards.forEach((accountId, card) -> {
+                if (card.accountNumber == null) {
+                    missing.add(accountId);
+                }
+            });
+            return missing.stream().mapToLong(Long::longValue).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Fill in display details for the given accounts (one query, any number of ids), in an
+     * index still being built, or in the live one (target null)
+     */
+    private void loadCards(State target, long[] accountIds) {
+        if (accountIds.length == 0) {
+            return;
+        }
+        Long[] ids = new Long[accountIds.length];
+        for (int i = 0; i < accountIds.length; i++) {
+            ids[i] = accountIds[i];
+        }
+        List<Object[]> rows = new ArrayList<>();
+        jdbcTemplate.query(
+            connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                    "SELECT a.id, a.account_number, a.account_type, a.currency, a.created_at, " +
+                    "u.id, u.first_name, u.last_name, u.username, u.email " +
+                    "FROM accounts a JOIN users u ON u.id = a.user_id WHERE a.id = ANY(?) AND a.is_active = true");
+                statement.setArray(1, connection.createArrayOf("bigint", ids));
+                return statement;
+            },
+            rs -> {
+                String fullName = ((rs.getString(7) != null ? rs.getString(7) : "") + " " +
+                    (rs.getString(8) != null ? rs.getString(8) : "")).trim();
+                Timestamp createdAt = rs.getTimestamp(5);
+                rows.add(new Object[] {
+                    rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                    createdAt != null ? createdAt.toLocalDateTime() : null, rs.getLong(6),
+                    fullName.isEmpty() ? rs.getString(9) : fullName, rs.getString(10)
+                });
+            });
+        
+        if (target != null) {
+            fillCards(target, rows);
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            fillCards(state, rows);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private static void fillCards(State target, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            Card card = target.cards.get((Long) row[0]);
+            if (card == null) {
+                continue; // Evicted while the query ran
+            }
+            card.accountNumber = (String) row[1];
+            card.accountType = (String) row[2];
+            card.currency = (String) row[3];
+            card.createdAt = (LocalDateTime) row[4];
+            card.userId = (Long) row[5];
+            card.userName = (String) row[6];
+            card.userEmail = (String) row[7];
+            card.searchText = String.join(" ", card.accountNumber, card.userName,
+                card.userEmail, card.accountType).toLowerCase(Locale.ROOT);
+        }
+    }
+    
+    private long footprintBytes() {
+        return footprintBytes(state.summaries.size(), state.cards.size());
+    }
+    
+    private long footprintBytes(int users, int accounts) {
+        // Per user: map entry + summary arrays; per account: card with a few short strings
+        return users * (96L + 24L * topK + 8L * recentSize) + accounts * 320L;
+    }
+    
+    /**
+     * Summaries and the account cards they reference
+     */
+    private final class State {
+        final Map<Long, Summary> summaries = new LinkedHashMap<>(1024); // Oldest activity first
+        final LongKeyedMap<Card> cards = new LongKeyedMap<>(1024);
+        
+        /**
+         * Count one payment from userId to accountId (the live state only under the write lock)
+         */
+        void record(long userId, long accountId) {
+            Summary summary = summaries.remove(userId); // Re-inserted below as the most recently active
+            if (summary == null) {
+                summary = new Summary(topK, recentSize);
+                if (summaries.size() >= maxUsers) {
+                    Iterator<Summary> oldest = summaries.values().iterator();
+                    oldest.next().releaseAll(this);
+                    oldest.remove();
+                }
+            }
+            summaries.put(userId, summary);
+            summary.observe(accountId, this);
+        }
+        
+        void retain(long accountId) {
+            cards.computeIfAbsent(accountId, id -> new Card()).refs++;
+        }
+        
+        void release(long accountId) {
+            Card card = cards.get(accountId);
+            if (card != null && --card.refs <= 0) {
+                cards.remove(accountId);
+            }
+        }
+    }
+    
+    /**
+     * A user's frequent and recent recipients, most relevant first
+     */
+    @lombok.Value
+    public static class Counterparties {
+        List<Entry> frequent;
+        List<Entry> recent;
+        boolean ready;
+    }
+    
+    /**
+     * One recipient account as shown in the transfer form
+     */
+    @lombok.Value
+    public static class Entry {
+        long accountId;
+        String accountNumber;
+        String accountType;
+        String currency;
+        LocalDateTime createdAt;
+        long userId;
+        String userName;
+        String userEmail;
+        long count;     // Space-saving estimate (0 for recent-only entries)
+        long maxError;  // The true count is at least count - maxError
+    }
+    
+    private static final class Card {
+        int refs;
+        String accountNumber; // null until loaded
+        String accountType;
+        String currency;
+        LocalDateTime createdAt;
+        long userId;
+        String userName;
+        String userEmail;
+        String searchText;
+    }
+    
+    /**
+     * Space-saving top-K (parallel arrays) plus a move-to-front list of recent recipients
+     */
+    private static final class Summary {
+        final long[] ids;
+        final long[] counts;
+        final long[] errors;
+        int size;
+        final long[] recent;
+        int recentCount;
+        
+        Summary(int topK, int recentSize) {
+            ids = new long[topK];
+            counts = new long[topK];
+            errors = new long[topK];
+            recent = new long[recentSize];
+        }
+        
+        void observe(long accountId, State index) {
+            // Top-K: increment if tracked, else take a free slot, else replace the minimum
+            int min = -1;
+            int slot = -1;
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == accountId) {
+                    slot = i;
+                    break;
+                }
+                if (min < 0 || counts[i] < counts[min]) {
+                    min = i;
+                }
+            }
+            if (slot >= 0) {
+                counts[slot]++;
+            } else if (size < ids.length) {
+                ids[size] = accountId;
+                counts[size] = 1;
+                errors[size] = 0;
+                size++;
+                index.retain(accountId);
+            } else if (ids.length > 0) {
+                index.release(ids[min]);
+                ids[min] = accountId;
+                errors[min] = counts[min];
+                counts[min]++;
+                index.retain(accountId);
+            }
+            
+            // Recent: move to front
+            int at = 0;
+            while (at < recentCount && recent[at] != accountId) {
+                at++;
+            }
+            if (at == recentCount) {
+                if (recentCount < recent.length) {
+                    recentCount++;
+                } else if (recent.length > 0) {
+                    index.release(recent[recent.length - 1]);
+                    at = recent.length - 1;
+                } else {
+                    return;
+                }
+                index.retain(accountId);
+            }
+            System.arraycopy(recent, 0, recent, 1, Math.min(at, recent.length - 1));
+            recent[0] = accountId;
+        }
+        
+        void releaseAll(State index) {
+            for (int i = 0; i < size; i++) {
+                index.release(ids[i]);
+            }
+            for (int i = 0; i < recentCount; i++) {
+                index.release(recent[i]);
+            }
+        }
+        
+        List<Entry> frequent(LongKeyedMap<Card> cards, String needle, int limit) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+            List<Entry> entries = new ArrayList<>();
+            for (int i = 0; i < size && entries.size() < limit; i++) {
+                int slot = order[i];
+                addIfMatches(entries, cards, ids[slot], counts[slot], errors[slot], needle);
+            }
+            return entries;
+        }
+        
+        List<Entry> recent(LongKeyedMap<Card> cards, String needle, int limit) {
+            List<Entry> entries = new ArrayList<>();
+            for (int i = 0; i < recentCount && entries.size() < limit; i++) {
+                long count = 0;
+                long error = 0;
+                for (int slot = 0; slot < size; slot++) {
+                    if (ids[slot] == recent[i]) {
+                        count = counts[slot];
+                        error = errors[slot];
+                        break;
+                    }
+                }
+                addIfMatches(entries, cards, recent[i], count, error, needle);
+            }
+            return entries;
+        }
+        
+        private static void addIfMatches(List<Entry> entries, LongKeyedMap<Card> cards, long accountId,
+                                         long count, long error, String needle) {
+            Card card = cards.get(accountId);
+            if (card == null || card.accountNumber == null) {
+                return; // Inactive account, or details not loaded yet
+            }
+            if (needle != null && !card.searchText.contains(needle)) {
+                return;
+            }
+            entries.add(new Entry(accountId, card.accountNumber, card.accountType, card.currency, card.createdAt,
+                card.userId, card.userName, card.userEmail, count, error));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.entity.Currency;
+import com.transactiq.backend.repository.CurrencyRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Table-driven registry of supported currencies.
+ *
+ * Each currency gets a dense index (its position in id order), so indices only ever grow
+ * while the application runs and can be used directly as array offsets, e.g. in
+ * ExchangeRateSnapshot. Codes are interned once: code(index) always returns the same
+ * String instance, and indexOf() resolves upper- and lower-case spellings without
+ * allocating.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CurrencyRegistry {
+    
+    private final CurrencyRepository currencyRepository;
+    
+    private volatile Table table;
+    
+    /**
+     * Dense index of a currency code (any case), or -1 if unknown
+     */
+    public int indexOf(String code) {
+        if (code == null) {
+            return -1;
+        }
+        Table current = table();
+        Integer index = current.index.get(code);
+        if (index == null) {
+            index = current.index.get(code.trim().toUpperCase(Locale.ROOT));
+        }
+        return index != null ? index : -1;
+    }
+    
+    /**
+     * Index of an active currency, or -1 if unknown or inactive
+     */
+    public int activeIndexOf(String code) {
+        int index = indexOf(code);
+        return index >= 0 && table().active[index] ? index : -1;
+    }
+    
+    public boolean isSupported(String code) {
+        return activeIndexOf(code) >= 0;
+    }
+    
+    /**
+     * Canonical (interned, upper-case) code for an index
+     */
+    public String code(int index) {
+        return table().codes[index];
+    }
+    
+    public int minorUnits(int index) {
+        return table().minorUnits[index];
+    }
+    
+    public BigDecimal defaultUsdRate(int index) {
+        return table().defaultUsdRates[index];
+    }
+    
+    public int size() {
+        return table().codes.length;
+    }
+    
+    /**
+     * Increases every time the registry is reloaded
+     */
+    public long getVersion() {
+        return table().version;
+    }
+    
+    /**
+     * All codes in index order (including inactive ones)
+     */
+    public String[] getCodes() {
+        return table().codes.clone();
+    }
+    
+    public List<String> getActiveCodes() {
+        Table current = table();
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < current.codes.length; i++) {
+            if (current.active[i]) {
+                codes.add(current.codes[i]);
+            }
+        }
+        return codes;
+    }
+    
+    /**
+     * Re-read the currencies table and publish a new registry table
+     */
+    @Transactional(readOnly = true)
+    public synchronized void reload() {
+        List<Currency> currencies = currencyRepository.findAllByOrderByIdAsc();
+        Table previous = table;
+        int n = currencies.size();
+        String[] codes = new String[n];
+        int[] minorUnits = new int[n];
+        BigDecimal[] defaultUsdRates = new BigDecimal[n];
+        boolean[] active = new boolean[n];
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Currency currency = currencies.get(i);
+            String code = currency.getCode().toUpperCase(Locale.ROOT).intern();
+            codes[i] = code;
+            minorUnits[i] = currency.getMinorUnits() != null ? currency.getMinorUnits() : 2;
+            defaultUsdRates[i] = currency.getDefaultUsdRate();
+            active[i] = currency.getIsActive() == null || currency.getIsActive();
+            index.put(code, i);
+            index.put(code.toLowerCase(Locale.ROOT), i);
+        }
+        table = new Table(previous != null ? previous.version + 1 : 1, codes, minorUnits, defaultUsdRates, active,
+            Map.copyOf(index));
+        log.info("Currency registry loaded: {}", String.join(", ", codes));
+    }
+    
+    /**
+     * Insert the original USD/CAD/EUR set when the currencies table is empty
+     */
+    @Transactional
+    public void seedDefaults() {
+        if (currencyRepository.count() > 0) {
+            return;
+        }
+        currencyRepository.save(new Currency(null, "USD", "US Dollar", 2, new BigDecimal("1.000000"), true, null));
+        currencyRepository.save(new Currency(null, "CAD", "Canadian Dollar", 2, new BigDecimal("1.350000"), true, null));
+        currencyRepository.save(new Currency(null, "EUR", "Euro", 2, new BigDecimal("0.920000"), true, null));
+    }
+    
+    private Table table() {
+        Table current = table;
+        if (current == null) {
+            reload();
+            current = table;
+        }
+        return current;
+    }
+    
+    /**
+     * Immutable registry contents; replaced as a whole on reload
+     */
+    private static final class Table {
+        final long version;
+        final String[] codes;
+        final int[] minorUnits;
+        final BigDecimal[] defaultUsdRates;
+        final boolean[] active;
+        final Map<String, Integer> index;
+        
+        Table(long version, String[] codes, int[] minorUnits, BigDecimal[] defaultUsdRates,
+              boolean[] active, Map<String, Integer> index) {
+            this.version = version;
+            this.codes = codes;
+            this.minorUnits = minorUnits;
+            this.defaultUsdRates = defaultUsdRates;
+            this.active = active;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.util.LongHashSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory detector for double-submitted payments (same from account, to account and amount
+ * within a short window).
+ *
+ * Fingerprints live in a ring of time buckets, each a primitive hash set. A bucket is cleared
+ * when the ring wraps back onto it, so entries expire without a sweeper and memory is bounded
+ * by max-fingerprints. The effective window is rounded up to whole buckets. State is per
+ * instance; it is a fast guard against client retries, not a uniqueness constraint.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DuplicatePaymentDetector {
+    
+    public enum Mode {
+        OFF,     // Detection disabled
+        FLAG,    // Mark the payment as a suspected duplicate and send it to the checker queue
+        REJECT   // Refuse to create the payment
+    }
+    
+    private static final int BUCKETS = 6; // Buckets per window; one extra holds the current partial bucket
+    
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${transactiq.payments.duplicate-detection.mode:flag}")
+    private String modeSetting;
+    
+    @Value("${transactiq.payments.duplicate-detection.window-ms:60000}")
+    private long windowMs;
+    
+    @Value("${transactiq.payments.duplicate-detection.max-fingerprints:200000}")
+    private int maxFingerprints;
+    
+    private Mode mode;
+    private long bucketMs;
+    private int bucketCapacity;
+    private LongHashSet[] ring;
+    private long[] ringEpochs;
+    
+    private Timer checkTimer;
+    private Counter detectedCounter;
+    private Counter droppedCounter;
+    
+    @PostConstruct
+    public void init() {
+        mode = Mode.valueOf(modeSetting.trim().toUpperCase());
+        bucketMs = Math.max(1, (windowMs + BUCKETS - 1) / BUCKETS);
+        bucketCapacity = Math.max(16, maxFingerprints / (BUCKETS + 1));
+        ring = new LongHashSet[BUCKETS + 1];
+        ringEpochs = new long[BUCKETS + 1];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new LongHashSet(64);
+            ringEpochs[i] = -1;
+        }
+        
+        checkTimer = Timer.builder("transactiq.payments.duplicate.check")
+            .description("Time spent checking and recording a payment fingerprint")
+            .register(meterRegistry);
+        detectedCounter = Counter.builder("transactiq.payments.duplicate.detected")
+            .tag("mode", mode.name().toLowerCase())
+            .register(meterRegistry);
+        droppedCounter = Counter.builder("transactiq.payments.duplicate.dropped")
+            .description("Fingerprints not recorded because a bucket was at capacity")
+            .register(meterRegistry);
+        Gauge.builder("transactiq.payments.duplicate.fingerprints", this, DuplicatePaymentDetector::fingerprintCount)
+            .register(meterRegistry);
+        Gauge.builder("transactiq.payments.duplicate.memory", this, DuplicatePaymentDetector::footprintBytes)
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        
+        log.info("Duplicate payment detection: mode={}, window={} ms, max fingerprints={}", mode, windowMs, maxFingerprints);
+    }
+    
+    public Mode getMode() {
+        return mode;
+    }
+    
+    public long getWindowMs() {
+        return windowMs;
+    }
+    
+    /**
+     * Check whether an equivalent payment was seen within the window and record this one.
+     * @return the recorded fingerprint (pass to forget() if the payment is not persisted),
+     *         -1 if it is a duplicate, or 0 if nothing was recorded
+     */
+    public long checkAndRecord(long fromAccountId, long toAccountId, long amountMinor, long nowMillis) {
+        if (mode == Mode.OFF) {
+            return 0;
+        }
+        long started = System.nanoTime();
+        long fingerprint = fingerprint(fromAccountId, toAccountId, amountMinor);
+        long result;
+        synchronized (this) {
+            long epoch = nowMillis / bucketMs;
+            int current = (int) (epoch % ring.length);
+            if (ringEpochs[current] != epoch) {
+                // The ring wrapped onto this bucket - everything in it is older than the window
+                ring[current].clear();
+                ringEpochs[current] = epoch;
+            }
+            
+            boolean seen = false;
+            for (int i = 0; i < ring.length && !seen; i++) {
+                seen = epoch - ringEpochs[i] <= BUCKETS && ring[i].contains(fingerprint);
+            }
+            
+            if (seen) {
+                result = -1;
+            } else if (ring[current].size() >= bucketCapacity) {
+                droppedCounter.increment();
+                result = 0;
+            } else {
+                ring[current].add(fingerprint);
+                result = fingerprint;
+            }
+        }
+        if (result == -1) {
+            detectedCounter.increment();
+        }
+        checkTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return result;
+    }
+    
+    /**
+     * Drop a fingerprint recorded for a payment whose creation was rolled back
+     */
+    public synchronized void forget(long fingerprint) {
+        if (fingerprint == 0 || fingerprint == -1) {
+            return;
+        }
+        for (LongHashSet bucket : ring) {
+            bucket.remove(fingerprint);
+        }
+    }
+    
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", mode.name());
+        stats.put("windowMs", windowMs);
+        stats.put("bucketMs", bucketMs);
+        stats.put("fingerprints", fingerprintCount());
+        stats.put("maxFingerprints", maxFingerprints);
+        stats.put("memoryBytes", footprintBytes());
+        stats.put("detected", (long) detectedCounter.count());
+        stats.put("dropped", (long) droppedCounter.count());
+        stats.put("meanCheckNanos", checkTimer.mean(TimeUnit.NANOSECONDS));
+        return stats;
+    }
+    
+    private synchronized double fingerprintCount() {
+        long count = 0;
+        for (LongHashSet bucket : ring) {
+            count += bucket.size();
+        }
+        return count;
+    }
+    
+    private synchronized double footprintBytes() {
+        long bytes = 0;
+        for (LongHashSet bucket : ring) {
+            bytes += bucket.footprintBytes();
+        }
+        return bytes;
+    }
+    
+    /**
+     * 64-bit mix of the payment identity; never 0 or -1 (reserved by LongHashSet / checkAndRecord)
+     */
+    static long fingerprint(long fromAccountId, long toAccountId, long amountMinor) {
+        long h = fromAccountId * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 29) ^ toAccountId) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 32) ^ amountMinor) * 0x94D049BB133111EBL;
+        h ^= h >>> 31;
+        return h == 0 || h == -1 ? 1 : h;
+    }
+}
@@ -0,0 +1,395 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.event.ExchangeRatesChangedEvent;
+import com.transactiq.backend.event.ExchangeRatesRefreshedEvent;
+import com.transactiq.backend.util.LongKeyedMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index over exchange_rate_ticks for as-of lookups.
+ *
+ * Each stored pair keeps two parallel primitive arrays sorted by time: effective-at
+ * millis and the rate as a scale-6 unscaled long. "Rate at instant t" is a binary
+ * search for the last tick at or before t. New ticks are appended after commit.
+ *
+ * Ticks committed on other instances are fetched by change_seq, stamped by a trigger with the
+ * writing transaction id like payments.change_seq (see PaymentChangeFeed), so catch-up
+ * follows commit order rather than effective time.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExchangeRateHistory {
+    
+    static final int RATE_SCALE = 6;
+    private static final int FETCH_SIZE = 10_000;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final PaymentChangeFeed paymentChangeFeed;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongKeyedMap<Series> series = new LongKeyedMap<>(64);
+    private long loadToken; // Change token taken before the last full load
+    private long tickCount;
+    private long buildMillis;
+    private volatile boolean ready;
+    
+    /**
+     * Stored (direct) rate for the pair that was live at atMillis, or null if none
+     */
+    public AsOfRate rateAt(String fromCurrency, String toCurrency, long atMillis) {
+        lock.readLock().lock();
+        try {
+            Series pair = series.get(pairKey(fromCurrency, toCurrency));
+            if (pair == null) {
+                return null;
+            }
+            int i = pair.floor(atMillis);
+            if (i < 0) {
+                return null;
+            }
+            return new AsOfRate(BigDecimal.valueOf(pair.rates[i], RATE_SCALE), pair.times[i],
+                fromCurrency + ">" + toCurrency);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Rate live at atMillis, resolved exactly like the live lookup: the ticks live at that
+     * instant go through the same ExchangeRateSnapshot.Builder (same path choice and
+     * rounding), so the result equals what a live lookup returned then. Null if not resolvable.
+     */
+    public AsOfRate resolveAt(String fromCurrency, String toCurrency, long atMillis) {
+        if (fromCurrency.equals(toCurrency)) {
+            return new AsOfRate(BigDecimal.ONE, 0, fromCurrency);
+        }
+        ExchangeRateSnapshot.Builder builder = new ExchangeRateSnapshot.Builder();
+        Map<String, Long> effectiveAt = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            series.forEach((key, pair) -> {
+                int i = pair.floor(atMillis);
+                if (i >= 0) {
+                    String from = fromCode(key);
+                    String to = toCode(key);
+                    builder.add(from, to, BigDecimal.valueOf(pair.rates[i], RATE_SCALE));
+                    effectiveAt.put(from + ">" + to, pair.times[i]);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        ExchangeRateSnapshot snapshot = builder.build(0);
+        int from = snapshot.indexOf(fromCurrency);
+        int to = snapshot.indexOf(toCurrency);
+        BigDecimal rate = snapshot.rate(from, to);
+        if (rate == null) {
+            return null;
+        }
+        // The quote is as old as the newest tick it was derived from (stored or reversed leg)
+        String path = snapshot.path(from, to);
+        String[] hops = path.split(">");
+        long newest = 0;
+        for (int i = 1; i < hops.length; i++) {
+            Long leg = effectiveAt.get(hops[i - 1] + ">" + hops[i]);
+            if (leg == null) {
+                leg = effectiveAt.get(hops[i] + ">" + hops[i - 1]);
+            }
+            newest = Math.max(newest, leg);
+        }
+        return new AsOfRate(rate, newest, path);
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRatesChanged(ExchangeRatesChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            append(event.getFromCurrency(), event.getToCurrency(), event.getEffectiveAtMillis(), event.getRate());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRatesRefreshed(ExchangeRatesRefreshedEvent event) {
+        lock.writeLock().lock();
+        try {
+            for (ExchangeRatesChangedEvent change : event.getChanges()) {
+                append(change.getFromCurrency(), change.getToCurrency(), change.getEffectiveAtMillis(), change.getRate());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Append ticks another instance committed for the given "FROM>TO" pairs (null = reload all).
+     * Each pair keeps the change token of its last fetch, so a tick committed late with an
+     * earlier effective time is still picked up. Ticks seen twice (in flight at that token,
+     * or already appended from a local event) are skipped.
+     */
+    public void catchUp(List<String> pairs) {
+        if (pairs == null) {
+            load(0);
+            return;
+        }
+        // The change token is database-wide (pg_snapshot_xmin), so the payments feed's works here
+        long token = paymentChangeFeed.currentToken();
+        List<Object[]> ticks = new ArrayList<>();
+        for (String pair : pairs) {
+            String fromCurrency = pair.substring(0, 3);
+            String toCurrency = pair.substring(4);
+            long since;
+            lock.readLock().lock();
+            try {
+                Series known = series.get(pairKey(fromCurrency, toCurrency));
+                since = known != null ? known.syncToken : loadToken;
+            } finally {
+                lock.readLock().unlock();
+            }
+            jdbcTemplate.query(
+                "SELECT effective_at, rate FROM exchange_rate_ticks " +
+                "WHERE from_currency = ? AND to_currency = ? AND (change_seq >= ? OR change_seq IS NULL) " +
+                "ORDER BY effective_at",
+                rs -> {
+                    ticks.add(new Object[] {fromCurrency, toCurrency, rs.getTimestamp(1).getTime(), rs.getBigDecimal(2)});
+                },
+                fromCurrency, toCurrency, since);
+        }
+        lock.writeLock().lock();
+        try {
+            for (Object[] tick : ticks) {
+                append((String) tick[0], (String) tick[1], (Long) tick[2], (BigDecimal) tick[3]);
+            }
+            for (String pair : pairs) {
+                Series known = series.get(pairKey(pair.substring(0, 3), pair.substring(4)));
+                if (known != null) {
+                    known.syncToken = Math.max(known.syncToken, token);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Install the trigger stamping exchange_rate_ticks.change_seq and stamp rows written
+     * before it existed (idempotent)
+     */
+    private void installChangeStamp() {
+        jdbcTemplate.execute(
+            "CREATE OR REPLACE FUNCTION exchange_rate_ticks_stamp_change_seq() RETURNS trigger AS $$ " +
+            "BEGIN NEW.change_seq := pg_current_xact_id()::text::bigint; RETURN NEW; END " +
+            "$$ LANGUAGE plpgsql");
+        jdbcTemplate.execute(
+            "DO $$ BEGIN " +
+            "  IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = 'exchange_rate_ticks_change_seq') THEN " +
+            "    CREATE TRIGGER exchange_rate_ticks_change_seq BEFORE INSERT ON exchange_rate_ticks " +
+            "    FOR EACH ROW EXECUTE FUNCTION exchange_rate_ticks_stamp_change_seq(); " +
+            "  END IF; " +
+            "END $$");
+        jdbcTemplate.update("UPDATE exchange_rate_ticks SET change_seq = pg_current_xact_id()::text::bigint WHERE change_seq IS NULL");
+    }
+    
+    /**
+     * Install the change_seq stamp, record the current rate of any pair with no history yet,
+     * then load every tick
+     */
+    @Transactional
+    public void warmUp() {
+        installChangeStamp();
+        int backfilled = jdbcTemplate.update(
+            "INSERT INTO exchange_rate_ticks (from_currency, to_currency, rate, effective_at, source) " +
+            "SELECT r.from_currency, r.to_currency, r.rate, COALESCE(r.updated_at, r.created_at, now()), 'BACKFILL' " +
+            "FROM exchange_rates r WHERE NOT EXISTS (" +
+            "  SELECT 1 FROM exchange_rate_ticks t " +
+            "  WHERE t.from_currency = r.from_currency AND t.to_currency = r.to_currency)");
+        load(backfilled);
+    }
+    
+    private void load(int backfilled) {
+        long started = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            series.clear();
+            tickCount = 0;
+            loadToken = paymentChangeFeed.currentToken();
+            JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+            streaming.setFetchSize(FETCH_SIZE);
+            streaming.query(
+                "SELECT from_currency, to_currency, effective_at, rate FROM exchange_rate_ticks " +
+                "ORDER BY from_currency, to_currency, effective_at",
+                rs -> {
+                    append(rs.getString(1), rs.getString(2), rs.getTimestamp(3).getTime(), rs.getBigDecimal(4));
+                });
+            for (long key : pairKeys()) {
+                series.get(key).trim();
+            }
+            buildMillis = (System.nanoTime() - started) / 1_000_000;
+            ready = true;
+            log.info("Exchange rate history ready: {} ticks over {} pairs ({} backfilled) in {} ms, ~{} bytes",
+                tickCount, series.size(), backfilled, buildMillis, footprintBytes());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            long bytes = footprintBytes();
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("pairs", series.size());
+            stats.put("ticks", tickCount);
+            stats.put("memoryBytes", bytes);
+            stats.put("bytesPerMillionTicks", tickCount > 0 ? bytes * 1_000_000 / tickCount : 0);
+            stats.put("buildMillis", buildMillis);
+            stats.put("ready", ready);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void append(String fromCurrency, String toCurrency, long atMillis, BigDecimal rate) {
+        long unscaled = rate.setScale(RATE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        Series pair = series.computeIfAbsent(pairKey(fromCurrency, toCurrency), key -> new Series(loadToken));
+        if (pair.add(atMillis, unscaled)) {
+            tickCount++;
+        }
+    }
+    
+    private long[] pairKeys() {
+        long[] keys = new long[series.size()];
+        int[] i = {0};
+        series.forEach((key, value) -> keys[i[0]++] = key);
+        return keys;
+    }
+    
+    private long footprintBytes() {
+        long[] bytes = {0};
+        series.forEach((key, pair) -> bytes[0] += 48 + 16L * pair.times.length + 32);
+        return bytes[0];
+    }
+    
+    private static String fromCode(long pairKey) {
+        return code(pairKey >>> 24);
+    }
+    
+    private static String toCode(long pairKey) {
+        return code(pairKey);
+    }
+    
+    private static String code(long packed) {
+        return new String(new char[] {
+            (char) ((packed >>> 16) & 0xFF), (char) ((packed >>> 8) & 0xFF), (char) (packed & 0xFF)});
+    }
+    
+    /**
+     * Pack two 3-letter codes into one non-zero long key (8 bits per character)
+     */
+    static long pairKey(String fromCurrency, String toCurrency) {
+        long key = 0;
+        for (int i = 0; i < 3; i++) {
+            key = (key << 8) | (fromCurrency.charAt(i) & 0xFF);
+        }
+        for (int i = 0; i < 3; i++) {
+            key = (key << 8) | (toCurrency.charAt(i) & 0xFF);
+        }
+        return key;
+    }
+    
+    /**
+     * A historical rate and the instant it became effective
+     */
+    @lombok.Value
+    public static class AsOfRate {
+        BigDecimal rate;
+        long effectiveAtMillis;
+        String path;
+    }
+    
+    /**
+     * Ticks of one pair: parallel arrays sorted by effective time
+     */
+    private static final class Series {
+        long[] times = new long[4];
+        long[] rates = new long[4];
+        int size;
+        long syncToken; // Change token of the last catch-up fetch
+        
+        Series(long syncToken) {
+            this.syncToken = syncToken;
+        }
+        
+        /**
+         * Insert a tick in time order; false if the same tick is already held
+         */
+        boolean add(long atMillis, long rate) {
+            for (int i = floor(atMillis); i >= 0 && times[i] == atMillis; i--) {
+                if (rates[i] == rate) {
+                    return false;
+                }
+            }
+            if (size == times.length) {
+                int capacity = size + (size >> 1) + 1;
+                times = Arrays.copyOf(times, capacity);
+                rates = Arrays.copyOf(rates, capacity);
+            }
+            int at = size;
+            if (size > 0 && atMillis < times[size - 1]) {
+                // Out-of-order tick (rare): keep the arrays sorted
+                at = floor(atMillis) + 1;
+                System.arraycopy(times, at, times, at + 1, size - at);
+                System.arraycopy(rates, at, rates, at + 1, size - at);
+            }
+            times[at] = atMillis;
+            rates[at] = rate;
+            size++;
+            return true;
+        }
+        
+        /**
+         * Index of the last tick at or before atMillis, or -1
+         */
+        int floor(long atMillis) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] <= atMillis) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+        
+        void trim() {
+            times = Arrays.copyOf(times, size);
+            rates = Arrays.copyOf(rates, size);
+        }
+    }
+}
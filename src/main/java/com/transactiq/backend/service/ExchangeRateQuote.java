@@ -0,0 +1,16 @@
+package com.transactiq.backend.service;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * A resolved exchange rate together with how it was derived
+ */
+@Value
+public class ExchangeRateQuote {
+    
+    BigDecimal rate;       // 1 fromCurrency = rate toCurrency
+    String path;           // Currencies the rate was chained through, e.g. "CAD>USD>EUR"
+    long snapshotVersion;  // ExchangeRateSnapshot the quote was read from (ExchangeRateSnapshot.getAsOfMillis)
+}
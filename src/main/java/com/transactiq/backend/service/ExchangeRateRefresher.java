@@ -0,0 +1,232 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.event.ExchangeRatesChangedEvent;
+import com.transactiq.backend.event.ExchangeRatesRefreshedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pulls rates from the configured RateProvider ahead of them going stale.
+ *
+ * Each refresh coalesces the provider's ticks to the latest one per pair, drops pairs whose
+ * stored rate is already that rate, and writes the rest with one statement that
+ * upserts exchange_rates and appends exchange_rate_ticks for the rows that actually changed.
+ * After commit the snapshot is rebuilt once for the whole batch and swapped in; readers keep
+ * using the previous snapshot until then and never wait on a refresh.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExchangeRateRefresher {
+    
+    private static final String UPSERT_SQL =
+        "WITH incoming AS (" +
+        "  SELECT * FROM unnest(?::varchar[], ?::varchar[], ?::numeric[], ?::timestamp[]) " +
+        "  AS t(from_currency, to_currency, rate, effective_at)" +
+        "), upserted AS (" +
+        "  INSERT INTO exchange_rates (from_currency, to_currency, rate, is_active, created_at, updated_at) " +
+        "  SELECT from_currency, to_currency, rate, true, now(), now() FROM incoming " +
+        "  ON CONFLICT (from_currency, to_currency) DO UPDATE " +
+        "  SET rate = EXCLUDED.rate, is_active = true, updated_at = EXCLUDED.updated_at " +
+        "  WHERE exchange_rates.rate IS DISTINCT FROM EXCLUDED.rate OR NOT exchange_rates.is_active " +
+        "  RETURNING from_currency, to_currency, rate" +
+        "), ticks AS (" +
+        "  INSERT INTO exchange_rate_ticks (from_currency, to_currency, rate, effective_at, source) " +
+        "  SELECT u.from_currency, u.to_currency, u.rate, i.effective_at, ? " +
+        "  FROM upserted u JOIN incoming i USING (from_currency, to_currency) " +
+        "  RETURNING from_currency, to_currency, rate, effective_at" +
+        ") SELECT from_currency, to_currency, rate, effective_at FROM ticks";
+    
+    private final ObjectProvider<RateProvider> rateProvider;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ExchangeRateStore exchangeRateStore;
+    private final CurrencyRegistry currencyRegistry;
+    private final PendingPaymentRequoter pendingPaymentRequoter;
+    private final InvalidationBus invalidationBus;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${transactiq.fx.provider.max-age-ms:120000}")
+    private long maxAgeMs;
+    
+    // Last time the provider reported each pair ("USD>CAD"), for the staleness gauges
+    private final Map<String, AtomicLong> lastObserved = new ConcurrentHashMap<>();
+    private Timer refreshTimer;
+    private volatile long lastRefreshMillis;
+    private volatile int lastChanged;
+    
+    @PostConstruct
+    public void init() {
+        RateProvider provider = rateProvider.getIfAvailable();
+        refreshTimer = Timer.builder("transactiq.fx.refresh")
+            .description("Time spent pulling and applying one provider refresh")
+            .register(meterRegistry);
+        Gauge.builder("transactiq.fx.stale.pairs", this, ExchangeRateRefresher::stalePairs)
+            .description("Provider pairs not refreshed within max-age")
+            .register(meterRegistry);
+        if (provider != null) {
+            log.info("Exchange rate provider {}: refreshing ahead of max age {} ms", provider.getName(), maxAgeMs);
+        }
+    }
+    
+    /**
+     * Pull, coalesce and apply the provider's rates.
+     * Runs well inside max-age so rates are replaced before they are considered stale.
+     */
+    @Scheduled(fixedDelayString = "${transactiq.fx.provider.refresh-interval-ms:30000}",
+               initialDelayString = "${transactiq.fx.provider.refresh-interval-ms:30000}")
+    public void refresh() {
+        RateProvider provider = rateProvider.getIfAvailable();
+        if (provider == null) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            List<RateProvider.Tick> ticks = provider.fetch();
+            List<ExchangeRatesChangedEvent> changes = apply(provider.getName(), coalesce(ticks));
+            lastRefreshMillis = System.currentTimeMillis();
+            lastChanged = changes.size();
+            log.debug("Exchange rate refresh from {}: {} ticks, {} pairs changed", provider.getName(), ticks.size(), changes.size());
+        } catch (Exception e) {
+            // Keep serving the current snapshot; staleness gauges show how long this has lasted
+            log.error("Exchange rate refresh from {} failed: {}", provider.getName(), e.getMessage());
+        } finally {
+            refreshTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        RateProvider provider = rateProvider.getIfAvailable();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("provider", provider != null ? provider.getName() : null);
+        stats.put("maxAgeMs", maxAgeMs);
+        stats.put("lastRefreshMillis", lastRefreshMillis);
+        stats.put("lastChanged", lastChanged);
+        stats.put("pairs", lastObserved.size());
+        stats.put("stalePairs", (long) stalePairs());
+        return stats;
+    }
+    
+    /**
+     * Latest valid tick per registered pair, minus pairs already stored at that rate
+     */
+    private List<RateProvider.Tick> coalesce(List<RateProvider.Tick> ticks) {
+        Map<String, RateProvider.Tick> latest = new LinkedHashMap<>();
+        for (RateProvider.Tick tick : ticks) {
+            int from = currencyRegistry.indexOf(tick.getFromCurrency());
+            int to = currencyRegistry.indexOf(tick.getToCurrency());
+            if (from < 0 || to < 0 || from == to || tick.getRate() == null || tick.getRate().signum() <= 0) {
+                log.warn("Ignoring provider tick {} -> {} = {}", tick.getFromCurrency(), tick.getToCurrency(), tick.getRate());
+                continue;
+            }
+            String pair = currencyRegistry.code(from) + ">" + currencyRegistry.code(to);
+            RateProvider.Tick previous = latest.get(pair);
+            if (previous == null || tick.getObservedAtMillis() >= previous.getObservedAtMillis()) {
+                latest.put(pair, new RateProvider.Tick(currencyRegistry.code(from), currencyRegistry.code(to),
+                    tick.getRate().setScale(6, RoundingMode.HALF_UP), tick.getObservedAtMillis()));
+            }
+        }
+        
+        ExchangeRateSnapshot snapshot = exchangeRateStore.current();
+        List<RateProvider.Tick> changed = new ArrayList<>();
+        for (Map.Entry<String, RateProvider.Tick> entry : latest.entrySet()) {
+            RateProvider.Tick tick = entry.getValue();
+            observed(entry.getKey(), tick.getObservedAtMillis());
+            // Compare with the stored rate: a resolved rate (reciprocal, chain) may match by chance
+            BigDecimal stored = snapshot.storedRate(tick.getFromCurrency(), tick.getToCurrency());
+            if (stored == null || stored.compareTo(tick.getRate()) != 0) {
+                changed.add(tick);
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Write all changed pairs in one statement and publish them as one batch after commit
+     */
+    private List<ExchangeRatesChangedEvent> apply(String source, List<RateProvider.Tick> ticks) {
+        if (ticks.isEmpty()) {
+            return List.of();
+        }
+        int n = ticks.size();
+        String[] froms = new String[n];
+        String[] tos = new String[n];
+        BigDecimal[] rates = new BigDecimal[n];
+        Timestamp[] effectiveAt = new Timestamp[n];
+        for (int i = 0; i < n; i++) {
+            RateProvider.Tick tick = ticks.get(i);
+            froms[i] = tick.getFromCurrency();
+            tos[i] = tick.getToCurrency();
+            rates[i] = tick.getRate();
+            effectiveAt[i] = new Timestamp(tick.getObservedAtMillis());
+        }
+        
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        return transactionTemplate.execute(status -> {
+            List<ExchangeRatesChangedEvent> changes = jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(UPSERT_SQL);
+                    statement.setArray(1, connection.createArrayOf("varchar", froms));
+                    statement.setArray(2, connection.createArrayOf("varchar", tos));
+                    statement.setArray(3, connection.createArrayOf("numeric", rates));
+                    statement.setArray(4, connection.createArrayOf("timestamp", effectiveAt));
+                    statement.setString(5, source);
+                    return statement;
+                },
+                (rs, rowNum) -> new ExchangeRatesChangedEvent(rs.getString(1), rs.getString(2),
+                    rs.getBigDecimal(3), rs.getTimestamp(4).getTime()));
+            if (!changes.isEmpty()) {
+                pendingPaymentRequoter.requoteChangedPairs();
+                eventPublisher.publishEvent(new ExchangeRatesRefreshedEvent(source, changes));
+                for (ExchangeRatesChangedEvent change : changes) {
+                    invalidationBus.publish(ExchangeRateStore.REGION, change.getFromCurrency() + ">" + change.getToCurrency());
+                }
+            }
+            return changes;
+        });
+    }
+    
+    private void observed(String pair, long observedAtMillis) {
+        AtomicLong last = lastObserved.computeIfAbsent(pair, key -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("transactiq.fx.rate.staleness", value, v -> System.currentTimeMillis() - v.get())
+                .description("Time since the provider last reported this pair")
+                .baseUnit("milliseconds")
+                .tag("pair", key)
+                .register(meterRegistry);
+            return value;
+        });
+        last.accumulateAndGet(observedAtMillis, Math::max);
+    }
+    
+    private double stalePairs() {
+        long cutoff = System.currentTimeMillis() - maxAgeMs;
+        return lastObserved.values().stream().filter(last -> last.get() < cutoff).count();
+    }
+}
@@ -1,13 +1,22 @@
 package com.transactiq.backend.service;
 
 import com.transactiq.backend.entity.ExchangeRate;
+import com.transactiq.backend.entity.ExchangeRateTick;
+import com.transactiq.backend.event.ExchangeRatesChangedEvent;
 import com.transactiq.backend.repository.ExchangeRateRepository;
+import com.transactiq.backend.repository.ExchangeRateTickRepository;
+import com.transactiq.backend.util.Money;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,6 +29,13 @@ import java.util.Optional;
 public class ExchangeRateService {
     
     private final ExchangeRateRepository exchangeRateRepository;
+    private final ExchangeRateTickRepository exchangeRateTickRepository;
+    private final ExchangeRateStore exchangeRateStore;
+    private final CurrencyRegistry currencyRegistry;
+    private final ExchangeRateHistory exchangeRateHistory;
+    private final PendingPaymentRequoter pendingPaymentRequoter;
+    private final InvalidationBus invalidationBus;
+    private final ApplicationEventPublisher eventPublisher;
     
     /**
      * Get exchange rate for currency pair
@@ -27,69 +43,98 @@ public class ExchangeRateService {
      * @param toCurrency Target currency
      * @return Exchange rate (1 fromCurrency = rate toCurrency)
      */
+    @Transactional(propagation = Propagation.SUPPORTS) // Served from memory - don't open a transaction
     public BigDecimal getExchangeRate(String fromCurrency, String toCurrency) {
-        // Validate currency codes
-        String[] supportedCurrencies = {"USD", "CAD", "EUR"};
-        String fromUpper = fromCurrency.toUpperCase();
-        String toUpper = toCurrency.toUpperCase();
+        // Validate currency codes against the registry (index lookup, no upper-casing on the common path)
+        int fromIndex = currencyRegistry.activeIndexOf(fromCurrency);
+        int toIndex = currencyRegistry.activeIndexOf(toCurrency);
         
-        boolean fromValid = false;
-        boolean toValid = false;
-        for (String supported : supportedCurrencies) {
-            if (supported.equals(fromUpper)) fromValid = true;
-            if (supported.equals(toUpper)) toValid = true;
-        }
-        
-        if (!fromValid) {
+        if (fromIndex < 0) {
             throw new IllegalArgumentException(
-                String.format("Invalid currency code: %s. Supported: USD, CAD, EUR", fromCurrency)
+                String.format("Invalid currency code: %s. Supported: %s", fromCurrency, supportedCurrencies())
             );
         }
-        if (!toValid) {
+        if (toIndex < 0) {
             throw new IllegalArgumentException(
-                String.format("Invalid currency code: %s. Supported: USD, CAD, EUR", toCurrency)
+                String.format("Invalid currency code: %s. Supported: %s", toCurrency, supportedCurrencies())
             );
         }
         
+        return getExchangeRate(fromIndex, toIndex);
+    }
+    
+    /**
+     * Get exchange rate by CurrencyRegistry index
+     * @return Exchange rate (1 fromCurrency = rate toCurrency)
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public BigDecimal getExchangeRate(int fromIndex, int toIndex) {
         // Same currency, no conversion needed
-        if (fromUpper.equals(toUpper)) {
+        if (fromIndex == toIndex) {
             return BigDecimal.ONE;
         }
         
-        // Try direct rate
-        Optional<ExchangeRate> directRate = exchangeRateRepository
-            .findByFromCurrencyAndToCurrencyAndIsActiveTrue(fromCurrency.toUpperCase(), toCurrency.toUpperCase());
-        
-        if (directRate.isPresent()) {
-            return directRate.get().getRate();
+        // Best-path rates for every pair are pre-resolved in the in-memory snapshot
+        BigDecimal rate = exchangeRateStore.current().rate(fromIndex, toIndex);
+        if (rate != null) {
+            return rate;
         }
         
-        // Try reverse rate
-        Optional<ExchangeRate> reverseRate = exchangeRateRepository
-            .findByFromCurrencyAndToCurrencyAndIsActiveTrue(toCurrency.toUpperCase(), fromCurrency.toUpperCase());
-        
-        if (reverseRate.isPresent()) {
-            return reverseRate.get().getReverseRate();
+        throw new RuntimeException(
+            String.format("Exchange rate not found for %s to %s",
+                currencyRegistry.code(fromIndex), currencyRegistry.code(toIndex))
+        );
+    }
+    
+    /**
+     * Get exchange rate with the conversion path and snapshot version (for audit)
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public ExchangeRateQuote getQuote(String fromCurrency, String toCurrency) {
+        int fromIndex = currencyRegistry.activeIndexOf(fromCurrency);
+        int toIndex = currencyRegistry.activeIndexOf(toCurrency);
+        if (fromIndex < 0 || toIndex < 0) {
+            throw new IllegalArgumentException(
+                String.format("Invalid currency code: %s. Supported: %s",
+                    fromIndex < 0 ? fromCurrency : toCurrency, supportedCurrencies())
+            );
         }
         
-        // Try USD as intermediate currency (USD is often the base currency)
-        if (!fromUpper.equals("USD") && !toUpper.equals("USD")) {
-            Optional<ExchangeRate> fromToUsd = exchangeRateRepository
-                .findByFromCurrencyAndToCurrencyAndIsActiveTrue(fromUpper, "USD");
-            Optional<ExchangeRate> usdToTo = exchangeRateRepository
-                .findByFromCurrencyAndToCurrencyAndIsActiveTrue("USD", toUpper);
-            
-            if (fromToUsd.isPresent() && usdToTo.isPresent()) {
-                // Convert: fromCurrency -> USD -> toCurrency
-                BigDecimal usdRate = fromToUsd.get().getRate(); // 1 fromCurrency = usdRate USD
-                BigDecimal toRate = usdToTo.get().getRate(); // 1 USD = toRate toCurrency
-                return usdRate.multiply(toRate).setScale(6, RoundingMode.HALF_UP);
-            }
+        ExchangeRateSnapshot snapshot = exchangeRateStore.current();
+        BigDecimal rate = fromIndex == toIndex ? BigDecimal.ONE : snapshot.rate(fromIndex, toIndex);
+        if (rate == null) {
+            throw new RuntimeException(
+                String.format("Exchange rate not found for %s to %s",
+                    currencyRegistry.code(fromIndex), currencyRegistry.code(toIndex))
+            );
+        }
+        return new ExchangeRateQuote(rate, snapshot.path(fromIndex, toIndex), snapshot.getAsOfMillis());
+    }
+    
+    /**
+     * Get the exchange rate that was live at a past instant (from the rate history)
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public ExchangeRateHistory.AsOfRate getExchangeRateAt(String fromCurrency, String toCurrency, LocalDateTime at) {
+        int fromIndex = currencyRegistry.indexOf(fromCurrency);
+        int toIndex = currencyRegistry.indexOf(toCurrency);
+        if (fromIndex < 0 || toIndex < 0) {
+            throw new IllegalArgumentException(
+                String.format("Invalid currency code: %s. Supported: %s",
+                    fromIndex < 0 ? fromCurrency : toCurrency, supportedCurrencies())
+            );
         }
         
-        throw new RuntimeException(
-            String.format("Exchange rate not found for %s to %s", fromUpper, toUpper)
-        );
+        String fromCode = currencyRegistry.code(fromIndex);
+        String toCode = currencyRegistry.code(toIndex);
+        ExchangeRateHistory.AsOfRate rate = exchangeRateHistory.resolveAt(
+            fromCode, toCode, at.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        if (rate == null) {
+            throw new RuntimeException(
+                String.format("Exchange rate not found for %s to %s at %s", fromCode, toCode, at)
+            );
+        }
+        return rate;
     }
     
     /**
@@ -99,6 +144,7 @@ public class ExchangeRateService {
      * @param toCurrency Target currency
      * @return Converted amount
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public BigDecimal convertAmount(BigDecimal amount, String fromCurrency, String toCurrency) {
         if (amount == null) {
             throw new IllegalArgumentException("Amount must be provided");
@@ -108,28 +154,119 @@ public class ExchangeRateService {
         }
         
         BigDecimal rate = getExchangeRate(fromCurrency, toCurrency);
-        return amount.multiply(rate).setScale(2, RoundingMode.HALF_UP);
+        return applyRate(amount, rate);
+    }
+    
+    /**
+     * Convert many amounts from one consistent snapshot, resolving each distinct pair once.
+     * Invalid lines get an error instead of failing the whole batch.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public ConversionBatch convertBatch(List<ConversionBatch.Item> items) {
+        ExchangeRateSnapshot snapshot = exchangeRateStore.current();
+        int n = snapshot.size();
+        // Per-batch memo by pair index: resolved[from * n + to], resolvedPath likewise
+        BigDecimal[] resolved = new BigDecimal[n * n];
+        String[] resolvedPath = new String[n * n];
+        int distinctPairs = 0;
+        
+        List<ConversionBatch.Line> lines = new ArrayList<>(items.size());
+        for (ConversionBatch.Item item : items) {
+            int fromIndex = currencyRegistry.activeIndexOf(item.getFromCurrency());
+            int toIndex = currencyRegistry.activeIndexOf(item.getToCurrency());
+            String from = fromIndex >= 0 ? currencyRegistry.code(fromIndex) : item.getFromCurrency();
+            String to = toIndex >= 0 ? currencyRegistry.code(toIndex) : item.getToCurrency();
+            
+            String error = null;
+            BigDecimal rate = null;
+            String path = null;
+            if (item.getAmount() == null || item.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+                error = "Amount must be greater than 0";
+            } else if (fromIndex < 0 || toIndex < 0) {
+                error = String.format("Invalid currency code: %s. Supported: %s",
+                    fromIndex < 0 ? item.getFromCurrency() : item.getToCurrency(), supportedCurrencies());
+            } else if (fromIndex == toIndex) {
+                rate = BigDecimal.ONE;
+                path = from;
+            } else if (fromIndex < n && toIndex < n) {
+                int pair = fromIndex * n + toIndex;
+                if (resolvedPath[pair] == null) {
+                    resolved[pair] = snapshot.rate(fromIndex, toIndex);
+                    resolvedPath[pair] = resolved[pair] != null ? snapshot.path(fromIndex, toIndex) : "";
+                    distinctPairs++;
+                }
+                rate = resolved[pair];
+                path = resolvedPath[pair];
+            }
+            if (error == null && rate == null) {
+                error = String.format("Exchange rate not found for %s to %s", from, to);
+            }
+            
+            lines.add(new ConversionBatch.Line(item.getAmount(), from,
+                error == null ? applyRate(item.getAmount(), rate) : null, to,
+                rate, error == null ? path : null, error));
+        }
+        return new ConversionBatch(snapshot.getAsOfMillis(), distinctPairs, lines);
+    }
+    
+    /**
+     * Convert amount with an already resolved rate (keeps rate and converted amount consistent)
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public BigDecimal applyRate(BigDecimal amount, BigDecimal rate) {
+        if (amount.scale() <= Money.SCALE) {
+            // Fixed-point path for amounts already in hundredths (same HALF_UP result, no BigDecimal churn)
+            return BigDecimal.valueOf(Money.convertMinor(Money.toMinor(amount), rate), Money.SCALE);
+        }
+        return amount.multiply(rate).setScale(Money.SCALE, RoundingMode.HALF_UP);
     }
     
     /**
      * Create or update exchange rate
      */
     public ExchangeRate saveExchangeRate(String fromCurrency, String toCurrency, BigDecimal rate) {
+        return saveExchangeRate(fromCurrency, toCurrency, rate, "MANUAL");
+    }
+    
+    /**
+     * Create or update exchange rate and append it to the rate history
+     * @param source Where the rate came from (MANUAL, DEFAULT, provider name)
+     */
+    public ExchangeRate saveExchangeRate(String fromCurrency, String toCurrency, BigDecimal rate, String source) {
         Optional<ExchangeRate> existing = exchangeRateRepository
             .findByFromCurrencyAndToCurrencyAndIsActiveTrue(fromCurrency.toUpperCase(), toCurrency.toUpperCase());
         
+        ExchangeRate saved;
         if (existing.isPresent()) {
             ExchangeRate exchangeRate = existing.get();
             exchangeRate.setRate(rate);
-            return exchangeRateRepository.save(exchangeRate);
+            saved = exchangeRateRepository.save(exchangeRate);
         } else {
             ExchangeRate exchangeRate = new ExchangeRate();
             exchangeRate.setFromCurrency(fromCurrency.toUpperCase());
             exchangeRate.setToCurrency(toCurrency.toUpperCase());
             exchangeRate.setRate(rate);
             exchangeRate.setIsActive(true);
-            return exchangeRateRepository.save(exchangeRate);
+            saved = exchangeRateRepository.save(exchangeRate);
+        }
+        
+        // Re-price pending payments in this transaction, before the new rate is published
+        if (pendingPaymentRequoter.isEnabled()) {
+            exchangeRateRepository.flush();
+            pendingPaymentRequoter.requoteChangedPairs();
         }
+        
+        // Append-only history: the current row is overwritten, the tick is never touched again
+        LocalDateTime effectiveAt = LocalDateTime.now();
+        exchangeRateTickRepository.save(new ExchangeRateTick(
+            null, saved.getFromCurrency(), saved.getToCurrency(), rate, effectiveAt, source, null));
+        
+        // Rebuild the in-memory rate snapshot and extend the history index once this transaction commits
+        eventPublisher.publishEvent(new ExchangeRatesChangedEvent(saved.getFromCurrency(), saved.getToCurrency(),
+            rate, effectiveAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        // ...and on the other instances (sent on commit, batched with the rest of the transaction)
+        invalidationBus.publish(ExchangeRateStore.REGION, saved.getFromCurrency() + ">" + saved.getToCurrency());
+        return saved;
     }
     
     /**
@@ -141,41 +278,55 @@ public class ExchangeRateService {
     
     /**
      * Initialize default exchange rates (for development/testing)
+     * Seeds USD <-> X from each registered currency's default USD rate, then X -> Y via USD
      */
     public void initializeDefaultRates() {
-        // USD to CAD (example: 1 USD = 1.35 CAD)
-        if (!exchangeRateRepository.existsByFromCurrencyAndToCurrency("USD", "CAD")) {
-            saveExchangeRate("USD", "CAD", new BigDecimal("1.350000"));
-        }
-        
-        // USD to EUR (example: 1 USD = 0.92 EUR)
-        if (!exchangeRateRepository.existsByFromCurrencyAndToCurrency("USD", "EUR")) {
-            saveExchangeRate("USD", "EUR", new BigDecimal("0.920000"));
-        }
-        
-        // CAD to USD (reverse of USD to CAD)
-        if (!exchangeRateRepository.existsByFromCurrencyAndToCurrency("CAD", "USD")) {
-            saveExchangeRate("CAD", "USD", new BigDecimal("0.740741")); // 1/1.35
+        String base = "USD";
+        List<String> quoted = new ArrayList<>();
+        for (String code : currencyRegistry.getActiveCodes()) {
+            if (!code.equals(base) && currencyRegistry.defaultUsdRate(currencyRegistry.indexOf(code)) != null) {
+                quoted.add(code);
+            }
         }
         
-        // EUR to USD (reverse of USD to EUR)
-        if (!exchangeRateRepository.existsByFromCurrencyAndToCurrency("EUR", "USD")) {
-            saveExchangeRate("EUR", "USD", new BigDecimal("1.086957")); // 1/0.92
+        // USD to X (example: 1 USD = 1.35 CAD)
+        for (String code : quoted) {
+            if (!exchangeRateRepository.existsByFromCurrencyAndToCurrency(base, code)) {
+                saveExchangeRate(base, code, currencyRegistry.defaultUsdRate(currencyRegistry.indexOf(code)), "DEFAULT");
+            }
         }
         
-        // CAD to EUR (via USD: CAD -> USD -> EUR)
-        if (!exchangeRateRepository.existsByFromCurrencyAndToCurrency("CAD", "EUR")) {
-            BigDecimal cadToUsd = getExchangeRate("CAD", "USD");
-            BigDecimal usdToEur = getExchangeRate("USD", "EUR");
-            saveExchangeRate("CAD", "EUR", cadToUsd.multiply(usdToEur).setScale(6, RoundingMode.HALF_UP));
+        // X to USD (reverse of USD to X)
+        for (String code : quoted) {
+            if (!exchangeRateRepository.existsByFromCurrencyAndToCurrency(code, base)) {
+                BigDecimal usdToX = storedRate(base, code);
+                saveExchangeRate(code, base, BigDecimal.ONE.divide(usdToX, 6, RoundingMode.HALF_UP), "DEFAULT");
+            }
         }
         
-        // EUR to CAD (via USD: EUR -> USD -> CAD)
-        if (!exchangeRateRepository.existsByFromCurrencyAndToCurrency("EUR", "CAD")) {
-            BigDecimal eurToUsd = getExchangeRate("EUR", "USD");
-            BigDecimal usdToCad = getExchangeRate("USD", "CAD");
-            saveExchangeRate("EUR", "CAD", eurToUsd.multiply(usdToCad).setScale(6, RoundingMode.HALF_UP));
+        // X to Y (via USD: X -> USD -> Y)
+        for (String from : quoted) {
+            for (String to : quoted) {
+                if (!from.equals(to) && !exchangeRateRepository.existsByFromCurrencyAndToCurrency(from, to)) {
+                    BigDecimal fromToUsd = storedRate(from, base);
+                    BigDecimal usdToTo = storedRate(base, to);
+                    saveExchangeRate(from, to, fromToUsd.multiply(usdToTo).setScale(6, RoundingMode.HALF_UP), "DEFAULT");
+                }
+            }
         }
     }
+    
+    private String supportedCurrencies() {
+        return String.join(", ", currencyRegistry.getActiveCodes());
+    }
+    
+    /**
+     * Active direct rate as stored in this transaction (the snapshot only changes after commit)
+     */
+    private BigDecimal storedRate(String fromCurrency, String toCurrency) {
+        return exchangeRateRepository.findByFromCurrencyAndToCurrencyAndIsActiveTrue(fromCurrency, toCurrency)
+            .map(ExchangeRate::getRate)
+            .orElseThrow(() -> new RuntimeException(
+                String.format("Exchange rate not found for %s to %s", fromCurrency, toCurrency)));
+    }
 }
-
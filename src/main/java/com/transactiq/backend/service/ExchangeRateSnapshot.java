@@ -0,0 +1,300 @@
+package com.transactiq.backend.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable matrix of every resolvable exchange rate at one point in time.
+ *
+ * Currencies use the CurrencyRegistry's dense indices (rates that mention unregistered
+ * codes are appended after them) and rates live in a flat n*n array, so a lookup by
+ * index is a single array read. Derived rates are resolved when the snapshot is built,
+ * never on the lookup path: an all-pairs shortest-path pass (Floyd-Warshall) over the
+ * currency graph picks the best chain of stored rates for every pair, and the chain
+ * is kept alongside the rate for audit.
+ */
+public final class ExchangeRateSnapshot {
+    
+    // Path costs: a stored rate beats its derived reciprocal, which beats any two-hop chain
+    static final int DIRECT_COST = 2;
+    static final int REVERSE_COST = 3;
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 4;
+    
+    private final long version;
+    private final long asOfMillis;
+    private final long currencyVersion;
+    private final String[] codes;
+    private final Map<String, Integer> index;
+    private final BigDecimal[] rates; // rates[from * n + to]; null = not resolvable
+    private final BigDecimal[] stored; // stored[from * n + to]; active stored rate, null = derived or none
+    private final int[][] paths;      // paths[from * n + to] = currency indices from -> ... -> to
+    
+    private ExchangeRateSnapshot(long version, long asOfMillis, long currencyVersion, String[] codes,
+                                 Map<String, Integer> index, BigDecimal[] rates, BigDecimal[] stored, int[][] paths) {
+        this.version = version;
+        this.asOfMillis = asOfMillis;
+        this.currencyVersion = currencyVersion;
+        this.codes = codes;
+        this.index = index;
+        this.rates = rates;
+        this.stored = stored;
+        this.paths = paths;
+    }
+    
+    public static ExchangeRateSnapshot empty() {
+        return new ExchangeRateSnapshot(0, 0, 0, new String[0], Collections.emptyMap(), new BigDecimal[0], new BigDecimal[0],
+            new int[0][]);
+    }
+    
+    /**
+     * Build counter of this instance (changes on every rebuild, not comparable across instances)
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Effective time of the newest rate tick behind this snapshot (0 if unknown). Persisted,
+     * so it names the same rates on every instance and after restarts: the history lookup
+     * as of this instant resolves the same rates.
+     * Effective times are taken when a rate is written, not when it commits: a change that
+     * commits after a later-stamped one does not move this value, so until the next change
+     * the same instant can stand for two sets of rates (the history returns the newer one).
+     */
+    public long getAsOfMillis() {
+        return asOfMillis;
+    }
+    
+    /**
+     * CurrencyRegistry version whose indices this snapshot uses
+     */
+    public long getCurrencyVersion() {
+        return currencyVersion;
+    }
+    
+    public int size() {
+        return codes.length;
+    }
+    
+    public String[] getCurrencies() {
+        return codes.clone();
+    }
+    
+    /**
+     * Dense index of an upper-case currency code, or -1 if no rate mentions it
+     */
+    public int indexOf(String code) {
+        Integer i = index.get(code);
+        return i != null ? i : -1;
+    }
+    
+    /**
+     * Rate by dense currency index, or null if not resolvable
+     */
+    public BigDecimal rate(int fromIndex, int toIndex) {
+        return inRange(fromIndex, toIndex) ? rates[fromIndex * codes.length + toIndex] : null;
+    }
+    
+    /**
+     * Rate for 1 fromCurrency in toCurrency (upper-case codes), or null if not resolvable
+     */
+    public BigDecimal rate(String fromCurrency, String toCurrency) {
+        return rate(indexOf(fromCurrency), indexOf(toCurrency));
+    }
+    
+    /**
+     * Rate stored for exactly this pair (upper-case codes), ignoring reciprocals and chains,
+     * or null if the pair has no active stored rate
+     */
+    public BigDecimal storedRate(String fromCurrency, String toCurrency) {
+        int from = indexOf(fromCurrency);
+        int to = indexOf(toCurrency);
+        return inRange(from, to) ? stored[from * codes.length + to] : null;
+    }
+    
+    /**
+     * Currencies the rate was derived through, e.g. "CAD>USD>EUR", or null if not resolvable
+     */
+    public String path(int fromIndex, int toIndex) {
+        if (!inRange(fromIndex, toIndex)) {
+            return null;
+        }
+        int[] path = paths[fromIndex * codes.length + toIndex];
+        if (path == null) {
+            return null;
+        }
+        StringBuilder description = new StringBuilder(path.length * 4);
+        for (int i = 0; i < path.length; i++) {
+            if (i > 0) {
+                description.append('>');
+            }
+            description.append(codes[path[i]]);
+        }
+        return description.toString();
+    }
+    
+    private boolean inRange(int fromIndex, int toIndex) {
+        int n = codes.length;
+        return fromIndex >= 0 && toIndex >= 0 && fromIndex < n && toIndex < n;
+    }
+    
+    /**
+     * Builds snapshots from (fromCurrency, toCurrency, rate) triples
+     */
+    public static final class Builder {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final Map<Long, BigDecimal> direct = new HashMap<>();
+        private final long currencyVersion;
+        private String[] codes = new String[8];
+        
+        public Builder() {
+            this(new String[0], 0);
+        }
+        
+        /**
+         * Start with the registry's currencies so snapshot indices match registry indices
+         */
+        public Builder(String[] registryCodes, long currencyVersion) {
+            this.currencyVersion = currencyVersion;
+            for (String code : registryCodes) {
+                intern(code);
+            }
+        }
+        
+        public Builder add(String fromCurrency, String toCurrency, BigDecimal rate) {
+            int from = intern(fromCurrency.toUpperCase());
+            int to = intern(toCurrency.toUpperCase());
+            direct.put(pair(from, to), rate);
+            return this;
+        }
+        
+        public ExchangeRateSnapshot build(long version) {
+            return build(version, 0);
+        }
+        
+        public ExchangeRateSnapshot build(long version, long asOfMillis) {
+            int n = index.size();
+            
+            // Edge weights: stored rates, plus reciprocals where the reverse rate is not stored
+            BigDecimal[] edge = new BigDecimal[n * n];
+            int[] cost = new int[n * n];
+            int[] next = new int[n * n];
+            Arrays.fill(cost, UNREACHABLE);
+            Arrays.fill(next, -1);
+            for (int i = 0; i < n; i++) {
+                cost[i * n + i] = 0;
+                next[i * n + i] = i;
+            }
+            for (Map.Entry<Long, BigDecimal> entry : direct.entrySet()) {
+                int from = (int) (entry.getKey() >>> 32);
+                int to = (int) (long) entry.getKey();
+                if (from != to && entry.getValue().signum() > 0) {
+                    edge[from * n + to] = entry.getValue();
+                    cost[from * n + to] = DIRECT_COST;
+                    next[from * n + to] = to;
+                }
+            }
+            for (Map.Entry<Long, BigDecimal> entry : direct.entrySet()) {
+                int from = (int) (entry.getKey() >>> 32);
+                int to = (int) (long) entry.getKey();
+                if (from != to && entry.getValue().signum() > 0 && edge[to * n + from] == null) {
+                    // Extra precision so chains through a reciprocal are only rounded once, at the end
+                    edge[to * n + from] = BigDecimal.ONE.divide(entry.getValue(), 12, RoundingMode.HALF_UP);
+                    cost[to * n + from] = REVERSE_COST;
+                    next[to * n + from] = from;
+                }
+            }
+            
+            // Floyd-Warshall over path cost, tracking the next hop for path reconstruction
+            for (int k = 0; k < n; k++) {
+                for (int i = 0; i < n; i++) {
+                    int ik = cost[i * n + k];
+                    if (ik >= UNREACHABLE) {
+                        continue;
+                    }
+                    for (int j = 0; j < n; j++) {
+                        int candidate = ik + cost[k * n + j];
+                        if (candidate < cost[i * n + j]) {
+                            cost[i * n + j] = candidate;
+                            next[i * n + j] = next[i * n + k];
+                        }
+                    }
+                }
+            }
+            
+            BigDecimal[] stored = new BigDecimal[n * n];
+            for (Map.Entry<Long, BigDecimal> entry : direct.entrySet()) {
+                stored[(int) (entry.getKey() >>> 32) * n + (int) (long) entry.getKey()] = entry.getValue();
+            }
+            BigDecimal[] rates = new BigDecimal[n * n];
+            int[][] paths = new int[n * n][];
+            for (int from = 0; from < n; from++) {
+                for (int to = 0; to < n; to++) {
+                    if (from == to) {
+                        rates[from * n + to] = BigDecimal.ONE;
+                        paths[from * n + to] = new int[] {from};
+                    } else if (next[from * n + to] >= 0) {
+                        int[] path = walk(next, n, from, to);
+                        paths[from * n + to] = path;
+                        rates[from * n + to] = chainRate(edge, cost, n, path);
+                    }
+                }
+            }
+            return new ExchangeRateSnapshot(version, asOfMillis, currencyVersion, Arrays.copyOf(codes, n),
+                Map.copyOf(index), rates, stored, paths);
+        }
+        
+        private static int[] walk(int[] next, int n, int from, int to) {
+            int[] path = new int[n];
+            int length = 0;
+            int at = from;
+            path[length++] = at;
+            while (at != to) {
+                at = next[at * n + to];
+                path[length++] = at;
+            }
+            return Arrays.copyOf(path, length);
+        }
+        
+        /**
+         * Product of the edge rates along a path; derived results are rounded once to 6 dp
+         */
+        private BigDecimal chainRate(BigDecimal[] edge, int[] cost, int n, int[] path) {
+            if (path.length == 2) {
+                int from = path[0];
+                int to = path[1];
+                // Stored rate as-is; a lone reciprocal is computed straight at 6 dp
+                return cost[from * n + to] == DIRECT_COST
+                    ? edge[from * n + to]
+                    : BigDecimal.ONE.divide(direct.get(pair(to, from)), 6, RoundingMode.HALF_UP);
+            }
+            BigDecimal rate = edge[path[0] * n + path[1]];
+            for (int i = 2; i < path.length; i++) {
+                rate = rate.multiply(edge[path[i - 1] * n + path[i]]);
+            }
+            return rate.setScale(6, RoundingMode.HALF_UP);
+        }
+        
+        private int intern(String code) {
+            Integer existing = index.get(code);
+            if (existing != null) {
+                return existing;
+            }
+            int i = index.size();
+            if (i == codes.length) {
+                codes = Arrays.copyOf(codes, i << 1);
+            }
+            codes[i] = code;
+            index.put(code, i);
+            return i;
+        }
+        
+        private static long pair(int from, int to) {
+            return ((long) from << 32) | to;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.event.ExchangeRatesChangedEvent;
+import com.transactiq.backend.event.ExchangeRatesRefreshedEvent;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current ExchangeRateSnapshot.
+ * Readers get the snapshot with a single volatile read; a new snapshot is built from the
+ * active rates and swapped in after every committed rate change, whether it was made here
+ * or, via the InvalidationBus, on another instance.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExchangeRateStore {
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final CurrencyRegistry currencyRegistry;
+    private final InvalidationBus invalidationBus;
+    private final ExchangeRateHistory exchangeRateHistory;
+    
+    /**
+     * InvalidationBus region for rate changes; keys are "FROM>TO" pairs
+     */
+    static final String REGION = "fx-rates";
+    
+    private final AtomicReference<ExchangeRateSnapshot> current = new AtomicReference<>();
+    private long nextVersion = 1;
+    
+    /**
+     * Current snapshot (loaded on first use, and rebuilt if the currency registry was reloaded)
+     */
+    public ExchangeRateSnapshot current() {
+        ExchangeRateSnapshot snapshot = current.get();
+        if (snapshot == null || snapshot.getCurrencyVersion() != currencyRegistry.getVersion()) {
+            return reload();
+        }
+        return snapshot;
+    }
+    
+    @PostConstruct
+    public void init() {
+        invalidationBus.subscribe(REGION, pairs -> {
+            reload();
+            exchangeRateHistory.catchUp(pairs);
+        });
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRatesChanged(ExchangeRatesChangedEvent event) {
+        reload();
+    }
+    
+    /**
+     * A provider refresh is applied as one rebuild, however many pairs it changed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRatesRefreshed(ExchangeRatesRefreshedEvent event) {
+        reload();
+    }
+    
+    /**
+     * Rebuild the snapshot from all active rates and publish it
+     */
+    public synchronized ExchangeRateSnapshot reload() {
+        long started = System.nanoTime();
+        ExchangeRateSnapshot snapshot = build(nextVersion++);
+        current.set(snapshot);
+        log.debug("Exchange rate snapshot v{} built: {} currencies in {} us",
+            snapshot.getVersion(), snapshot.size(), (System.nanoTime() - started) / 1000);
+        return snapshot;
+    }
+    
+    /**
+     * Snapshot of the rates as the calling transaction sees them, without publishing it
+     * (version 0). Used to find which resolved rates an uncommitted change will move.
+     */
+    public ExchangeRateSnapshot preview() {
+        return build(0);
+    }
+    
+    private ExchangeRateSnapshot build(long version) {
+        long currencyVersion = currencyRegistry.getVersion(); // Read first so a concurrent reload forces a rebuild
+        ExchangeRateSnapshot.Builder builder = new ExchangeRateSnapshot.Builder(currencyRegistry.getCodes(), currencyVersion);
+        long[] asOfMillis = {0};
+        // Latest tick per pair in the same statement, so it always matches the rates read
+        jdbcTemplate.query(
+            "SELECT r.from_currency, r.to_currency, r.rate, " +
+            "  (SELECT max(t.effective_at) FROM exchange_rate_ticks t " +
+            "   WHERE t.from_currency = r.from_currency AND t.to_currency = r.to_currency) " +
+            "FROM exchange_rates r WHERE r.is_active = true",
+            rs -> {
+                builder.add(rs.getString(1), rs.getString(2), rs.getBigDecimal(3));
+                Timestamp effectiveAt = rs.getTimestamp(4);
+                if (effectiveAt != null) {
+                    asOfMillis[0] = Math.max(asOfMillis[0], effectiveAt.getTime());
+                }
+            });
+        return builder.build(version, asOfMillis[0]);
+    }
+}
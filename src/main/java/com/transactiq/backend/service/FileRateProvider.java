@@ -0,0 +1,67 @@
+package com.transactiq.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RateProvider backed by a local CSV file (for development and testing).
+ * One rate per line: FROM,TO,RATE[,OBSERVED_AT] where OBSERVED_AT is an ISO local date-time;
+ * blank lines and lines starting with # are ignored. The file is re-read on every fetch.
+ */
+@Service
+@ConditionalOnProperty(name = "transactiq.fx.provider.type", havingValue = "file")
+@RequiredArgsConstructor
+public class FileRateProvider implements RateProvider {
+    
+    private final ResourceLoader resourceLoader;
+    
+    @Value("${transactiq.fx.provider.path:classpath:fx-rates.csv}")
+    private String path;
+    
+    @Override
+    public String getName() {
+        return "FILE";
+    }
+    
+    @Override
+    public List<Tick> fetch() throws Exception {
+        long now = System.currentTimeMillis();
+        Resource resource = resourceLoader.getResource(path);
+        List<Tick> ticks = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 3) {
+                    throw new IllegalArgumentException(path + ":" + lineNumber + ": expected FROM,TO,RATE[,OBSERVED_AT]");
+                }
+                long observedAt = fields.length > 3
+                    ? LocalDateTime.parse(fields[3].trim()).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                    : now;
+                ticks.add(new Tick(fields[0].trim().toUpperCase(), fields[1].trim().toUpperCase(),
+                    new BigDecimal(fields[2].trim()), observedAt));
+            }
+        }
+        return ticks;
+    }
+}
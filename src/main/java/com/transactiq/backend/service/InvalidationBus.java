@@ -0,0 +1,279 @@
+package com.transactiq.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cluster-wide invalidation of in-process caches over Postgres LISTEN/NOTIFY.
+ *
+ * publish() inside a transaction only buffers the key; just before commit every key buffered
+ * by the transaction is sent as one pg_notify per region (split to fit the 8000 byte payload
+ * limit). Postgres delivers notifications only if the transaction commits, so other nodes
+ * never evict for a write that rolled back. Every node holds one dedicated connection that
+ * LISTENs on the channel and hands the keys to the handlers subscribed for the region;
+ * a node ignores its own messages. After the listening connection is re-established, handlers
+ * get a null key list (anything may have been missed - reload everything).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InvalidationBus {
+    
+    static final String CHANNEL = "transactiq_invalidation";
+    private static final int MAX_PAYLOAD_BYTES = 7900; // Postgres limit is 8000 bytes
+    private static final long RECONNECT_DELAY_MS = 2000;
+    
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${transactiq.cluster.invalidation.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${transactiq.cluster.invalidation.poll-timeout-ms:500}")
+    private int pollTimeoutMs;
+    
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private final Map<String, List<Consumer<List<String>>>> handlers = new ConcurrentHashMap<>();
+    private volatile Thread listener;
+    private volatile boolean running;
+    
+    private Counter sentCounter;
+    private Counter receivedCounter;
+    private Timer propagationTimer;
+    
+    @PostConstruct
+    public void init() {
+        sentCounter = Counter.builder("transactiq.cluster.invalidation.sent")
+            .description("Invalidation notifications sent (one per region per transaction or chunk)")
+            .register(meterRegistry);
+        receivedCounter = Counter.builder("transactiq.cluster.invalidation.received")
+            .description("Invalidation notifications received from other nodes")
+            .register(meterRegistry);
+        propagationTimer = Timer.builder("transactiq.cluster.invalidation.latency")
+            .description("Time from commit on the sending node to handling on this node (wall clocks)")
+            .register(meterRegistry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    /**
+     * Run handler with the keys another node invalidated in region (null = everything)
+     */
+    public void subscribe(String region, Consumer<List<String>> handler) {
+        handlers.computeIfAbsent(region, r -> new CopyOnWriteArrayList<>()).add(handler);
+    }
+    
+    /**
+     * Tell the other nodes that key in region changed. Within a transaction the key is sent on
+     * commit, batched with every other key of the transaction; otherwise it is sent at once.
+     * Calls made from a handler are ignored, so replayed changes are not echoed back.
+     */
+    public void publish(String region, String key) {
+        if (!enabled || Thread.currentThread() == listener) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingKeys().computeIfAbsent(region, r -> new LinkedHashSet<>()).add(key);
+        } else {
+            send(Map.of(region, Set.of(key)));
+        }
+    }
+    
+    /**
+     * Keys buffered by the current transaction, flushed by a synchronization registered on first use
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Set<String>> pendingKeys() {
+        Map<String, Set<String>> pending = (Map<String, Set<String>>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<String, Set<String>> buffer = new LinkedHashMap<>();
+            TransactionSynchronizationManager.bindResource(this, buffer);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    // NOTIFY is transactional: queued now, delivered by Postgres only if the commit succeeds
+                    send(buffer);
+                }
+                
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(InvalidationBus.this);
+                }
+            });
+            pending = buffer;
+        }
+        return pending;
+    }
+    
+    private void send(Map<String, Set<String>> keysByRegion) {
+        for (Map.Entry<String, Set<String>> entry : keysByRegion.entrySet()) {
+            for (String payload : payloads(entry.getKey(), entry.getValue())) {
+                jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, CHANNEL, payload);
+                sentCounter.increment();
+            }
+        }
+    }
+    
+    /**
+     * "node|sentAtMillis|region" header line, then one key per line, split to fit the payload limit
+     */
+    private List<String> payloads(String region, Set<String> keys) {
+        String header = nodeId + "|" + System.currentTimeMillis() + "|" + region;
+        List<String> payloads = new ArrayList<>();
+        StringBuilder payload = new StringBuilder(header);
+        int bytes = header.length();
+        for (String key : keys) {
+            int keyBytes = key.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (bytes + keyBytes > MAX_PAYLOAD_BYTES && payload.length() > header.length()) {
+                payloads.add(payload.toString());
+                payload = new StringBuilder(header);
+                bytes = header.length();
+            }
+            payload.append('\n').append(key);
+            bytes += keyBytes;
+        }
+        payloads.add(payload.toString());
+        return payloads;
+    }
+    
+    /**
+     * Start the listener thread (no-op unless enabled)
+     */
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+        log.info("Cluster invalidation bus started on node {}", nodeId);
+    }
+    
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+    
+    /**
+     * Whether notifications from other nodes are being received right now
+     */
+    public boolean isListening() {
+        return running && listener != null && listener.isAlive();
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("nodeId", nodeId);
+        stats.put("listening", isListening());
+        stats.put("regions", handlers.keySet());
+        stats.put("sent", (long) sentCounter.count());
+        stats.put("received", (long) receivedCounter.count());
+        stats.put("meanLatencyMs", propagationTimer.mean(TimeUnit.MILLISECONDS));
+        stats.put("maxLatencyMs", propagationTimer.max(TimeUnit.MILLISECONDS));
+        return stats;
+    }
+    
+    private void listen() {
+        boolean reconnected = false;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (reconnected) {
+                    // Notifications sent while we were disconnected are lost
+                    handlers.forEach((region, regionHandlers) -> dispatch(region, null));
+                }
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(pollTimeoutMs);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        receive(notification.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                log.warn("Invalidation listener connection lost ({}); reconnecting", e.getMessage());
+                reconnected = true;
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+    }
+    
+    private void receive(String payload) {
+        String[] lines = payload.split("\n");
+        String[] header = lines[0].split("\\|", 3);
+        if (header.length < 3 || header[0].equals(nodeId)) {
+            return;
+        }
+        receivedCounter.increment();
+        propagationTimer.record(Math.max(0, System.currentTimeMillis() - Long.parseLong(header[1])), TimeUnit.MILLISECONDS);
+        List<String> keys = new ArrayList<>(lines.length - 1);
+        for (int i = 1; i < lines.length; i++) {
+            keys.add(lines[i]);
+        }
+        dispatch(header[2], keys);
+    }
+    
+    private void dispatch(String region, List<String> keys) {
+        for (Consumer<List<String>> handler : handlers.getOrDefault(region, List.of())) {
+            try {
+                handler.accept(keys);
+            } catch (Exception e) {
+                // One failing cache must not stop the others from being invalidated
+                log.error("Invalidation handler for region {} failed: {}", region, e.getMessage());
+            }
+        }
+    }
+}
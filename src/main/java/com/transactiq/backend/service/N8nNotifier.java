@@ -1,19 +1,36 @@
 package com.transactiq.backend.service;
 
+import com.transactiq.backend.util.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for sending webhook notifications to n8n
  * Handles all notification events (payment_approved, etc.)
+ *
+ * Calls go through a bulkhead (at most max-connections requests in flight to the n8n host,
+ * which also bounds the connections the shared client opens to it; NotificationDispatcher
+ * delivers on a pool of the same size) and a circuit breaker
+ * that fails fast while n8n keeps failing, instead of tying up a thread per request for the
+ * full read timeout. Client errors (4xx) mean n8n is up and do not trip the breaker.
  */
 @Service
 @RequiredArgsConstructor
@@ -21,47 +38,144 @@ import java.util.Map;
 public class N8nNotifier {
     
     private final RestTemplate restTemplate;
+    private final MeterRegistry meterRegistry;
     
-    private static final String N8N_WEBHOOK_BASE_URL = "https://ancjainil.app.n8n.cloud/webhook/webhook";
+    @Value("${transactiq.notifications.webhook.base-url:https://ancjainil.app.n8n.cloud/webhook/webhook}")
+    private String baseUrl;
+    
+    @Value("${transactiq.notifications.webhook.max-connections:8}")
+    private int maxConnections;
+    
+    @Value("${transactiq.notifications.webhook.acquire-timeout-ms:1000}")
+    private long acquireTimeoutMs;
+    
+    @Value("${transactiq.notifications.webhook.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+    
+    @Value("${transactiq.notifications.webhook.circuit-breaker.open-ms:30000}")
+    private long openMs;
+    
+    private Semaphore bulkhead;
+    private CircuitBreaker circuitBreaker;
+    private Counter circuitRejections;
+    private Counter bulkheadRejections;
+    private Timer successTimer;
+    private Timer failureTimer;
+    
+    @PostConstruct
+    public void init() {
+        bulkhead = new Semaphore(maxConnections);
+        circuitBreaker = new CircuitBreaker(failureThreshold, openMs);
+        Gauge.builder("transactiq.webhook.inflight", bulkhead, b -> maxConnections - b.availablePermits())
+            .description("Webhook requests in flight (connections in use)")
+            .register(meterRegistry);
+        Gauge.builder("transactiq.webhook.bulkhead.available", bulkhead, Semaphore::availablePermits)
+            .description("Free webhook request slots")
+            .register(meterRegistry);
+        Gauge.builder("transactiq.webhook.circuit.state", circuitBreaker, cb -> cb.getState().ordinal())
+            .description("Webhook circuit breaker state: 0 closed, 1 half-open, 2 open")
+            .register(meterRegistry);
+        circuitRejections = Counter.builder("transactiq.webhook.rejected").tag("reason", "circuit_open")
+            .description("Webhook calls failed fast without being attempted")
+            .register(meterRegistry);
+        bulkheadRejections = Counter.builder("transactiq.webhook.rejected").tag("reason", "bulkhead_full")
+            .description("Webhook calls failed fast without being attempted")
+            .register(meterRegistry);
+        successTimer = Timer.builder("transactiq.webhook.requests").tag("outcome", "success")
+            .register(meterRegistry);
+        failureTimer = Timer.builder("transactiq.webhook.requests").tag("outcome", "failure")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Post a pre-serialized JSON body to the event's webhook, throwing if it was not accepted.
+     * Throws NotAttemptedException if the call was never made (breaker open, or bulkhead full).
+     * Called concurrently by NotificationDispatcher's delivery pool, which retries failed deliveries.
+     */
+    public void deliver(String eventType, String jsonPayload) {
+        post(eventType, jsonPayload);
+    }
+    
+    /**
+     * Whether a call would be attempted now (false while the circuit breaker is open)
+     */
+    public boolean isAvailable() {
+        return circuitBreaker.isCallPermitted();
+    }
     
     /**
-     * Send event notification to n8n webhook
-     * 
-     * @param eventType The event type (e.g., "payment_approved")
-     * @param payload The payload data to send
-     * @return true if notification was sent successfully, false otherwise
+     * Milliseconds until an open breaker lets a probe call through (0 unless open)
      */
-    public boolean sendEvent(String eventType, Map<String, Object> payload) {
-        String webhookUrl = N8N_WEBHOOK_BASE_URL + "/" + eventType;
+    public long getRetryAfterMillis() {
+        return circuitBreaker.getRetryAfterMillis();
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("baseUrl", baseUrl);
+        stats.put("circuitState", circuitBreaker.getState().name());
+        stats.put("retryAfterMs", circuitBreaker.getRetryAfterMillis());
+        stats.put("maxConnections", maxConnections);
+        stats.put("inFlight", maxConnections - bulkhead.availablePermits());
+        stats.put("rejectedCircuitOpen", (long) circuitRejections.count());
+        stats.put("rejectedBulkheadFull", (long) bulkheadRejections.count());
+        stats.put("succeeded", successTimer.count());
+        stats.put("failed", failureTimer.count());
+        stats.put("meanSuccessMs", successTimer.mean(TimeUnit.MILLISECONDS));
+        return stats;
+    }
+    
+    private void post(String eventType, String body) {
+        if (!circuitBreaker.tryAcquire()) {
+            // Open, or another caller holds the half-open probe
+            circuitRejections.increment();
+            throw new NotAttemptedException("n8n circuit open, retry in " + circuitBreaker.getRetryAfterMillis() + " ms");
+        }
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            // Not n8n's fault: the call was never made
+            circuitBreaker.release();
+            bulkheadRejections.increment();
+            throw new NotAttemptedException("Too many n8n requests in flight");
+        }
         
+        long started = System.nanoTime();
         try {
-            // Set headers
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            // Create HTTP entity with payload
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(payload, headers);
-            
-            // Send POST request
-            ResponseEntity<String> response = restTemplate.postForEntity(webhookUrl, request, String.class);
-            
-            // Log success
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("✅ n8n notification sent successfully: eventType={}, statusCode={}", 
-                    eventType, response.getStatusCode());
-                return true;
-            } else {
-                log.warn("⚠️ n8n notification returned non-2xx status: eventType={}, statusCode={}", 
-                    eventType, response.getStatusCode());
-                return false;
+            ResponseEntity<String> response = restTemplate.postForEntity(
+                baseUrl + "/" + eventType, new HttpEntity<>(body, headers), String.class);
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                throw new RuntimeException("n8n returned " + response.getStatusCode());
             }
-            
-        } catch (Exception e) {
-            // Log error but don't throw exception (non-blocking)
-            log.error("❌ Failed to send n8n notification: eventType={}, error={}", 
-                eventType, e.getMessage(), e);
-            return false;
+            circuitBreaker.onSuccess();
+            successTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        } catch (HttpClientErrorException e) {
+            // 4xx: n8n answered, the request itself is wrong
+            circuitBreaker.onSuccess();
+            failureTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            throw e;
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure();
+            failureTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+    
+    /**
+     * The call was rejected before reaching n8n, so it should not count as a delivery attempt
+     */
+    public static class NotAttemptedException extends RuntimeException {
+        public NotAttemptedException(String message) {
+            super(message);
         }
     }
 }
-
@@ -0,0 +1,466 @@
+package com.transactiq.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.transactiq.backend.entity.OutboxNotification;
+import com.transactiq.backend.repository.OutboxNotificationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers webhook notifications through the notification_outbox table.
+ *
+ * enqueue() inserts a row in the caller's transaction, so the request that approved a payment
+ * never waits on n8n. A scheduled pass claims due rows in batches with one
+ * UPDATE ... FOR UPDATE SKIP LOCKED statement that also pushes next_attempt_at forward by a
+ * lease, then delivers them outside any transaction. Delivered rows are marked, failed ones are
+ * rescheduled with exponential backoff until max attempts. A row whose instance died mid-delivery
+ * becomes due again when its lease runs out, so every notification is delivered at least once
+ * (n8n may occasionally see one twice).
+ *
+ * Passes run on the dispatcher's own thread, not the shared @Scheduled pool, so a slow n8n
+ * never delays the other scheduled jobs. The rows of a batch are sent in parallel on a pool of
+ * webhook max-connections threads, the same limit as N8nNotifier's bulkhead. A pass stops
+ * claiming after max-pass-ms and hands rows it has not started back untried.
+ *
+ * With coalescing on, due rows are held until max-events of them are due or the oldest has
+ * waited window-ms, then sent as one array per event type, so under load the number of
+ * webhook requests grows with the flush rate rather than the approval rate.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationDispatcher {
+    
+    private static final String CLAIM_SQL =
+        "UPDATE notification_outbox o SET attempts = o.attempts + 1, " +
+        "  next_attempt_at = now() + ? * interval '1 millisecond' " +
+        "WHERE o.id IN (" +
+        "  SELECT id FROM notification_outbox " +
+        "  WHERE status = 'PENDING' AND next_attempt_at <= now() " +
+        "  ORDER BY next_attempt_at, id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+        "RETURNING o.id, o.event_type, o.payload, o.attempts";
+    
+    private final OutboxNotificationRepository outboxNotificationRepository;
+    private final N8nNotifier n8nNotifier;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${transactiq.notifications.outbox.dispatch-enabled:true}")
+    private boolean dispatchEnabled;
+    
+    @Value("${transactiq.notifications.outbox.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+    
+    @Value("${transactiq.notifications.outbox.max-pass-ms:30000}")
+    private long maxPassMs;
+    
+    @Value("${transactiq.notifications.webhook.max-connections:8}")
+    private int maxConnections;
+    
+    @Value("${transactiq.notifications.outbox.batch-size:20}")
+    private int batchSize;
+    
+    @Value("${transactiq.notifications.outbox.lease-ms:300000}")
+    private long leaseMs;
+    
+    @Value("${transactiq.notifications.outbox.max-attempts:10}")
+    private int maxAttempts;
+    
+    @Value("${transactiq.notifications.outbox.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+    
+    @Value("${transactiq.notifications.outbox.max-backoff-ms:600000}")
+    private long maxBackoffMs;
+    
+    @Value("${transactiq.notifications.outbox.retention-days:7}")
+    private int retentionDays;
+    
+    @Value("${transactiq.notifications.outbox.coalesce.enabled:false}")
+    private boolean coalesce;
+    
+    @Value("${transactiq.notifications.outbox.coalesce.window-ms:1000}")
+    private long windowMs;
+    
+    @Value("${transactiq.notifications.outbox.coalesce.max-events:500}")
+    private int maxEvents;
+    
+    @Value("${transactiq.notifications.outbox.coalesce.max-bytes:1048576}")
+    private int maxBytes;
+    
+    @Value("${transactiq.notifications.outbox.coalesce.batch-suffix:_batch}")
+    private String batchSuffix;
+    
+    private Counter deliveredCounter;
+    private Counter failedCounter;
+    private Counter abandonedCounter;
+    private Counter requestCounter;
+    private DistributionSummary batchSizes;
+    private Timer deliveryTimer;
+    private ScheduledExecutorService dispatcher;
+    private ExecutorService deliveryPool;
+    
+    @PostConstruct
+    public void init() {
+        deliveredCounter = Counter.builder("transactiq.notifications.delivered")
+            .description("Outbox notifications delivered")
+            .register(meterRegistry);
+        failedCounter = Counter.builder("transactiq.notifications.failed")
+            .description("Failed delivery attempts (rescheduled with backoff)")
+            .register(meterRegistry);
+        abandonedCounter = Counter.builder("transactiq.notifications.abandoned")
+            .description("Notifications given up on after max attempts")
+            .register(meterRegistry);
+        requestCounter = Counter.builder("transactiq.notifications.requests")
+            .description("Webhook requests made (one per notification, or per batch when coalescing)")
+            .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("transactiq.notifications.batch.size")
+            .description("Notifications per coalesced webhook request")
+            .register(meterRegistry);
+        deliveryTimer = Timer.builder("transactiq.notifications.delivery")
+            .description("Time per webhook request")
+            .register(meterRegistry);
+        
+        if (dispatchEnabled) {
+            deliveryPool = Executors.newFixedThreadPool(maxConnections, runnable -> {
+                Thread thread = new Thread(runnable, "notification-delivery");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "notification-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dispatcher.scheduleWithFixedDelay(this::dispatch, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.shutdownNow();
+            deliveryPool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Queue a notification in the caller's transaction; it is sent only if that transaction commits
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(String eventType, Map<String, Object> payload) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize " + eventType + " notification: " + e.getMessage());
+        }
+        OutboxNotification notification = new OutboxNotification();
+        notification.setEventType(eventType);
+        notification.setPayload(json);
+        notification.setNextAttemptAt(LocalDateTime.now());
+        outboxNotificationRepository.save(notification);
+    }
+    
+    /**
+     * Claim and deliver due notifications until a batch comes back short or max-pass-ms is used up
+     */
+    public void dispatch() {
+        if (!dispatchEnabled) {
+            return;
+        }
+        try {
+            long deadline = System.currentTimeMillis() + maxPassMs;
+            int limit = coalesce ? maxEvents : batchSize;
+            List<Claimed> batch;
+            do {
+                if (!n8nNotifier.isAvailable()) {
+                    // Circuit open: leave rows unclaimed rather than spending their attempts
+                    return;
+                }
+                if (coalesce && !coalescedBatchReady()) {
+                    return;
+                }
+                batch = claim(limit);
+                if (coalesce) {
+                    deliverCoalesced(batch, deadline);
+                } else {
+                    deliver(batch, deadline);
+                }
+            } while (batch.size() == limit && System.currentTimeMillis() < deadline);
+        } catch (Exception e) {
+            // Claimed rows stay leased and are retried once the lease runs out
+            log.error("Notification dispatch failed: {}", e.getMessage());
+        }
+    }
+    
+    @Scheduled(fixedDelay = 3_600_000, initialDelay = 60_000)
+    public void purgeDelivered() {
+        int purged = jdbcTemplate.update(
+            "DELETE FROM notification_outbox WHERE status = 'DELIVERED' AND delivered_at < now() - ? * interval '1 day'",
+            retentionDays);
+        if (purged > 0) {
+            log.debug("Purged {} delivered notifications", purged);
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        jdbcTemplate.query(
+            "SELECT status, count(*) FROM notification_outbox GROUP BY status",
+            rs -> {
+                stats.put(rs.getString(1).toLowerCase(), rs.getLong(2));
+            });
+        stats.put("oldestPendingAt", jdbcTemplate.queryForObject(
+            "SELECT min(created_at) FROM notification_outbox WHERE status = 'PENDING'", LocalDateTime.class));
+        stats.put("deliveredSinceStart", (long) deliveredCounter.count());
+        stats.put("failedAttempts", (long) failedCounter.count());
+        stats.put("requests", (long) requestCounter.count());
+        stats.put("meanDeliveryMs", deliveryTimer.mean(TimeUnit.MILLISECONDS));
+        stats.put("coalescing", coalesce);
+        stats.put("meanBatchSize", batchSizes.mean());
+        stats.put("webhook", n8nNotifier.getStats());
+        return stats;
+    }
+    
+    private List<Claimed> claim(int limit) {
+        return jdbcTemplate.query(CLAIM_SQL,
+            (rs, rowNum) -> new Claimed(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getInt(4)),
+            leaseMs, limit);
+    }
+    
+    /**
+     * Flush once max-events rows are due or the oldest due row has waited window-ms
+     */
+    private boolean coalescedBatchReady() {
+        Boolean ready = jdbcTemplate.queryForObject(
+            "SELECT count(*) >= ? OR min(next_attempt_at) <= now() - ? * interval '1 millisecond' FROM (" +
+            "  SELECT next_attempt_at FROM notification_outbox " +
+            "  WHERE status = 'PENDING' AND next_attempt_at <= now() " +
+            "  ORDER BY next_attempt_at LIMIT ?) due",
+            Boolean.class, maxEvents, windowMs, maxEvents);
+        return Boolean.TRUE.equals(ready);
+    }
+    
+    private void deliver(List<Claimed> batch, long deadline) {
+        Outcomes outcomes = new Outcomes(batch.size());
+        List<CompletableFuture<Void>> requests = new ArrayList<>(batch.size());
+        for (Claimed notification : batch) {
+            requests.add(CompletableFuture.runAsync(() -> {
+                if (!n8nNotifier.isAvailable() || System.currentTimeMillis() >= deadline) {
+                    // Breaker opened or pass out of time: hand it back untried
+                    outcomes.released.add(notification.getId());
+                    return;
+                }
+                long started = System.nanoTime();
+                try {
+                    n8nNotifier.deliver(notification.getEventType(), notification.getPayload());
+                    outcomes.delivered.add(notification.getId());
+                    deliveredCounter.increment();
+                } catch (N8nNotifier.NotAttemptedException e) {
+                    // Lost the half-open probe or the bulkhead was full: never sent, hand it back
+                    outcomes.released.add(notification.getId());
+                    return;
+                } catch (Exception e) {
+                    outcomes.failed.add(failure(notification, e));
+                }
+                requestCounter.increment();
+                deliveryTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }, deliveryPool));
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+        record(outcomes);
+    }
+    
+    /**
+     * Send the claimed rows as one JSON array per event type (split at max-bytes) to the
+     * type's batch webhook. Each element is {"eventId": outbox id, "eventType": ..., "payload": {...}},
+     * so the receiver can drop events it already saw on an earlier, partly-processed attempt.
+     */
+    private void deliverCoalesced(List<Claimed> batch, long deadline) {
+        Map<String, List<Claimed>> byType = new LinkedHashMap<>();
+        for (Claimed notification : batch) {
+            byType.computeIfAbsent(notification.getEventType(), type -> new ArrayList<>()).add(notification);
+        }
+        Outcomes outcomes = new Outcomes(batch.size());
+        List<CompletableFuture<Void>> requests = new ArrayList<>();
+        for (Map.Entry<String, List<Claimed>> entry : byType.entrySet()) {
+            List<Claimed> events = entry.getValue();
+            int from = 0;
+            while (from < events.size()) {
+                StringBuilder body = new StringBuilder(Math.min(maxBytes, 256 * events.size())).append('[');
+                int to = from;
+                while (to < events.size()) {
+                    Claimed event = events.get(to);
+                    // Payloads are ASCII-heavy JSON; length is a close enough proxy for bytes
+                    if (to > from && body.length() + event.getPayload().length() + 80 > maxBytes) {
+                        break;
+                    }
+                    if (to > from) {
+                        body.append(',');
+                    }
+                    body.append("{\"eventId\":").append(event.getId())
+                        .append(",\"eventType\":\"").append(event.getEventType())
+                        .append("\",\"payload\":").append(event.getPayload()).append('}');
+                    to++;
+                }
+                body.append(']');
+                List<Claimed> chunk = events.subList(from, to);
+                from = to;
+                String eventType = entry.getKey() + batchSuffix;
+                requests.add(CompletableFuture.runAsync(() -> deliverChunk(eventType, body.toString(), chunk,
+                    deadline, outcomes), deliveryPool));
+            }
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+        record(outcomes);
+    }
+    
+    private void deliverChunk(String eventType, String body, List<Claimed> chunk, long deadline, Outcomes outcomes) {
+        if (!n8nNotifier.isAvailable() || System.currentTimeMillis() >= deadline) {
+            for (Claimed event : chunk) {
+                outcomes.released.add(event.getId());
+            }
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            n8nNotifier.deliver(eventType, body);
+            for (Claimed event : chunk) {
+                outcomes.delivered.add(event.getId());
+            }
+            deliveredCounter.increment(chunk.size());
+        } catch (N8nNotifier.NotAttemptedException e) {
+            for (Claimed event : chunk) {
+                outcomes.released.add(event.getId());
+            }
+            return;
+        } catch (Exception e) {
+            for (Claimed event : chunk) {
+                outcomes.failed.add(failure(event, e));
+            }
+        }
+        requestCounter.increment();
+        batchSizes.record(chunk.size());
+        deliveryTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Batch-update row for a failed delivery: rescheduled with backoff, or FAILED after max attempts
+     */
+    private Object[] failure(Claimed notification, Exception e) {
+        failedCounter.increment();
+        boolean abandon = notification.getAttempts() >= maxAttempts;
+        if (abandon) {
+            abandonedCounter.increment();
+            log.error("Giving up on {} notification {} after {} attempts: {}",
+                notification.getEventType(), notification.getId(), notification.getAttempts(), e.getMessage());
+        } else {
+            log.warn("Delivery of {} notification {} failed (attempt {}): {}",
+                notification.getEventType(), notification.getId(), notification.getAttempts(), e.getMessage());
+        }
+        String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        return new Object[] {
+            abandon ? OutboxNotification.Status.FAILED.name() : OutboxNotification.Status.PENDING.name(),
+            backoffMs(notification.getAttempts()),
+            error.length() > 500 ? error.substring(0, 500) : error,
+            notification.getId()
+        };
+    }
+    
+    private void record(Outcomes outcomes) {
+        List<Long> delivered = outcomes.delivered;
+        List<Object[]> failed = outcomes.failed;
+        List<Long> released = outcomes.released;
+        if (!delivered.isEmpty()) {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE notification_outbox SET status = 'DELIVERED', delivered_at = now(), last_error = NULL " +
+                    "WHERE id = ANY(?)");
+                statement.setArray(1, connection.createArrayOf("bigint", delivered.toArray()));
+                return statement;
+            });
+        }
+        if (!released.isEmpty()) {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE notification_outbox SET attempts = attempts - 1, " +
+                    "next_attempt_at = now() + ? * interval '1 millisecond' WHERE id = ANY(?)");
+                statement.setLong(1, n8nNotifier.getRetryAfterMillis());
+                statement.setArray(2, connection.createArrayOf("bigint", released.toArray()));
+                return statement;
+            });
+        }
+        if (!failed.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                "UPDATE notification_outbox SET status = ?, next_attempt_at = now() + ? * interval '1 millisecond', " +
+                "last_error = ? WHERE id = ?",
+                failed);
+        }
+    }
+    
+    /**
+     * Exponential backoff with jitter: initial * 2^(attempts - 1), capped, then 50-100% of that
+     */
+    private long backoffMs(int attempts) {
+        long delay = initialBackoffMs << Math.min(attempts - 1, 30);
+        if (delay <= 0 || delay > maxBackoffMs) {
+            delay = maxBackoffMs;
+        }
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+    
+    /**
+     * Results of one batch, filled in concurrently by the delivery pool
+     */
+    private static class Outcomes {
+        final List<Long> delivered;
+        final List<Object[]> failed;
+        final List<Long> released;
+        
+        Outcomes(int expected) {
+            delivered = Collections.synchronizedList(new ArrayList<>(expected));
+            failed = Collections.synchronizedList(new ArrayList<>());
+            released = Collections.synchronizedList(new ArrayList<>());
+        }
+    }
+    
+    /**
+     * A claimed row; attempts already counts the delivery about to be made
+     */
+    @lombok.Value
+    private static class Claimed {
+        long id;
+        String eventType;
+        String payload;
+        int attempts;
+    }
+}
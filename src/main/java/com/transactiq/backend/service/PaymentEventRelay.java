@@ -0,0 +1,121 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.entity.Payment;
+import com.transactiq.backend.event.PaymentLifecycleEvent;
+import com.transactiq.backend.repository.PaymentRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the payment-fed in-memory state (transfer graph, risk features, counterparties,
+ * approval queue stream, ETags) of every instance in step. Local lifecycle events are forwarded over the InvalidationBus
+ * as "TYPE:paymentId" keys; on the other instances the payments are re-read and the same
+ * events replayed locally once the originating transaction has committed.
+ *
+ * After a reconnect the indexes are rebuilt on a separate thread, not the bus listener, so
+ * notifications keep flowing; each index builds its replacement off-lock and swaps it in,
+ * so scoring keeps reading the old state meanwhile. Reconnects during a rebuild queue at
+ * most one more.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentEventRelay {
+    
+    static final String REGION = "payments";
+    
+    private final InvalidationBus invalidationBus;
+    private final PaymentRepository paymentRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PlatformTransactionManager transactionManager;
+    private final TransferGraph transferGraph;
+    private final RiskFeatureStore riskFeatureStore;
+    private final CounterpartyIndex counterpartyIndex;
+    
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private ExecutorService rebuilder;
+    
+    @PostConstruct
+    public void init() {
+        rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "payment-index-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        invalidationBus.subscribe(REGION, this::replay);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+    
+    /**
+     * Runs inside the publishing transaction, so the key goes out with its commit
+     */
+    @EventListener
+    public void onPaymentEvent(PaymentLifecycleEvent event) {
+        // Rescoring changes no index, but the approval queue stream shows the new score
+        invalidationBus.publish(REGION, event.getType() + ":" + event.getPaymentId());
+    }
+    
+    private void rebuild() {
+        rebuildQueued.set(false); // A reconnect from now on needs another pass
+        for (Runnable warmUp : List.<Runnable>of(transferGraph::warmUp, riskFeatureStore::warmUp,
+                counterpartyIndex::warmUp)) {
+            try {
+                warmUp.run();
+            } catch (Exception e) {
+                // That index keeps its current state until the next reconnect or restart
+                log.error("Rebuilding a payment index failed: {}", e.getMessage());
+            }
+        }
+    }
+    
+    private void replay(List<String> keys) {
+        if (keys == null) {
+            // Events may have been missed while disconnected
+            if (rebuildQueued.compareAndSet(false, true)) {
+                log.warn("Payment events may have been missed; rebuilding payment indexes");
+                rebuilder.execute(this::rebuild);
+            }
+            return;
+        }
+        List<PaymentLifecycleEvent.Type> types = new ArrayList<>(keys.size());
+        List<Long> ids = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            int colon = key.indexOf(':');
+            types.add(PaymentLifecycleEvent.Type.valueOf(key.substring(0, colon)));
+            ids.add(Long.parseLong(key.substring(colon + 1)));
+        }
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> {
+            Map<Long, Payment> payments = new HashMap<>();
+            for (Payment payment : paymentRepository.findAllById(ids)) {
+                payments.put(payment.getId(), payment);
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                Payment payment = payments.get(ids.get(i));
+                if (payment != null) {
+                    eventPublisher.publishEvent(PaymentLifecycleEvent.of(types.get(i), payment));
+                }
+            }
+        });
+    }
+}
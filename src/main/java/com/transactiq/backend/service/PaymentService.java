@@ -3,12 +3,17 @@ package com.transactiq.backend.service;
 import com.transactiq.backend.entity.Account;
 import com.transactiq.backend.entity.Payment;
 import com.transactiq.backend.entity.User;
+import com.transactiq.backend.event.PaymentLifecycleEvent;
 import com.transactiq.backend.repository.AccountRepository;
 import com.transactiq.backend.repository.PaymentRepository;
 import com.transactiq.backend.repository.UserRepository;
+import com.transactiq.backend.util.Money;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -28,8 +33,11 @@ public class PaymentService {
     private final AccountRepository accountRepository;
     private final UserRepository userRepository;
     private final ExchangeRateService exchangeRateService;
-    private final N8nNotifier n8nNotifier;
+    private final CurrencyRegistry currencyRegistry;
+    private final NotificationDispatcher notificationDispatcher;
     private final RiskScoreService riskScoreService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DuplicatePaymentDetector duplicatePaymentDetector;
     
     public Payment createPayment(Payment payment, Long currentUserId) {
         // Generate transaction ID if not provided
@@ -84,6 +92,33 @@ public class PaymentService {
             throw new RuntimeException("Cannot transfer to the same account");
         }
         
+        // Near-duplicate check: same accounts and amount within the configured window (in memory, no DB query)
+        boolean duplicateSuspected = false;
+        long fingerprint = duplicatePaymentDetector.checkAndRecord(
+                fromAccount.getId(),
+                toAccount.getId(),
+                Money.toMinor(payment.getAmount()),
+                System.currentTimeMillis()
+        );
+        if (fingerprint == -1) {
+            if (duplicatePaymentDetector.getMode() == DuplicatePaymentDetector.Mode.REJECT) {
+                throw new RuntimeException("Possible duplicate payment: same accounts and amount within the last "
+                        + (duplicatePaymentDetector.getWindowMs() / 1000) + " seconds");
+            }
+            duplicateSuspected = true;
+        } else if (fingerprint != 0 && TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Don't let a rolled-back payment block an honest retry
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        duplicatePaymentDetector.forget(fingerprint);
+                    }
+                }
+            });
+        }
+        payment.setDuplicateSuspected(duplicateSuspected);
+        
         // Note: We don't check balance here because payment is PENDING
         // Balance will be checked when payment is approved
         
@@ -93,18 +128,21 @@ public class PaymentService {
         // Handle currency conversion if accounts have different currencies
         String fromCurrency = fromAccount.getCurrency();
         String toCurrency = toAccount.getCurrency();
+        int fromCurrencyIndex = currencyRegistry.indexOf(fromCurrency);
+        int toCurrencyIndex = currencyRegistry.indexOf(toCurrency);
+        boolean sameCurrency = fromCurrencyIndex >= 0 && toCurrencyIndex >= 0
+                ? fromCurrencyIndex == toCurrencyIndex
+                : fromCurrency.equalsIgnoreCase(toCurrency); // Code not in the registry
         
-        if (!fromCurrency.equalsIgnoreCase(toCurrency)) {
+        if (!sameCurrency) {
             try {
                 // Get exchange rate and convert amount
-                BigDecimal rate = exchangeRateService.getExchangeRate(fromCurrency, toCurrency);
-                BigDecimal convertedAmount = exchangeRateService.convertAmount(
-                    payment.getAmount(), 
-                    fromCurrency, 
-                    toCurrency
-                );
+                ExchangeRateQuote quote = exchangeRateService.getQuote(fromCurrency, toCurrency);
+                BigDecimal rate = quote.getRate();
+                BigDecimal convertedAmount = exchangeRateService.applyRate(payment.getAmount(), rate);
                 
                 payment.setExchangeRate(rate);
+                payment.setExchangeRatePath(quote.getPath());
                 payment.setConvertedAmount(convertedAmount);
                 payment.setConvertedCurrency(toCurrency);
             } catch (Exception e) {
@@ -132,9 +170,10 @@ public class PaymentService {
         
         // Save payment first
         Payment savedPayment = paymentRepository.save(payment);
+        eventPublisher.publishEvent(PaymentLifecycleEvent.of(PaymentLifecycleEvent.Type.CREATED, savedPayment));
         
-        // Auto-approve low-risk payments
-        if (riskScoreService.shouldAutoApprove(savedPayment, riskScore)) {
+        // Auto-approve low-risk payments (suspected duplicates always go to a checker)
+        if (!duplicateSuspected && riskScoreService.shouldAutoApprove(savedPayment, riskScore)) {
             try {
                 // Check balance before auto-approving
                 Account fromAccountForAuto = savedPayment.getFromAccount();
@@ -164,54 +203,65 @@ public class PaymentService {
             throw new RuntimeException("Payment is not in PENDING status");
         }
         
-        // Validate sufficient balance
+        // Validate sufficient balance and move the funds (with currency conversion if needed)
+        transferFunds(payment);
+        
+        // Update payment status
+        payment.setStatus(Payment.PaymentStatus.APPROVED);
+        payment.setApprovedAt(java.time.LocalDateTime.now());
+        payment.setAutoApproved(true);
+        
+        // Don't set approvedBy for auto-approved payments
+        // Don't send n8n notification for auto-approved payments
+        
+        Payment approvedPayment = paymentRepository.save(payment);
+        eventPublisher.publishEvent(PaymentLifecycleEvent.of(PaymentLifecycleEvent.Type.APPROVED, approvedPayment));
+        return approvedPayment;
+    }
+    
+    /**
+     * Debit the sender and credit the recipient (converted amount if currencies differ).
+     * Balances are computed in fixed-point Money; entities keep their BigDecimal columns.
+     */
+    private void transferFunds(Payment payment) {
         Account fromAccount = payment.getFromAccount();
+        Account toAccount = payment.getToAccount();
         String fromCurrency = fromAccount.getCurrency();
-        java.math.BigDecimal amountToDeduct = payment.getAmount();
+        String toCurrency = toAccount.getCurrency();
+        int fromCurrencyIndex = currencyRegistry.indexOf(fromCurrency);
+        int toCurrencyIndex = currencyRegistry.indexOf(toCurrency);
         
-        if (fromAccount.getBalance().compareTo(amountToDeduct) < 0) {
+        Money amountToDeduct = Money.of(payment.getAmount(), fromCurrencyIndex); // Amount in fromAccount currency
+        Money fromBalance = Money.of(fromAccount.getBalance(), fromCurrencyIndex);
+        if (fromBalance.isLessThan(amountToDeduct)) {
             throw new RuntimeException("Insufficient balance in from account");
         }
         
-        // Transfer funds with currency conversion if needed
-        Account toAccount = payment.getToAccount();
-        String toCurrency = toAccount.getCurrency();
-        
-        // Deduct from sender account
-        java.math.BigDecimal newFromBalance = fromAccount.getBalance().subtract(amountToDeduct);
-        fromAccount.setBalance(newFromBalance);
+        // Deduct from sender account (in sender's currency)
+        fromAccount.setBalance(fromBalance.minus(amountToDeduct).toBigDecimal());
         accountRepository.save(fromAccount);
         
-        // Add to receiver account (with conversion if needed)
-        java.math.BigDecimal amountToAdd;
+        // Add to receiver account (in receiver's currency)
+        Money amountToAdd;
         if (!fromCurrency.equalsIgnoreCase(toCurrency)) {
-            if (payment.getConvertedAmount() != null) {
-                amountToAdd = payment.getConvertedAmount();
-            } else {
-                amountToAdd = exchangeRateService.convertAmount(
-                    payment.getAmount(), 
-                    fromCurrency, 
+            // Use converted amount if currencies differ
+            if (payment.getConvertedAmount() == null) {
+                // Recalculate if not stored (shouldn't happen, but safety check)
+                payment.setConvertedAmount(exchangeRateService.convertAmount(
+                    payment.getAmount(),
+                    fromCurrency,
                     toCurrency
-                );
-                payment.setConvertedAmount(amountToAdd);
+                ));
             }
+            amountToAdd = Money.of(payment.getConvertedAmount(), toCurrencyIndex);
         } else {
-            amountToAdd = payment.getAmount();
+            // Same currency
+            amountToAdd = Money.ofMinor(amountToDeduct.getMinor(), toCurrencyIndex);
         }
         
-        java.math.BigDecimal newToBalance = toAccount.getBalance().add(amountToAdd);
-        toAccount.setBalance(newToBalance);
+        Money toBalance = Money.of(toAccount.getBalance(), toCurrencyIndex);
+        toAccount.setBalance(toBalance.plus(amountToAdd).toBigDecimal());
         accountRepository.save(toAccount);
-        
-        // Update payment status
-        payment.setStatus(Payment.PaymentStatus.APPROVED);
-        payment.setApprovedAt(java.time.LocalDateTime.now());
-        payment.setAutoApproved(true);
-        
-        // Don't set approvedBy for auto-approved payments
-        // Don't send n8n notification for auto-approved payments
-        
-        return paymentRepository.save(payment);
     }
     
     public Payment processPayment(Long paymentId) {
@@ -253,7 +303,9 @@ public class PaymentService {
         }
         
         payment.setStatus(Payment.PaymentStatus.REJECTED);
-        return paymentRepository.save(payment);
+        Payment cancelledPayment = paymentRepository.save(payment);
+        eventPublisher.publishEvent(PaymentLifecycleEvent.of(PaymentLifecycleEvent.Type.REJECTED, cancelledPayment));
+        return cancelledPayment;
     }
     
     public Payment approvePayment(Long paymentId, Long approverUserId) {
@@ -264,47 +316,8 @@ public class PaymentService {
             throw new RuntimeException("Payment is not in PENDING status");
         }
         
-        // Validate sufficient balance
-        Account fromAccount = payment.getFromAccount();
-        String fromCurrency = fromAccount.getCurrency();
-        BigDecimal amountToDeduct = payment.getAmount(); // Amount in fromAccount currency
-        
-        if (fromAccount.getBalance().compareTo(amountToDeduct) < 0) {
-            throw new RuntimeException("Insufficient balance in from account");
-        }
-        
-        // Transfer funds with currency conversion if needed
-        Account toAccount = payment.getToAccount();
-        String toCurrency = toAccount.getCurrency();
-        
-        // Deduct from sender account (in sender's currency)
-        BigDecimal newFromBalance = fromAccount.getBalance().subtract(amountToDeduct);
-        fromAccount.setBalance(newFromBalance);
-        accountRepository.save(fromAccount);
-        
-        // Add to receiver account (in receiver's currency)
-        BigDecimal amountToAdd;
-        if (!fromCurrency.equalsIgnoreCase(toCurrency)) {
-            // Use converted amount if currencies differ
-            if (payment.getConvertedAmount() != null) {
-                amountToAdd = payment.getConvertedAmount();
-            } else {
-                // Recalculate if not stored (shouldn't happen, but safety check)
-                amountToAdd = exchangeRateService.convertAmount(
-                    payment.getAmount(), 
-                    fromCurrency, 
-                    toCurrency
-                );
-                payment.setConvertedAmount(amountToAdd);
-            }
-        } else {
-            // Same currency
-            amountToAdd = payment.getAmount();
-        }
-        
-        BigDecimal newToBalance = toAccount.getBalance().add(amountToAdd);
-        toAccount.setBalance(newToBalance);
-        accountRepository.save(toAccount);
+        // Validate sufficient balance and move the funds (with currency conversion if needed)
+        transferFunds(payment);
         
         // Update payment status
         payment.setStatus(Payment.PaymentStatus.APPROVED);
@@ -320,75 +333,69 @@ public class PaymentService {
         
         // Save payment
         Payment approvedPayment = paymentRepository.save(payment);
+        eventPublisher.publishEvent(PaymentLifecycleEvent.of(PaymentLifecycleEvent.Type.APPROVED, approvedPayment));
         
         // Send n8n webhook notification for payment approval
-        sendPaymentApprovedNotification(approvedPayment, approver);
+        enqueuePaymentApprovedNotification(approvedPayment, approver);
         
         return approvedPayment;
     }
     
     /**
-     * Send n8n webhook notification when payment is approved
+     * Queue the n8n webhook notification for an approved payment. It goes through the outbox,
+     * so it commits or rolls back with the approval and is delivered after the response.
      */
-    private void sendPaymentApprovedNotification(Payment payment, User approver) {
-        try {
-            // Get the user who created the payment (fromAccount owner)
-            User paymentCreator = payment.getFromAccount().getUser();
-            
-            // Build payload
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("transactionId", payment.getTransactionId());
-            payload.put("amount", payment.getAmount());
-            payload.put("currency", payment.getCurrency());
-            payload.put("approvedAt", payment.getApprovedAt() != null ? 
-                payment.getApprovedAt().toString() : LocalDateTime.now().toString());
-            
-            // Add approver information
-            if (approver != null) {
-                String approverName = (approver.getFirstName() != null ? approver.getFirstName() : "") + 
-                                     " " + (approver.getLastName() != null ? approver.getLastName() : "");
-                approverName = approverName.trim();
-                if (approverName.isEmpty()) {
-                    approverName = approver.getUsername();
-                }
-                payload.put("approvedBy", approverName);
-                payload.put("approvedByEmail", approver.getEmail());
-            } else {
-                payload.put("approvedBy", "System");
-                payload.put("approvedByEmail", null);
-            }
-            
-            // Add recipient email (user email who created the payment - fromAccount owner)
-            payload.put("toEmail", paymentCreator.getEmail());
-            String creatorName = (paymentCreator.getFirstName() != null ? paymentCreator.getFirstName() : "") + 
-                                " " + (paymentCreator.getLastName() != null ? paymentCreator.getLastName() : "");
-            creatorName = creatorName.trim();
-            if (creatorName.isEmpty()) {
-                creatorName = paymentCreator.getUsername();
+    private void enqueuePaymentApprovedNotification(Payment payment, User approver) {
+        // Get the user who created the payment (fromAccount owner)
+        User paymentCreator = payment.getFromAccount().getUser();
+        
+        // Build payload
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("transactionId", payment.getTransactionId());
+        payload.put("amount", payment.getAmount());
+        payload.put("currency", payment.getCurrency());
+        payload.put("approvedAt", payment.getApprovedAt() != null ? 
+            payment.getApprovedAt().toString() : LocalDateTime.now().toString());
+        
+        // Add approver information
+        if (approver != null) {
+            String approverName = (approver.getFirstName() != null ? approver.getFirstName() : "") + 
+                                 " " + (approver.getLastName() != null ? approver.getLastName() : "");
+            approverName = approverName.trim();
+            if (approverName.isEmpty()) {
+                approverName = approver.getUsername();
             }
-            payload.put("toEmailName", creatorName);
-            
-            // Add additional payment details
-            payload.put("description", payment.getDescription());
-            payload.put("status", payment.getStatus().name());
-            payload.put("transferType", payment.getTransferType() != null ? 
-                payment.getTransferType().name() : "INTERNAL");
-            
-            // Add conversion info if applicable
-            if (payment.getExchangeRate() != null && payment.getExchangeRate().compareTo(java.math.BigDecimal.ONE) != 0) {
-                payload.put("convertedAmount", payment.getConvertedAmount());
-                payload.put("convertedCurrency", payment.getConvertedCurrency());
-                payload.put("exchangeRate", payment.getExchangeRate());
-            }
-            
-            // Send notification
-            n8nNotifier.sendEvent("payment_approved", payload);
-            
-        } catch (Exception e) {
-            // Log error but don't throw exception (non-blocking)
-            System.err.println("Failed to send payment approval notification: " + e.getMessage());
-            e.printStackTrace();
+            payload.put("approvedBy", approverName);
+            payload.put("approvedByEmail", approver.getEmail());
+        } else {
+            payload.put("approvedBy", "System");
+            payload.put("approvedByEmail", null);
         }
+        
+        // Add recipient email (user email who created the payment - fromAccount owner)
+        payload.put("toEmail", paymentCreator.getEmail());
+        String creatorName = (paymentCreator.getFirstName() != null ? paymentCreator.getFirstName() : "") + 
+                            " " + (paymentCreator.getLastName() != null ? paymentCreator.getLastName() : "");
+        creatorName = creatorName.trim();
+        if (creatorName.isEmpty()) {
+            creatorName = paymentCreator.getUsername();
+        }
+        payload.put("toEmailName", creatorName);
+        
+        // Add additional payment details
+        payload.put("description", payment.getDescription());
+        payload.put("status", payment.getStatus().name());
+        payload.put("transferType", payment.getTransferType() != null ? 
+            payment.getTransferType().name() : "INTERNAL");
+        
+        // Add conversion info if applicable
+        if (payment.getExchangeRate() != null && payment.getExchangeRate().compareTo(java.math.BigDecimal.ONE) != 0) {
+            payload.put("convertedAmount", payment.getConvertedAmount());
+            payload.put("convertedCurrency", payment.getConvertedCurrency());
+            payload.put("exchangeRate", payment.getExchangeRate());
+        }
+        
+        notificationDispatcher.enqueue("payment_approved", payload);
     }
     
     public Payment rejectPayment(Long paymentId, Long rejectorUserId) {
@@ -402,7 +409,9 @@ public class PaymentService {
         // Update payment status (do NOT transfer funds)
         payment.setStatus(Payment.PaymentStatus.REJECTED);
         
-        return paymentRepository.save(payment);
+        Payment rejectedPayment = paymentRepository.save(payment);
+        eventPublisher.publishEvent(PaymentLifecycleEvent.of(PaymentLifecycleEvent.Type.REJECTED, rejectedPayment));
+        return rejectedPayment;
     }
     
     private String generateTransactionId() {
@@ -0,0 +1,103 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.event.PaymentsRequotedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Re-prices PENDING cross-currency payments when exchange rates change.
+ *
+ * Runs inside the transaction that changed the rates: the rate matrix is rebuilt as that
+ * transaction sees it and compared with the published snapshot, so every pair whose resolved
+ * rate moves is caught, including reciprocals and chains through the changed pair. All of
+ * them are then re-quoted with one UPDATE ... FROM unnest(...) that rewrites the rate, path
+ * and converted amount and bumps quote_version, so checkers can see the quote changed.
+ * A PaymentsRequotedEvent tells the approval queue stream and the ETags to reload.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PendingPaymentRequoter {
+    
+    private static final String REQUOTE_SQL =
+        "UPDATE payments p " +
+        "SET exchange_rate = q.rate, exchange_rate_path = q.path, " +
+        "    converted_amount = round(p.amount * q.rate, 2), " + // HALF_UP, as ExchangeRateService.applyRate
+        "    quote_version = COALESCE(p.quote_version, 1) + 1 " +
+        "FROM unnest(?::varchar[], ?::varchar[], ?::numeric[], ?::varchar[]) AS q(from_currency, to_currency, rate, path) " +
+        "WHERE p.status = 'PENDING' AND p.currency = q.from_currency AND p.converted_currency = q.to_currency " +
+        "AND p.exchange_rate IS DISTINCT FROM q.rate";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ExchangeRateStore exchangeRateStore;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    @Value("${transactiq.fx.requote-pending:false}")
+    private boolean enabled;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Re-quote pending payments for every pair whose rate differs from the published snapshot.
+     * Must be called in the transaction that wrote the new rates (after they are flushed).
+     * @return number of payments re-quoted
+     */
+    public int requoteChangedPairs() {
+        if (!enabled) {
+            return 0;
+        }
+        long started = System.nanoTime();
+        ExchangeRateSnapshot published = exchangeRateStore.current();
+        ExchangeRateSnapshot pending = exchangeRateStore.preview();
+        
+        List<String> froms = new ArrayList<>();
+        List<String> tos = new ArrayList<>();
+        List<BigDecimal> rates = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        String[] codes = pending.getCurrencies();
+        for (int from = 0; from < codes.length; from++) {
+            for (int to = 0; to < codes.length; to++) {
+                BigDecimal rate = pending.rate(from, to);
+                if (from == to || rate == null) {
+                    continue;
+                }
+                BigDecimal before = published.rate(codes[from], codes[to]);
+                if (before == null || before.compareTo(rate) != 0) {
+                    froms.add(codes[from]);
+                    tos.add(codes[to]);
+                    rates.add(rate);
+                    paths.add(pending.path(from, to));
+                }
+            }
+        }
+        if (froms.isEmpty()) {
+            return 0;
+        }
+        
+        int updated = jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(REQUOTE_SQL);
+            statement.setArray(1, connection.createArrayOf("varchar", froms.toArray()));
+            statement.setArray(2, connection.createArrayOf("varchar", tos.toArray()));
+            statement.setArray(3, connection.createArrayOf("numeric", rates.toArray()));
+            statement.setArray(4, connection.createArrayOf("varchar", paths.toArray()));
+            return statement;
+        });
+        if (updated > 0) {
+            eventPublisher.publishEvent(new PaymentsRequotedEvent(updated));
+        }
+        log.info("Re-quoted {} pending payments across {} changed currency pairs in {} ms",
+            updated, froms.size(), (System.nanoTime() - started) / 1_000_000);
+        return updated;
+    }
+}
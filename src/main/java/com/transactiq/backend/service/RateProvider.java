@@ -0,0 +1,33 @@
+package com.transactiq.backend.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Source of exchange rates pulled by ExchangeRateRefresher.
+ * Implementations return whatever ticks they have; the refresher coalesces them per pair,
+ * so a provider may return several ticks for the same pair or pairs that did not change.
+ */
+public interface RateProvider {
+    
+    /**
+     * Short name recorded as the source of every tick (e.g. "FILE")
+     */
+    String getName();
+    
+    /**
+     * Fetch the latest available rates
+     */
+    List<Tick> fetch() throws Exception;
+    
+    /**
+     * One observed rate: 1 fromCurrency = rate toCurrency, as of observedAtMillis
+     */
+    @lombok.Value
+    class Tick {
+        String fromCurrency;
+        String toCurrency;
+        BigDecimal rate;
+        long observedAtMillis;
+    }
+}
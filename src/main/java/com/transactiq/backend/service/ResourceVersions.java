@@ -0,0 +1,215 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.event.PaymentLifecycleEvent;
+import com.transactiq.backend.event.PaymentsRequotedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Change counters behind the ETags of the read endpoints, so a conditional GET is answered
+ * with 304 by comparing version numbers, before anything is queried or serialized.
+ *
+ * Counters are bumped after the change commits (locally, or on another instance via the
+ * payment relay and the InvalidationBus), and read before a response is built, so an ETag can
+ * only ever be older than the data it was sent with. Per-user counters are striped: users
+ * sharing a stripe just revalidate each other's responses a little more often. ETags carry
+ * this instance's start time, so they never match after a restart or on another instance.
+ */
+@Service
+@RequiredArgsConstructor
+public class ResourceVersions {
+    
+    /**
+     * InvalidationBus region for changes other instances do not learn about otherwise;
+     * keys are REQUOTED, USERS or "user:<id>"
+     */
+    static final String REGION = "resource-versions";
+    
+    /**
+     * Pending payments were re-priced in bulk, without lifecycle events
+     */
+    static final String REQUOTED = "requoted";
+    
+    /**
+     * A user was added or changed role
+     */
+    static final String USERS = "users";
+    
+    private static final int USER_STRIPES = 4096;
+    private static final String REVALIDATE = "private, no-cache";
+    
+    private final InvalidationBus invalidationBus;
+    private final ExchangeRateStore exchangeRateStore;
+    private final MeterRegistry meterRegistry;
+    
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong payments = new AtomicLong();
+    private final AtomicLong userDirectory = new AtomicLong();
+    private final AtomicLongArray users = new AtomicLongArray(USER_STRIPES);
+    private final Map<String, Counter> outcomes = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        invalidationBus.subscribe(REGION, this::apply);
+    }
+    
+    /**
+     * ETag of data derived from all payments
+     */
+    public String paymentsEtag() {
+        return etag("p", payments.get());
+    }
+    
+    /**
+     * ETag of data derived from the user directory (who exists, with which role)
+     */
+    public String usersEtag() {
+        return etag("users", userDirectory.get());
+    }
+    
+    /**
+     * ETag of one user's own data (accounts, balances, their payments)
+     */
+    public String userEtag(long userId) {
+        return etag("u" + userId, users.get(stripe(userId)));
+    }
+    
+    /**
+     * ETag of the active exchange rates
+     */
+    public String exchangeRatesEtag() {
+        return etag("fx", exchangeRateStore.current().getVersion());
+    }
+    
+    /**
+     * Apply If-None-Match for resource: true means a 304 has been prepared and the handler
+     * should return null. Either way the response carries the ETag and asks clients to
+     * revalidate before reusing it. The tag names the requested encoding (JSON, Smile or
+     * CBOR), so a cached copy in one encoding is never confirmed for another.
+     */
+    public boolean notModified(WebRequest request, String resource, String etag) {
+        boolean notModified = request.checkNotModified(withEncoding(etag, request.getHeader(HttpHeaders.ACCEPT)));
+        if (request instanceof NativeWebRequest nativeRequest) {
+            HttpServletResponse response = nativeRequest.getNativeResponse(HttpServletResponse.class);
+            if (response != null) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE);
+                response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            }
+        }
+        outcomes.computeIfAbsent(resource + (notModified ? ":hit" : ":miss"), key ->
+            Counter.builder("transactiq.http.etag")
+                .tag("resource", resource)
+                .tag("outcome", notModified ? "hit" : "miss")
+                .description("Conditional GETs answered with 304 (hit) or a full response (miss)")
+                .register(meterRegistry)
+        ).increment();
+        return notModified;
+    }
+    
+    /**
+     * Mark one user's data changed once the current transaction commits, on every instance
+     */
+    public void touchUser(long userId) {
+        afterCommit(() -> users.incrementAndGet(stripe(userId)));
+        invalidationBus.publish(REGION, "user:" + userId);
+    }
+    
+    /**
+     * Mark the user directory changed once the current transaction commits, on every instance
+     */
+    public void touchUsers() {
+        afterCommit(userDirectory::incrementAndGet);
+        invalidationBus.publish(REGION, USERS);
+    }
+    
+    /**
+     * Re-quoted amounts show up in every user's payments: start a new generation everywhere
+     */
+    @EventListener
+    public void onPaymentsRequoted(PaymentsRequotedEvent event) {
+        invalidationBus.publish(REGION, REQUOTED);
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void afterPaymentsRequoted(PaymentsRequotedEvent event) {
+        generation.incrementAndGet();
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void afterPaymentEvent(PaymentLifecycleEvent event) {
+        payments.incrementAndGet();
+        if (event.getType() != PaymentLifecycleEvent.Type.RESCORED) {
+            users.incrementAndGet(stripe(event.getFromUserId()));
+            users.incrementAndGet(stripe(event.getToUserId()));
+        }
+    }
+    
+    private void apply(List<String> keys) {
+        if (keys == null) {
+            // Changes may have been missed while disconnected
+            generation.incrementAndGet();
+            return;
+        }
+        for (String key : keys) {
+            if (key.equals(REQUOTED)) {
+                generation.incrementAndGet();
+            } else if (key.equals(USERS)) {
+                userDirectory.incrementAndGet();
+            } else if (key.startsWith("user:")) {
+                users.incrementAndGet(stripe(Long.parseLong(key.substring(5))));
+            }
+        }
+    }
+    
+    private void afterCommit(Runnable bump) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bump.run();
+                }
+            });
+        } else {
+            bump.run();
+        }
+    }
+    
+    private String etag(String resource, long version) {
+        return "W/\"" + resource + "-" + epoch + "." + generation.get() + "." + version + "\"";
+    }
+    
+    private static String withEncoding(String etag, String accept) {
+        if (accept == null) {
+            return etag;
+        }
+        if (accept.contains("smile")) {
+            return etag.substring(0, etag.length() - 1) + "-smile\"";
+        }
+        if (accept.contains("cbor")) {
+            return etag.substring(0, etag.length() - 1) + "-cbor\"";
+        }
+        return etag;
+    }
+    
+    private static int stripe(long userId) {
+        return (int) ((userId * 0x9E3779B97F4A7C15L) >>> 52); // Fibonacci hash to 12 bits
+    }
+}
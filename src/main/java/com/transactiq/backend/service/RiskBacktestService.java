@@ -0,0 +1,255 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.entity.Payment;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Replays the full payments history against a candidate RiskPolicy and the current one.
+ *
+ * The id range is split into partitions that are streamed in parallel with server-side
+ * cursors (one read-only transaction and connection per partition). Only the stored
+ * risk score and amount are read, pre-scaled to integers in SQL, so each row costs a few
+ * primitive comparisons. Balance checks made at approval time are not replayed.
+ *
+ * One backtest runs at a time, on a shared pool sized to a quarter of the connection pool,
+ * so a backtest never takes more than that many connections from request handling.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RiskBacktestService {
+    
+    private static final int FETCH_SIZE = 10_000;
+    private static final int MAX_PARTITIONS = 8;
+    
+    private final DataSource dataSource;
+    private final PlatformTransactionManager transactionManager;
+    private final RiskScoreService riskScoreService;
+    
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int connectionPoolSize;
+    
+    private final ReentrantLock running = new ReentrantLock();
+    private int maxPartitions;
+    private ExecutorService executor;
+    
+    @PostConstruct
+    public void init() {
+        maxPartitions = Math.max(1, Math.min(MAX_PARTITIONS, connectionPoolSize / 4));
+        executor = Executors.newFixedThreadPool(maxPartitions, runnable -> {
+            Thread thread = new Thread(runnable, "risk-backtest");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    /**
+     * Replay payments against the candidate policy.
+     * Throws IllegalStateException if another backtest is still running.
+     */
+    public Map<String, Object> backtest(RiskPolicy candidate, int requestedPartitions) {
+        if (!running.tryLock()) {
+            throw new IllegalStateException("A risk policy backtest is already running");
+        }
+        try {
+            return run(candidate, requestedPartitions);
+        } finally {
+            running.unlock();
+        }
+    }
+    
+    private Map<String, Object> run(RiskPolicy candidate, int requestedPartitions) {
+        long started = System.nanoTime();
+        RiskPolicy current = riskScoreService.getCurrentPolicy();
+        RiskPolicy.Compiled currentCompiled = current.compile();
+        RiskPolicy.Compiled candidateCompiled = candidate.compile();
+        
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(FETCH_SIZE);
+        Map<String, Object> range = jdbcTemplate.queryForMap(
+            "SELECT COALESCE(MIN(id), 0) AS min_id, COALESCE(MAX(id), 0) AS max_id FROM payments");
+        long minId = ((Number) range.get("min_id")).longValue();
+        long maxId = ((Number) range.get("max_id")).longValue();
+        
+        int partitions = Math.max(1, Math.min(requestedPartitions, maxPartitions));
+        long span = Math.max(1, (maxId - minId + partitions) / partitions);
+        
+        Tally total = new Tally();
+        List<Future<Tally>> futures = new ArrayList<>();
+        try {
+            for (int p = 0; p < partitions; p++) {
+                long from = minId + p * span;
+                long to = p == partitions - 1 ? maxId + 1 : from + span;
+                futures.add(executor.submit(() -> scanPartition(jdbcTemplate, from, to, currentCompiled, candidateCompiled)));
+            }
+            for (Future<Tally> future : futures) {
+                total.merge(future.get());
+            }
+        } catch (Exception e) {
+            for (Future<Tally> future : futures) {
+                future.cancel(true);
+            }
+            throw new RuntimeException("Backtest failed: " + e.getMessage(), e);
+        }
+        
+        long elapsedMs = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        log.info("Risk policy backtest scanned {} payments in {} partitions in {} ms", total.rows, partitions, elapsedMs);
+        
+        long workloadSaved = total.manualCount[0] - total.manualCount[1];
+        Map<String, Object> differences = new LinkedHashMap<>();
+        differences.put("newlyAutoApproved", countAndAmount(total.newlyAutoCount, total.newlyAutoAmount));
+        differences.put("newlyEscalated", countAndAmount(total.newlyManualCount, total.newlyManualAmount));
+        differences.put("riskLevelChanged", total.levelChanged);
+        differences.put("checkerWorkloadSaved", workloadSaved);
+        differences.put("checkerWorkloadSavedPercent", total.manualCount[0] > 0
+            ? Math.round(workloadSaved * 10000.0 / total.manualCount[0]) / 100.0 : 0.0);
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("rows", total.rows);
+        result.put("unscored", total.unscored);
+        result.put("partitions", partitions);
+        result.put("elapsedMs", elapsedMs);
+        result.put("rowsPerSecond", total.rows * 1000 / elapsedMs);
+        result.put("currentPolicy", current);
+        result.put("candidatePolicy", candidate);
+        result.put("current", policySummary(total, 0));
+        result.put("candidate", policySummary(total, 1));
+        result.put("differences", differences);
+        return result;
+    }
+    
+    private Tally scanPartition(JdbcTemplate jdbcTemplate, long fromId, long toId,
+                                RiskPolicy.Compiled current, RiskPolicy.Compiled candidate) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        Tally tally = new Tally();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(
+            "SELECT (amount * 100)::bigint, (risk_score * 100)::bigint FROM payments WHERE id >= ? AND id < ?",
+            rs -> {
+                long amount = rs.getLong(1);
+                long score = rs.getLong(2);
+                if (rs.wasNull()) {
+                    tally.unscored++;
+                    return;
+                }
+                tally.add(amount, score, current, candidate);
+            },
+            fromId, toId));
+        return tally;
+    }
+    
+    private static Map<String, Object> policySummary(Tally tally, int policy) {
+        Map<String, Object> levels = new LinkedHashMap<>();
+        Payment.RiskLevel[] values = Payment.RiskLevel.values();
+        for (int level = 0; level < values.length; level++) {
+            levels.put(values[level].name(), tally.levelCounts[policy][level]);
+        }
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("riskLevels", levels);
+        summary.put("autoApproved", countAndAmount(tally.autoCount[policy], tally.autoAmount[policy]));
+        summary.put("checkerQueue", countAndAmount(tally.manualCount[policy], tally.manualAmount[policy]));
+        return summary;
+    }
+    
+    private static Map<String, Object> countAndAmount(long count, long amountHundredths) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("count", count);
+        map.put("amount", BigDecimal.valueOf(amountHundredths, 2));
+        return map;
+    }
+    
+    /**
+     * Per-partition counters; index 0 = current policy, 1 = candidate
+     */
+    private static final class Tally {
+        long rows;
+        long unscored;
+        final long[][] levelCounts = new long[2][4];
+        final long[] autoCount = new long[2];
+        final long[] autoAmount = new long[2];
+        final long[] manualCount = new long[2];
+        final long[] manualAmount = new long[2];
+        long newlyAutoCount;
+        long newlyAutoAmount;
+        long newlyManualCount;
+        long newlyManualAmount;
+        long levelChanged;
+        
+        void add(long amount, long score, RiskPolicy.Compiled current, RiskPolicy.Compiled candidate) {
+            rows++;
+            int currentLevel = current.riskLevel(score);
+            int candidateLevel = candidate.riskLevel(score);
+            levelCounts[0][currentLevel]++;
+            levelCounts[1][candidateLevel]++;
+            if (currentLevel != candidateLevel) {
+                levelChanged++;
+            }
+            
+            boolean currentAuto = current.autoApproves(score, amount);
+            boolean candidateAuto = candidate.autoApproves(score, amount);
+            record(0, currentAuto, amount);
+            record(1, candidateAuto, amount);
+            if (candidateAuto && !currentAuto) {
+                newlyAutoCount++;
+                newlyAutoAmount += amount;
+            } else if (currentAuto && !candidateAuto) {
+                newlyManualCount++;
+                newlyManualAmount += amount;
+            }
+        }
+        
+        private void record(int policy, boolean auto, long amount) {
+            if (auto) {
+                autoCount[policy]++;
+                autoAmount[policy] += amount;
+            } else {
+                manualCount[policy]++;
+                manualAmount[policy] += amount;
+            }
+        }
+        
+        void merge(Tally other) {
+            rows += other.rows;
+            unscored += other.unscored;
+            for (int p = 0; p < 2; p++) {
+                for (int level = 0; level < 4; level++) {
+                    levelCounts[p][level] += other.levelCounts[p][level];
+                }
+                autoCount[p] += other.autoCount[p];
+                autoAmount[p] += other.autoAmount[p];
+                manualCount[p] += other.manualCount[p];
+                manualAmount[p] += other.manualAmount[p];
+            }
+            newlyAutoCount += other.newlyAutoCount;
+            newlyAutoAmount += other.newlyAutoAmount;
+            newlyManualCount += other.newlyManualCount;
+            newlyManualAmount += other.newlyManualAmount;
+            levelChanged += other.levelChanged;
+        }
+    }
+}
@@ -0,0 +1,628 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.event.PaymentLifecycleEvent;
+import com.transactiq.backend.util.LongHashSet;
+import com.transactiq.backend.util.LongKeyedMap;
+import com.transactiq.backend.util.Money;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory store of per-account and per-user risk aggregates.
+ *
+ * Aggregates are maintained incrementally from PaymentLifecycleEvents (after commit),
+ * so RiskScoreService can read any feature in constant time without querying payments.
+ * Changed aggregates are periodically written to risk_feature_snapshots; on startup (and
+ * after a missed-events reconnect) the snapshot is loaded and payments written since its
+ * watermark are replayed.
+ *
+ * The watermark is a PaymentChangeFeed token, so it follows commit order rather than id
+ * order, and replay covers approvals and rejections of older payments as well as creations.
+ * Which lifecycle steps of each payment are already counted is kept in paged bitmaps that are
+ * snapshotted with the aggregates. Replay (and a relayed duplicate event) only applies what
+ * is missing, so the watermark can safely lag: it is a token taken at least replay-overlap-ms
+ * before the snapshot, which covers event relay delay.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RiskFeatureStore {
+    
+    static final int WINDOW_DAYS = 30;
+    static final int MAX_TRACKED_COUNTERPARTIES = 256;
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final byte FORMAT_VERSION = 2; // 2: first payment id per counterparty
+    
+    private static final String SCOPE_ACCOUNT = "A";
+    private static final String SCOPE_USER = "U";
+    private static final String SCOPE_META = "M";
+    private static final String SCOPE_APPLIED = "P";
+    
+    private static final int PAGE_SHIFT = 16; // 65536 payment ids per applied-steps page
+    private static final int CREATED = 0;
+    private static final int APPROVED = 1;
+    private static final int REJECTED = 2;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final PaymentChangeFeed paymentChangeFeed;
+    private final InvalidationBus invalidationBus;
+    
+    @Value("${transactiq.risk.features.replay-overlap-ms:300000}")
+    private long replayOverlapMs;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Aggregates state = new Aggregates(); // guarded by lock, replaced by warmUp
+    private List<PaymentLifecycleEvent> pendingEvents; // events seen while warmUp rebuilds off-lock
+    private final ArrayDeque<long[]> capturedTokens = new ArrayDeque<>(); // {capturedAtMillis, token}
+    private long watermark;
+    private boolean metaDirty;
+    private volatile boolean ready;
+    
+    /**
+     * Features for scoring a payment from fromAccountId (owned by fromUserId) to toAccountId.
+     * For a payment the store has already recorded (paymentId != 0, e.g. when re-scoring),
+     * the features are as of its creation: its own count and amount are taken out and only
+     * earlier payments make the recipient a known counterparty.
+     */
+    public RiskFeatures getFeatures(long fromAccountId, long toAccountId, long fromUserId, long nowMillis,
+                                    long paymentId, long amountMinor, long createdAtMillis) {
+        if (!ready) {
+            return RiskFeatures.UNKNOWN;
+        }
+        lock.readLock().lock();
+        try {
+            AccountFeatures account = state.accounts.get(fromAccountId);
+            UserFeatures user = state.users.get(fromUserId);
+            if (account == null && user == null) {
+                return new RiskFeatures(true, 0, 0, 0, 0, 0, false, 0, 0, 0);
+            }
+            long today = nowMillis / DAY_MILLIS;
+            long windowCount = account != null ? account.windowCount(today) : 0;
+            long windowAmount = account != null ? account.windowAmount(today) : 0;
+            long lifetimeCount = account != null ? account.lifetimeCount : 0;
+            int distinctCounterparties = account != null ? account.counterparties.size() : 0;
+            Long firstPaymentToRecipient = account != null ? account.counterparties.get(toAccountId) : null;
+            long userPaymentCount = user != null ? user.paymentCount : 0;
+            
+            boolean knownCounterparty = firstPaymentToRecipient != null;
+            if (paymentId != 0) {
+                // Take out the payment's own contribution recorded on CREATED
+                if (createdAtMillis / DAY_MILLIS > today - WINDOW_DAYS && windowCount > 0) {
+                    windowCount--;
+                    windowAmount = Math.max(0, windowAmount - amountMinor);
+                }
+                lifetimeCount = Math.max(0, lifetimeCount - 1);
+                userPaymentCount = Math.max(0, userPaymentCount - 1);
+                knownCounterparty = firstPaymentToRecipient != null && firstPaymentToRecipient < paymentId;
+                if (firstPaymentToRecipient != null && firstPaymentToRecipient == paymentId) {
+                    distinctCounterparties = Math.max(0, distinctCounterparties - 1);
+                }
+            }
+            return new RiskFeatures(
+                true,
+                account != null ? account.createdAtMillis : 0,
+                windowCount,
+                windowAmount,
+                lifetimeCount,
+                distinctCounterparties,
+                knownCounterparty,
+                userPaymentCount,
+                user != null ? user.approvedCount : 0,
+                user != null ? user.rejectedCount : 0
+            );
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentEvent(PaymentLifecycleEvent event) {
+        lock.writeLock().lock();
+        try {
+            state.apply(event);
+            if (pendingEvents != null) {
+                pendingEvents.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Load the persisted snapshot and replay payments written since its watermark.
+     * Falls back to a full rebuild from payments when there is no snapshot, or only one
+     * from before watermarks (which cannot tell which payments it already counts).
+     *
+     * The aggregates are rebuilt without the lock, so scoring keeps reading the current
+     * ones meanwhile; events arriving during the rebuild are buffered and applied to the new
+     * aggregates (each step once, by the applied bitmaps) before they replace the current ones.
+     */
+    @Transactional(readOnly = true)
+    public synchronized void warmUp() {
+        long started = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            pendingEvents = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Aggregates rebuilt = new Aggregates();
+        long token;
+        long replayed;
+        int fromSnapshot;
+        try {
+            long[] snapshotWatermark = {-1};
+            jdbcTemplate.query("SELECT scope, entity_id, data FROM risk_feature_snapshots", rs -> {
+                String scope = rs.getString(1);
+                long entityId = rs.getLong(2);
+                ByteBuffer data = ByteBuffer.wrap(rs.getBytes(3));
+                switch (scope) {
+                    case SCOPE_ACCOUNT -> rebuilt.accounts.put(entityId, AccountFeatures.read(data));
+                    case SCOPE_USER -> rebuilt.users.put(entityId, UserFeatures.read(data));
+                    case SCOPE_APPLIED -> rebuilt.appliedPages.put(entityId + 1, AppliedPage.read(data));
+                    case SCOPE_META -> {
+                        // Version 1 held an id high-water mark (8 bytes, no version byte)
+                        if (data.remaining() > 8 && data.get() >= 2) {
+                            snapshotWatermark[0] = data.getLong();
+                        }
+                    }
+                    default -> log.warn("Ignoring unknown risk feature snapshot scope {}", scope);
+                }
+            });
+            if (snapshotWatermark[0] < 0) {
+                rebuilt.accounts.clear();
+                rebuilt.users.clear();
+                rebuilt.appliedPages.clear();
+            }
+            fromSnapshot = rebuilt.accounts.size();
+            // Every write below this token has committed, so the replay below sees it
+            token = paymentChangeFeed.currentToken();
+            replayed = replayPayments(rebuilt, snapshotWatermark[0]);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pendingEvents = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            for (PaymentLifecycleEvent event : pendingEvents) {
+                rebuilt.apply(event);
+            }
+            pendingEvents = null;
+            state = rebuilt;
+            capturedTokens.clear();
+            watermark = token;
+            metaDirty = true;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Risk feature store ready: {} accounts, {} users ({} from snapshot, {} payments replayed) in {} ms",
+            rebuilt.accounts.size(), rebuilt.users.size(), fromSnapshot, replayed, System.currentTimeMillis() - started);
+    }
+    
+    /**
+     * Write changed aggregates to risk_feature_snapshots in one batch
+     */
+    @Scheduled(fixedDelayString = "${transactiq.risk.features.snapshot-interval-ms:60000}",
+               initialDelayString = "${transactiq.risk.features.snapshot-interval-ms:60000}")
+    public synchronized void snapshot() {
+        if (!ready) {
+            return;
+        }
+        Long token = null;
+        try {
+            token = paymentChangeFeed.currentToken();
+        } catch (Exception e) {
+            log.warn("Could not read a payment change token, keeping the risk feature watermark: {}", e.getMessage());
+        }
+        List<Object[]> rows = new ArrayList<>();
+        long[] accountIds;
+        long[] userIds;
+        long[] pageKeys;
+        Aggregates current;
+        lock.writeLock().lock();
+        try {
+            current = state;
+            advanceWatermark(token, System.currentTimeMillis());
+            if (current.dirtyAccounts.size() == 0 && current.dirtyUsers.size() == 0
+                    && current.dirtyPages.size() == 0 && !metaDirty) {
+                return;
+            }
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            accountIds = current.dirtyAccounts.toArray();
+            userIds = current.dirtyUsers.toArray();
+            pageKeys = current.dirtyPages.toArray();
+            for (long id : accountIds) {
+                AccountFeatures account = current.accounts.get(id);
+                if (account != null) {
+                    rows.add(new Object[] {SCOPE_ACCOUNT, id, account.write(), now});
+                }
+            }
+            for (long id : userIds) {
+                UserFeatures user = current.users.get(id);
+                if (user != null) {
+                    rows.add(new Object[] {SCOPE_USER, id, user.write(), now});
+                }
+            }
+            for (long pageKey : pageKeys) {
+                AppliedPage page = current.appliedPages.get(pageKey);
+                if (page != null) {
+                    rows.add(new Object[] {SCOPE_APPLIED, pageKey - 1, page.write(), now});
+                }
+            }
+            rows.add(new Object[] {SCOPE_META, 0L, ByteBuffer.allocate(9).put(FORMAT_VERSION).putLong(watermark).array(), now});
+            current.dirtyAccounts.clear();
+            current.dirtyUsers.clear();
+            current.dirtyPages.clear();
+            metaDirty = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        try {
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO risk_feature_snapshots (scope, entity_id, data, updated_at) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT (scope, entity_id) DO UPDATE SET data = EXCLUDED.data, updated_at = EXCLUDED.updated_at",
+                rows);
+            log.debug("Risk feature snapshot written: {} accounts, {} users", accountIds.length, userIds.length);
+        } catch (Exception e) {
+            // Re-mark so the next run retries these rows
+            lock.writeLock().lock();
+            try {
+                for (long id : accountIds) {
+                    current.dirtyAccounts.add(id);
+                }
+                for (long id : userIds) {
+                    current.dirtyUsers.add(id);
+                }
+                for (long pageKey : pageKeys) {
+                    current.dirtyPages.add(pageKey);
+                }
+                metaDirty = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("Failed to write risk feature snapshot: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Record a token taken now, and move the watermark to the newest token taken at least
+     * replay-overlap-ms ago: by then every event of a write below it has been applied here.
+     * While the bus is down, relayed events may be getting lost, so nothing taken then is used.
+     */
+    private void advanceWatermark(Long token, long nowMillis) {
+        if (token == null) {
+            return;
+        }
+        if (invalidationBus.isEnabled() && !invalidationBus.isListening()) {
+            capturedTokens.clear();
+            return;
+        }
+        capturedTokens.addLast(new long[] {nowMillis, token});
+        while (!capturedTokens.isEmpty() && capturedTokens.peekFirst()[0] <= nowMillis - replayOverlapMs) {
+            long candidate = capturedTokens.pollFirst()[1];
+            if (candidate > watermark) {
+                watermark = candidate;
+                metaDirty = true;
+            }
+        }
+    }
+    
+    /**
+     * Apply the lifecycle steps not yet counted of every payment written at or after the
+     * token (all payments when sinceToken < 0) to the given aggregates
+     */
+    private long replayPayments(Aggregates target, long sinceToken) {
+        long[] count = {0};
+        String sql =
+            "SELECT p.id, p.from_account_id, p.to_account_id, fa.user_id, fa.created_at, p.amount, p.status, p.created_at " +
+            "FROM payments p " +
+            "JOIN accounts fa ON fa.id = p.from_account_id " +
+            (sinceToken >= 0 ? "WHERE p.change_seq >= ? OR p.change_seq IS NULL " : "") +
+            "ORDER BY p.id";
+        Object[] args = sinceToken >= 0 ? new Object[] {sinceToken} : new Object[0];
+        jdbcTemplate.query(sql,
+            rs -> {
+                long paymentId = rs.getLong(1);
+                long fromAccountId = rs.getLong(2);
+                long fromUserId = rs.getLong(4);
+                if (target.markApplied(paymentId, CREATED)) {
+                    Timestamp accountCreated = rs.getTimestamp(5);
+                    Timestamp created = rs.getTimestamp(8);
+                    target.applyCreated(paymentId, fromAccountId, rs.getLong(3), fromUserId,
+                        Money.toMinor(rs.getBigDecimal(6)),
+                        accountCreated != null ? accountCreated.getTime() : 0,
+                        created != null ? created.getTime() : System.currentTimeMillis());
+                }
+                String status = rs.getString(7);
+                if (("APPROVED".equals(status) || "COMPLETED".equals(status)) && target.markApplied(paymentId, APPROVED)) {
+                    target.applyOutcome(fromAccountId, fromUserId, true);
+                } else if ("REJECTED".equals(status) && target.markApplied(paymentId, REJECTED)) {
+                    target.applyOutcome(fromAccountId, fromUserId, false);
+                }
+                count[0]++;
+            },
+            args);
+        return count[0];
+    }
+    
+    /**
+     * The aggregates with their applied-steps bitmaps and what changed since the last snapshot
+     */
+    private static final class Aggregates {
+        final LongKeyedMap<AccountFeatures> accounts = new LongKeyedMap<>(1024);
+        final LongKeyedMap<UserFeatures> users = new LongKeyedMap<>(1024);
+        final LongHashSet dirtyAccounts = new LongHashSet(256);
+        final LongHashSet dirtyUsers = new LongHashSet(256);
+        final LongKeyedMap<AppliedPage> appliedPages = new LongKeyedMap<>(64); // key: page index + 1
+        final LongHashSet dirtyPages = new LongHashSet(16); // page keys, as above
+        
+        void apply(PaymentLifecycleEvent event) {
+            switch (event.getType()) {
+                case CREATED -> {
+                    if (markApplied(event.getPaymentId(), CREATED)) {
+                        applyCreated(event.getPaymentId(), event.getFromAccountId(), event.getToAccountId(),
+                            event.getFromUserId(), event.getAmountMinor(), event.getFromAccountCreatedAtMillis(),
+                            event.getOccurredAtMillis());
+                    }
+                }
+                case APPROVED -> {
+                    if (markApplied(event.getPaymentId(), APPROVED)) {
+                        applyOutcome(event.getFromAccountId(), event.getFromUserId(), true);
+                    }
+                }
+                case REJECTED -> {
+                    if (markApplied(event.getPaymentId(), REJECTED)) {
+                        applyOutcome(event.getFromAccountId(), event.getFromUserId(), false);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Mark a lifecycle step of a payment as counted; false if it already was
+         */
+        boolean markApplied(long paymentId, int step) {
+            long pageKey = (paymentId >>> PAGE_SHIFT) + 1;
+            AppliedPage applied = appliedPages.computeIfAbsent(pageKey, key -> new AppliedPage());
+            if (!applied.set(step, (int) (paymentId & ((1 << PAGE_SHIFT) - 1)))) {
+                return false;
+            }
+            dirtyPages.add(pageKey);
+            return true;
+        }
+        
+        void applyCreated(long paymentId, long fromAccountId, long toAccountId, long fromUserId,
+                          long amountMinor, long accountCreatedAtMillis, long occurredAtMillis) {
+            AccountFeatures account = accounts.computeIfAbsent(fromAccountId, id -> new AccountFeatures());
+            if (account.createdAtMillis == 0) {
+                account.createdAtMillis = accountCreatedAtMillis;
+            }
+            account.recordOutgoing(paymentId, occurredAtMillis, amountMinor, toAccountId);
+            dirtyAccounts.add(fromAccountId);
+            
+            UserFeatures user = users.computeIfAbsent(fromUserId, id -> new UserFeatures());
+            user.paymentCount++;
+            if (user.firstPaymentMillis == 0 || occurredAtMillis < user.firstPaymentMillis) {
+                user.firstPaymentMillis = occurredAtMillis;
+            }
+            dirtyUsers.add(fromUserId);
+        }
+        
+        void applyOutcome(long fromAccountId, long fromUserId, boolean approved) {
+            AccountFeatures account = accounts.computeIfAbsent(fromAccountId, id -> new AccountFeatures());
+            UserFeatures user = users.computeIfAbsent(fromUserId, id -> new UserFeatures());
+            if (approved) {
+                account.approvedCount++;
+                user.approvedCount++;
+            } else {
+                account.rejectedCount++;
+                user.rejectedCount++;
+            }
+            dirtyAccounts.add(fromAccountId);
+            dirtyUsers.add(fromUserId);
+        }
+    }
+    
+    /**
+     * Per-account aggregates. Outgoing payments over the last WINDOW_DAYS are kept in a
+     * ring of daily buckets so the 30-day sums slide without ever rescanning history.
+     */
+    static final class AccountFeatures {
+        long createdAtMillis;
+        long headDay;
+        final long[] dayCount = new long[WINDOW_DAYS];
+        final long[] dayAmountMinor = new long[WINDOW_DAYS];
+        long lifetimeCount;
+        long lifetimeAmountMinor;
+        long approvedCount;
+        long rejectedCount;
+        long lastPaymentMillis;
+        final LongKeyedMap<Long> counterparties = new LongKeyedMap<>(); // recipient -> first payment id
+        
+        void recordOutgoing(long paymentId, long occurredAtMillis, long amountMinor, long toAccountId) {
+            long day = occurredAtMillis / DAY_MILLIS;
+            lifetimeCount++;
+            lifetimeAmountMinor += amountMinor;
+            lastPaymentMillis = Math.max(lastPaymentMillis, occurredAtMillis);
+            Long firstPaymentId = counterparties.get(toAccountId);
+            if (firstPaymentId == null) {
+                if (counterparties.size() < MAX_TRACKED_COUNTERPARTIES) {
+                    counterparties.put(toAccountId, paymentId);
+                }
+            } else if (paymentId < firstPaymentId) {
+                counterparties.put(toAccountId, paymentId); // Replayed out of order
+            }
+            if (day > headDay) {
+                long toClear = Math.min(day - headDay, WINDOW_DAYS);
+                for (long d = day - toClear + 1; d <= day; d++) {
+                    int slot = (int) (d % WINDOW_DAYS);
+                    dayCount[slot] = 0;
+                    dayAmountMinor[slot] = 0;
+                }
+                headDay = day;
+            } else if (day <= headDay - WINDOW_DAYS) {
+                return; // Older than the window (late replay), lifetime totals only
+            }
+            int slot = (int) (day % WINDOW_DAYS);
+            dayCount[slot]++;
+            dayAmountMinor[slot] += amountMinor;
+        }
+        
+        long windowCount(long today) {
+            long sum = 0;
+            for (long d = Math.max(headDay, today) - WINDOW_DAYS + 1; d <= headDay; d++) {
+                if (d > today - WINDOW_DAYS) {
+                    sum += dayCount[(int) (d % WINDOW_DAYS)];
+                }
+            }
+            return sum;
+        }
+        
+        long windowAmount(long today) {
+            long sum = 0;
+            for (long d = Math.max(headDay, today) - WINDOW_DAYS + 1; d <= headDay; d++) {
+                if (d > today - WINDOW_DAYS) {
+                    sum += dayAmountMinor[(int) (d % WINDOW_DAYS)];
+                }
+            }
+            return sum;
+        }
+        
+        byte[] write() {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + 8 * 7 + WINDOW_DAYS * 16 + 4 + counterparties.size() * 16);
+            buffer.put(FORMAT_VERSION)
+                .putLong(createdAtMillis)
+                .putLong(headDay)
+                .putLong(lifetimeCount)
+                .putLong(lifetimeAmountMinor)
+                .putLong(approvedCount)
+                .putLong(rejectedCount)
+                .putLong(lastPaymentMillis);
+            for (int i = 0; i < WINDOW_DAYS; i++) {
+                buffer.putLong(dayCount[i]).putLong(dayAmountMinor[i]);
+            }
+            buffer.putInt(counterparties.size());
+            counterparties.forEach((party, firstPaymentId) -> buffer.putLong(party).putLong(firstPaymentId));
+            return buffer.array();
+        }
+        
+        static AccountFeatures read(ByteBuffer buffer) {
+            byte version = buffer.get();
+            AccountFeatures features = new AccountFeatures();
+            features.createdAtMillis = buffer.getLong();
+            features.headDay = buffer.getLong();
+            features.lifetimeCount = buffer.getLong();
+            features.lifetimeAmountMinor = buffer.getLong();
+            features.approvedCount = buffer.getLong();
+            features.rejectedCount = buffer.getLong();
+            features.lastPaymentMillis = buffer.getLong();
+            for (int i = 0; i < WINDOW_DAYS; i++) {
+                features.dayCount[i] = buffer.getLong();
+                features.dayAmountMinor[i] = buffer.getLong();
+            }
+            int parties = buffer.getInt();
+            for (int i = 0; i < parties; i++) {
+                long party = buffer.getLong();
+                // Version 1 snapshots kept no payment ids: treat those recipients as paid before anything
+                features.counterparties.put(party, version >= 2 ? buffer.getLong() : 0L);
+            }
+            return features;
+        }
+    }
+    
+    /**
+     * Which lifecycle steps (created, approved, rejected) have been counted, one bit per
+     * payment id for a range of 65536 ids
+     */
+    static final class AppliedPage {
+        final long[][] steps = new long[3][(1 << PAGE_SHIFT) / 64];
+        
+        boolean set(int step, int offset) {
+            long[] words = steps[step];
+            long bit = 1L << (offset & 63);
+            if ((words[offset >>> 6] & bit) != 0) {
+                return false;
+            }
+            words[offset >>> 6] |= bit;
+            return true;
+        }
+        
+        byte[] write() {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + steps.length * steps[0].length * 8);
+            buffer.put(FORMAT_VERSION);
+            for (long[] words : steps) {
+                for (long word : words) {
+                    buffer.putLong(word);
+                }
+            }
+            return buffer.array();
+        }
+        
+        static AppliedPage read(ByteBuffer buffer) {
+            buffer.get(); // format version
+            AppliedPage page = new AppliedPage();
+            for (long[] words : page.steps) {
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = buffer.getLong();
+                }
+            }
+            return page;
+        }
+    }
+    
+    /**
+     * Per-user aggregates across all of the user's accounts
+     */
+    static final class UserFeatures {
+        long firstPaymentMillis;
+        long paymentCount;
+        long approvedCount;
+        long rejectedCount;
+        
+        byte[] write() {
+            return ByteBuffer.allocate(1 + 8 * 4)
+                .put(FORMAT_VERSION)
+                .putLong(firstPaymentMillis)
+                .putLong(paymentCount)
+                .putLong(approvedCount)
+                .putLong(rejectedCount)
+                .array();
+        }
+        
+        static UserFeatures read(ByteBuffer buffer) {
+            buffer.get(); // format version
+            UserFeatures features = new UserFeatures();
+            features.firstPaymentMillis = buffer.getLong();
+            features.paymentCount = buffer.getLong();
+            features.approvedCount = buffer.getLong();
+            features.rejectedCount = buffer.getLong();
+            return features;
+        }
+    }
+}
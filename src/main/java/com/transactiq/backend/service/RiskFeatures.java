@@ -0,0 +1,41 @@
+package com.transactiq.backend.service;
+
+import lombok.Value;
+
+/**
+ * Read-only view of the aggregates RiskFeatureStore keeps for one payment's sender,
+ * sender's owner and recipient. All values are computed in memory without touching the database.
+ */
+@Value
+public class RiskFeatures {
+    
+    public static final RiskFeatures UNKNOWN = new RiskFeatures(false, 0, 0, 0, 0L, 0, false, 0, 0, 0);
+    
+    boolean known;                      // false when the store has no data (e.g. still warming up)
+    long accountCreatedAtMillis;        // 0 when unknown
+    long outgoingCount30d;
+    long outgoingAmountMinor30d;
+    long lifetimeOutgoingCount;
+    int distinctCounterparties;         // saturates at the tracking cap
+    boolean knownCounterparty;          // sender has paid this recipient before
+    long userPaymentCount;
+    long userApprovedCount;
+    long userRejectedCount;
+    
+    /**
+     * Average outgoing amount over the last 30 days in minor units, or 0 if there were no payments
+     */
+    public long getAverageOutgoingMinor30d() {
+        return outgoingCount30d == 0 ? 0 : outgoingAmountMinor30d / outgoingCount30d;
+    }
+    
+    /**
+     * Age of the sender account in whole days at the given instant, or -1 when unknown
+     */
+    public long accountAgeDays(long nowMillis) {
+        if (accountCreatedAtMillis <= 0) {
+            return -1;
+        }
+        return Math.max(0, (nowMillis - accountCreatedAtMillis) / 86_400_000L);
+    }
+}
@@ -0,0 +1,255 @@
+package com.transactiq.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, dependency-free runtime for a learned risk model.
+ *
+ * Supports logistic regression (intercept + coefficients) and small gradient-boosted
+ * tree ensembles (flattened node arrays, logistic link). Features are primitive doubles
+ * in the canonical order defined by RiskModelFeatures; the model file refers to them by name.
+ * Output is the probability (0-1) that the payment is risky.
+ */
+public final class RiskModel {
+    
+    public enum Type {
+        LOGISTIC,
+        GBDT
+    }
+    
+    private final String name;
+    private final Type type;
+    
+    // Logistic regression
+    private final double intercept;
+    private final double[] weights;
+    
+    // Gradient-boosted trees: per tree, per node (feature < 0 marks a leaf)
+    private final double baseScore;
+    private final int[][] nodeFeature;
+    private final double[][] nodeThreshold;
+    private final int[][] nodeLeft;
+    private final int[][] nodeRight;
+    private final double[][] nodeValue;
+    
+    private RiskModel(String name, Type type, double intercept, double[] weights, double baseScore,
+                      int[][] nodeFeature, double[][] nodeThreshold, int[][] nodeLeft, int[][] nodeRight,
+                      double[][] nodeValue) {
+        this.name = name;
+        this.type = type;
+        this.intercept = intercept;
+        this.weights = weights;
+        this.baseScore = baseScore;
+        this.nodeFeature = nodeFeature;
+        this.nodeThreshold = nodeThreshold;
+        this.nodeLeft = nodeLeft;
+        this.nodeRight = nodeRight;
+        this.nodeValue = nodeValue;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    /**
+     * Score one feature vector (length RiskModelFeatures.COUNT)
+     */
+    public double score(double[] features) {
+        double margin;
+        if (type == Type.LOGISTIC) {
+            margin = intercept;
+            for (int j = 0; j < weights.length; j++) {
+                margin += weights[j] * features[j];
+            }
+        } else {
+            margin = baseScore;
+            for (int t = 0; t < nodeFeature.length; t++) {
+                margin += evaluateTree(t, features, 0, 1);
+            }
+        }
+        return sigmoid(margin);
+    }
+    
+    /**
+     * Score every row of a batch into out[0..batch.size()).
+     * The batch is column-major so the logistic path is a sequence of tight
+     * multiply-add loops over contiguous arrays that the JIT can vectorize.
+     */
+    public void scoreBatch(FeatureBatch batch, double[] out) {
+        int n = batch.size();
+        double[] columns = batch.columns;
+        int stride = batch.capacity;
+        if (type == Type.LOGISTIC) {
+            Arrays.fill(out, 0, n, intercept);
+            for (int j = 0; j < weights.length; j++) {
+                double w = weights[j];
+                if (w == 0.0) {
+                    continue;
+                }
+                int offset = j * stride;
+                for (int i = 0; i < n; i++) {
+                    out[i] += w * columns[offset + i];
+                }
+            }
+        } else {
+            Arrays.fill(out, 0, n, baseScore);
+            // Tree-outer / row-inner keeps one tree's node arrays hot in cache for the whole batch
+            for (int t = 0; t < nodeFeature.length; t++) {
+                for (int i = 0; i < n; i++) {
+                    out[i] += evaluateTree(t, columns, i, stride);
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            out[i] = sigmoid(out[i]);
+        }
+    }
+    
+    private double evaluateTree(int tree, double[] data, int row, int stride) {
+        int[] feature = nodeFeature[tree];
+        double[] threshold = nodeThreshold[tree];
+        int[] left = nodeLeft[tree];
+        int[] right = nodeRight[tree];
+        int node = 0;
+        while (feature[node] >= 0) {
+            double value = stride == 1 ? data[feature[node]] : data[feature[node] * stride + row];
+            node = value < threshold[node] ? left[node] : right[node];
+        }
+        return nodeValue[tree][node];
+    }
+    
+    private static double sigmoid(double margin) {
+        return 1.0 / (1.0 + Math.exp(-margin));
+    }
+    
+    /**
+     * Parse a model definition.
+     *
+     * Logistic: {"name", "type": "logistic", "intercept", "coefficients": {feature: weight}}
+     * GBDT: {"name", "type": "gbdt", "baseScore", "trees": [{"nodes": [
+     *   {"feature", "threshold", "left", "right"} | {"leaf": value}, ...]}]}
+     */
+    public static RiskModel fromJson(JsonNode root) {
+        String name = root.path("name").asText("unnamed");
+        String type = root.path("type").asText("");
+        
+        if ("logistic".equalsIgnoreCase(type)) {
+            double[] weights = new double[RiskModelFeatures.COUNT];
+            Iterator<Map.Entry<String, JsonNode>> coefficients = root.path("coefficients").fields();
+            while (coefficients.hasNext()) {
+                Map.Entry<String, JsonNode> entry = coefficients.next();
+                weights[featureIndex(entry.getKey())] = entry.getValue().asDouble();
+            }
+            return new RiskModel(name, Type.LOGISTIC, root.path("intercept").asDouble(0.0), weights,
+                0.0, null, null, null, null, null);
+        }
+        
+        if ("gbdt".equalsIgnoreCase(type)) {
+            List<JsonNode> trees = new ArrayList<>();
+            root.path("trees").forEach(trees::add);
+            if (trees.isEmpty()) {
+                throw new IllegalArgumentException("GBDT model has no trees");
+            }
+            int[][] feature = new int[trees.size()][];
+            double[][] threshold = new double[trees.size()][];
+            int[][] left = new int[trees.size()][];
+            int[][] right = new int[trees.size()][];
+            double[][] value = new double[trees.size()][];
+            for (int t = 0; t < trees.size(); t++) {
+                JsonNode nodes = trees.get(t).path("nodes");
+                int size = nodes.size();
+                feature[t] = new int[size];
+                threshold[t] = new double[size];
+                left[t] = new int[size];
+                right[t] = new int[size];
+                value[t] = new double[size];
+                for (int k = 0; k < size; k++) {
+                    JsonNode node = nodes.get(k);
+                    if (node.has("leaf")) {
+                        feature[t][k] = -1;
+                        value[t][k] = node.get("leaf").asDouble();
+                    } else {
+                        feature[t][k] = featureIndex(node.path("feature").asText());
+                        threshold[t][k] = node.path("threshold").asDouble();
+                        left[t][k] = checkChild(node.path("left").asInt(-1), k, size);
+                        right[t][k] = checkChild(node.path("right").asInt(-1), k, size);
+                    }
+                }
+            }
+            return new RiskModel(name, Type.GBDT, 0.0, null, root.path("baseScore").asDouble(0.0),
+                feature, threshold, left, right, value);
+        }
+        
+        throw new IllegalArgumentException("Unsupported risk model type: " + type);
+    }
+    
+    private static int featureIndex(String featureName) {
+        int index = RiskModelFeatures.indexOf(featureName);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown risk model feature: " + featureName);
+        }
+        return index;
+    }
+    
+    private static int checkChild(int child, int node, int size) {
+        // Children must point forward so evaluation always terminates
+        if (child <= node || child >= size) {
+            throw new IllegalArgumentException("Invalid tree child index " + child + " at node " + node);
+        }
+        return child;
+    }
+    
+    /**
+     * Reusable column-major feature matrix for micro-batch scoring
+     */
+    public static final class FeatureBatch {
+        private final double[] columns;
+        private final int capacity;
+        private int size;
+        
+        public FeatureBatch(int capacity) {
+            this.capacity = capacity;
+            this.columns = new double[capacity * RiskModelFeatures.COUNT];
+        }
+        
+        /**
+         * Append one row (canonical feature order)
+         * @return the row index
+         */
+        public int add(double[] row) {
+            if (size == capacity) {
+                throw new IllegalStateException("Feature batch is full");
+            }
+            for (int j = 0; j < RiskModelFeatures.COUNT; j++) {
+                columns[j * capacity + size] = row[j];
+            }
+            return size++;
+        }
+        
+        public int size() {
+            return size;
+        }
+        
+        public int capacity() {
+            return capacity;
+        }
+        
+        public boolean isFull() {
+            return size == capacity;
+        }
+        
+        public void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.entity.Payment;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Canonical feature vector for the learned risk model.
+ * Model files reference features by these names; the runtime works on the index order.
+ */
+public final class RiskModelFeatures {
+    
+    public static final String[] NAMES = {
+        "amount_log10",          // log10(1 + amount)
+        "cross_currency",        // 1 if from/to currencies differ
+        "external",              // 1 for external transfers
+        "night_hour",            // 1 if created between 2 AM and 6 AM
+        "balance_coverage",      // sender balance / amount, capped at 10
+        "account_age_days_log",  // ln(1 + sender account age in days)
+        "new_counterparty",      // 1 if sender has never paid this recipient
+        "outgoing_30d_log",      // ln(1 + sender payments in the last 30 days)
+        "amount_to_avg_30d",     // amount / 30-day average amount, capped at 20
+        "user_reject_rate"       // rejected / (approved + rejected) for the sender's owner
+    };
+    
+    public static final int COUNT = NAMES.length;
+    
+    private RiskModelFeatures() {
+    }
+    
+    public static int indexOf(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Fill row (length COUNT) with the features for a payment
+     */
+    public static void extract(Payment payment, RiskFeatures features, long nowMillis, double[] row) {
+        double amount = payment.getAmount().doubleValue();
+        BigDecimal balance = payment.getFromAccount().getBalance();
+        LocalDateTime created = payment.getCreatedAt() != null ? payment.getCreatedAt() : LocalDateTime.now();
+        int hour = created.getHour();
+        
+        row[0] = Math.log10(1.0 + amount);
+        row[1] = payment.getFromAccount().getCurrency().equalsIgnoreCase(payment.getToAccount().getCurrency()) ? 0.0 : 1.0;
+        row[2] = payment.getTransferType() == Payment.TransferType.EXTERNAL ? 1.0 : 0.0;
+        row[3] = hour >= 2 && hour < 6 ? 1.0 : 0.0;
+        row[4] = amount > 0 && balance != null ? Math.min(10.0, balance.doubleValue() / amount) : 0.0;
+        
+        long ageDays = features.accountAgeDays(nowMillis);
+        row[5] = ageDays >= 0 ? Math.log1p(ageDays) : 0.0;
+        row[6] = features.isKnown() && !features.isKnownCounterparty() ? 1.0 : 0.0;
+        row[7] = Math.log1p(features.getOutgoingCount30d());
+        
+        long averageMinor = features.getAverageOutgoingMinor30d();
+        row[8] = averageMinor > 0 ? Math.min(20.0, amount * 100.0 / averageMinor) : 1.0;
+        
+        long decided = features.getUserApprovedCount() + features.getUserRejectedCount();
+        row[9] = decided > 0 ? (double) features.getUserRejectedCount() / decided : 0.0;
+    }
+}
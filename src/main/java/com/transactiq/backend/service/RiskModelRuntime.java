@@ -0,0 +1,87 @@
+package com.transactiq.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+
+/**
+ * Holds the currently loaded learned risk model.
+ * The model file is read once at startup (and on reload); scoring is plain CPU work
+ * over primitive arrays with no external service involved.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RiskModelRuntime {
+    
+    private final ResourceLoader resourceLoader;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${transactiq.risk.model.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${transactiq.risk.model.path:classpath:risk-model.json}")
+    private String modelPath;
+    
+    @Value("${transactiq.risk.model.weight:0.3}")
+    private double weight;
+    
+    private volatile RiskModel model;
+    
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            log.info("Learned risk model disabled; using rule-based scoring only");
+            return;
+        }
+        try {
+            reload();
+        } catch (Exception e) {
+            // Don't fail startup - scoring falls back to rules only
+            log.error("Failed to load risk model from {}: {}", modelPath, e.getMessage());
+        }
+    }
+    
+    /**
+     * Re-read the model file and swap it in atomically
+     */
+    public void reload() throws Exception {
+        Resource resource = resourceLoader.getResource(modelPath);
+        try (InputStream in = resource.getInputStream()) {
+            RiskModel loaded = RiskModel.fromJson(objectMapper.readTree(in));
+            model = loaded;
+            log.info("Loaded risk model '{}' ({}) from {}", loaded.getName(), loaded.getType(), modelPath);
+        }
+    }
+    
+    public boolean isActive() {
+        return enabled && model != null;
+    }
+    
+    /**
+     * Weight of the model probability in the blended score (0 = rules only, 1 = model only)
+     */
+    public double getWeight() {
+        return weight;
+    }
+    
+    public String getModelName() {
+        RiskModel current = model;
+        return current != null ? current.getName() : null;
+    }
+    
+    public double score(double[] features) {
+        return model.score(features);
+    }
+    
+    public void scoreBatch(RiskModel.FeatureBatch batch, double[] out) {
+        model.scoreBatch(batch, out);
+    }
+}
@@ -0,0 +1,120 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.entity.Payment;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Thresholds that turn a risk score into a risk level and an auto-approval decision.
+ * RiskScoreService applies the current policy; RiskBacktestService replays candidates.
+ */
+@Value
+public class RiskPolicy {
+    
+    BigDecimal autoApproveMaxRisk;      // Auto-approve if risk <= this AND amount <= autoApproveMaxAmount
+    BigDecimal autoApproveMaxAmount;
+    BigDecimal veryLowRiskMax;          // Auto-approve if risk <= this AND amount <= veryLowRiskMaxAmount
+    BigDecimal veryLowRiskMaxAmount;
+    BigDecimal lowRiskMax;              // LOW if score <= this
+    BigDecimal mediumRiskMax;           // MEDIUM if score <= this
+    BigDecimal highRiskMax;             // HIGH if score <= this, VERY_HIGH above
+    
+    public Payment.RiskLevel riskLevel(BigDecimal riskScore) {
+        if (riskScore.compareTo(lowRiskMax) <= 0) {
+            return Payment.RiskLevel.LOW;
+        } else if (riskScore.compareTo(mediumRiskMax) <= 0) {
+            return Payment.RiskLevel.MEDIUM;
+        } else if (riskScore.compareTo(highRiskMax) <= 0) {
+            return Payment.RiskLevel.HIGH;
+        } else {
+            return Payment.RiskLevel.VERY_HIGH;
+        }
+    }
+    
+    public boolean autoApproves(BigDecimal riskScore, BigDecimal amount) {
+        // Very low risk - auto-approve up to the larger amount limit
+        if (riskScore.compareTo(veryLowRiskMax) <= 0) {
+            return amount.compareTo(veryLowRiskMaxAmount) <= 0;
+        }
+        // Low risk AND small amount - auto-approve
+        if (riskScore.compareTo(autoApproveMaxRisk) <= 0) {
+            return amount.compareTo(autoApproveMaxAmount) <= 0;
+        }
+        // Medium or higher risk - requires manual approval
+        return false;
+    }
+    
+    /**
+     * Copy of this policy with any non-null override applied
+     */
+    public RiskPolicy withOverrides(BigDecimal autoApproveMaxRisk, BigDecimal autoApproveMaxAmount,
+                                    BigDecimal veryLowRiskMax, BigDecimal veryLowRiskMaxAmount,
+                                    BigDecimal lowRiskMax, BigDecimal mediumRiskMax, BigDecimal highRiskMax) {
+        return new RiskPolicy(
+            autoApproveMaxRisk != null ? autoApproveMaxRisk : this.autoApproveMaxRisk,
+            autoApproveMaxAmount != null ? autoApproveMaxAmount : this.autoApproveMaxAmount,
+            veryLowRiskMax != null ? veryLowRiskMax : this.veryLowRiskMax,
+            veryLowRiskMaxAmount != null ? veryLowRiskMaxAmount : this.veryLowRiskMaxAmount,
+            lowRiskMax != null ? lowRiskMax : this.lowRiskMax,
+            mediumRiskMax != null ? mediumRiskMax : this.mediumRiskMax,
+            highRiskMax != null ? highRiskMax : this.highRiskMax
+        );
+    }
+    
+    /**
+     * Primitive form for tight loops: scores and amounts in hundredths (scale 2)
+     */
+    public Compiled compile() {
+        return new Compiled(this);
+    }
+    
+    public static final class Compiled {
+        private final long autoApproveMaxRisk;
+        private final long autoApproveMaxAmount;
+        private final long veryLowRiskMax;
+        private final long veryLowRiskMaxAmount;
+        private final long lowRiskMax;
+        private final long mediumRiskMax;
+        private final long highRiskMax;
+        
+        private Compiled(RiskPolicy policy) {
+            this.autoApproveMaxRisk = hundredths(policy.autoApproveMaxRisk);
+            this.autoApproveMaxAmount = hundredths(policy.autoApproveMaxAmount);
+            this.veryLowRiskMax = hundredths(policy.veryLowRiskMax);
+            this.veryLowRiskMaxAmount = hundredths(policy.veryLowRiskMaxAmount);
+            this.lowRiskMax = hundredths(policy.lowRiskMax);
+            this.mediumRiskMax = hundredths(policy.mediumRiskMax);
+            this.highRiskMax = hundredths(policy.highRiskMax);
+        }
+        
+        /**
+         * Risk level ordinal (Payment.RiskLevel order)
+         */
+        public int riskLevel(long riskScore) {
+            if (riskScore <= lowRiskMax) {
+                return 0;
+            } else if (riskScore <= mediumRiskMax) {
+                return 1;
+            } else if (riskScore <= highRiskMax) {
+                return 2;
+            }
+            return 3;
+        }
+        
+        public boolean autoApproves(long riskScore, long amount) {
+            if (riskScore <= veryLowRiskMax) {
+                return amount <= veryLowRiskMaxAmount;
+            }
+            if (riskScore <= autoApproveMaxRisk) {
+                return amount <= autoApproveMaxAmount;
+            }
+            return false;
+        }
+        
+        private static long hundredths(BigDecimal value) {
+            return value.movePointRight(2).setScale(0, RoundingMode.FLOOR).longValueExact();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.entity.Payment;
+import com.transactiq.backend.event.PaymentLifecycleEvent;
+import com.transactiq.backend.repository.PaymentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk re-scoring of pending payments (e.g. after a model or feature change).
+ * Payments are processed in keyset pages, each page in its own transaction,
+ * and scored through RiskScoreService's micro-batched model path.
+ * History features are taken as of each payment's creation, so a payment never counts itself.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RiskRescoringService {
+    
+    private static final int PAGE_SIZE = 1024;
+    
+    private final PaymentRepository paymentRepository;
+    private final RiskScoreService riskScoreService;
+    private final RiskModelRuntime riskModelRuntime;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    /**
+     * Re-score every PENDING payment
+     * @return summary (scanned, changed, level changes, elapsed time)
+     */
+    public Map<String, Object> rescorePendingPayments() {
+        long started = System.nanoTime();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long[] totals = new long[3]; // scanned, changed, levelChanged
+        long lastId = 0L;
+        
+        while (true) {
+            final long afterId = lastId;
+            Long pageLastId = transactionTemplate.execute(status -> {
+                List<Payment> page = paymentRepository.findByStatusAndIdGreaterThanOrderByIdAsc(
+                    Payment.PaymentStatus.PENDING, afterId, PageRequest.of(0, PAGE_SIZE));
+                if (page.isEmpty()) {
+                    return null;
+                }
+                List<BigDecimal> scores = riskScoreService.calculateRiskScores(page);
+                for (int i = 0; i < page.size(); i++) {
+                    Payment payment = page.get(i);
+                    BigDecimal newScore = scores.get(i);
+                    totals[0]++;
+                    if (payment.getRiskScore() != null && payment.getRiskScore().compareTo(newScore) == 0) {
+                        continue;
+                    }
+                    Payment.RiskLevel newLevel = riskScoreService.getRiskLevel(newScore);
+                    if (newLevel != payment.getRiskLevel()) {
+                        totals[2]++;
+                    }
+                    payment.setRiskScore(newScore);
+                    payment.setRiskLevel(newLevel);
+                    totals[1]++;
+                    eventPublisher.publishEvent(PaymentLifecycleEvent.of(PaymentLifecycleEvent.Type.RESCORED, payment));
+                }
+                return page.get(page.size() - 1).getId();
+            });
+            if (pageLastId == null) {
+                break;
+            }
+            lastId = pageLastId;
+        }
+        
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        log.info("Re-scored {} pending payments ({} changed, {} level changes) in {} ms",
+            totals[0], totals[1], totals[2], elapsedMs);
+        
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("scanned", totals[0]);
+        summary.put("changed", totals[1]);
+        summary.put("levelChanged", totals[2]);
+        summary.put("elapsedMs", elapsedMs);
+        summary.put("modelActive", riskModelRuntime.isActive());
+        summary.put("modelName", riskModelRuntime.getModelName());
+        return summary;
+    }
+}
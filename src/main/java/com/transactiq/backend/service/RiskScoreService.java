@@ -1,6 +1,7 @@
 package com.transactiq.backend.service;
 
 import com.transactiq.backend.entity.Payment;
+import com.transactiq.backend.util.Money;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -8,6 +9,9 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Service for calculating risk scores for payments
@@ -20,133 +24,268 @@ public class RiskScoreService {
     // Risk thresholds for auto-approval
     private static final BigDecimal AUTO_APPROVE_MAX_RISK = BigDecimal.valueOf(30); // Auto-approve if risk <= 30
     private static final BigDecimal AUTO_APPROVE_MAX_AMOUNT = BigDecimal.valueOf(1000); // Auto-approve if amount <= $1000
+    private static final BigDecimal VERY_LOW_RISK_MAX = BigDecimal.valueOf(20); // Very low risk if risk <= 20
+    private static final BigDecimal VERY_LOW_RISK_MAX_AMOUNT = BigDecimal.valueOf(10000); // ...auto-approved up to $10K
+    
+    // Risk level cut-offs: LOW <= 30 < MEDIUM <= 60 < HIGH <= 80 < VERY_HIGH
+    private static final RiskPolicy CURRENT_POLICY = new RiskPolicy(
+        AUTO_APPROVE_MAX_RISK,
+        AUTO_APPROVE_MAX_AMOUNT,
+        VERY_LOW_RISK_MAX,
+        VERY_LOW_RISK_MAX_AMOUNT,
+        BigDecimal.valueOf(30),
+        BigDecimal.valueOf(60),
+        BigDecimal.valueOf(80)
+    );
+    
+    // Rows per micro-batch when scoring many payments with the learned model
+    private static final int MODEL_BATCH_SIZE = 256;
+    
+    private final RiskFeatureStore riskFeatureStore;
+    private final RiskModelRuntime riskModelRuntime;
+    private final TransferGraph transferGraph;
     
     /**
      * Calculate risk score for a payment (0-100)
      * Higher score = higher risk
      */
     public BigDecimal calculateRiskScore(Payment payment) {
-        BigDecimal riskScore = BigDecimal.ZERO;
+        RiskFeatures features = lookupFeatures(payment);
+        BigDecimal ruleScore = calculateRuleScore(payment, features);
+        
+        if (!riskModelRuntime.isActive()) {
+            return ruleScore;
+        }
+        double[] row = new double[RiskModelFeatures.COUNT];
+        RiskModelFeatures.extract(payment, features, System.currentTimeMillis(), row);
+        return blend(ruleScore, riskModelRuntime.score(row));
+    }
+    
+    /**
+     * Calculate risk scores for many payments (e.g. bulk re-scoring).
+     * Rule factors are evaluated per payment; the learned model is evaluated
+     * in column-major micro-batches of MODEL_BATCH_SIZE rows.
+     */
+    public List<BigDecimal> calculateRiskScores(List<Payment> payments) {
+        List<BigDecimal> scores = new ArrayList<>(payments.size());
+        boolean modelActive = riskModelRuntime.isActive();
+        RiskModel.FeatureBatch batch = modelActive ? new RiskModel.FeatureBatch(MODEL_BATCH_SIZE) : null;
+        double[] row = new double[RiskModelFeatures.COUNT];
+        double[] probabilities = new double[MODEL_BATCH_SIZE];
+        long now = System.currentTimeMillis();
+        int batchStart = 0;
+        
+        for (Payment payment : payments) {
+            RiskFeatures features = lookupFeatures(payment);
+            scores.add(calculateRuleScore(payment, features));
+            if (modelActive) {
+                RiskModelFeatures.extract(payment, features, now, row);
+                batch.add(row);
+                if (batch.isFull()) {
+                    blendBatch(scores, batch, probabilities, batchStart);
+                    batchStart = scores.size();
+                }
+            }
+        }
+        if (modelActive && batch.size() > 0) {
+            blendBatch(scores, batch, probabilities, batchStart);
+        }
+        return scores;
+    }
+    
+    private void blendBatch(List<BigDecimal> scores, RiskModel.FeatureBatch batch, double[] probabilities, int batchStart) {
+        riskModelRuntime.scoreBatch(batch, probabilities);
+        for (int i = 0; i < batch.size(); i++) {
+            scores.set(batchStart + i, blend(scores.get(batchStart + i), probabilities[i]));
+        }
+        batch.clear();
+    }
+    
+    /**
+     * Blend the rule score with the model probability using the configured model weight
+     */
+    private BigDecimal blend(BigDecimal ruleScore, double probability) {
+        double weight = riskModelRuntime.getWeight();
+        double blended = ruleScore.doubleValue() * (1.0 - weight) + probability * 100.0 * weight;
+        blended = Math.max(0.0, Math.min(100.0, blended));
+        return BigDecimal.valueOf(blended).setScale(2, RoundingMode.HALF_UP);
+    }
+    
+    /**
+     * Features as of the payment's creation: a saved payment (being re-scored) was already
+     * recorded by the feature store on CREATED, so the store leaves it out
+     */
+    private RiskFeatures lookupFeatures(Payment payment) {
+        return riskFeatureStore.getFeatures(
+            payment.getFromAccount().getId(),
+            payment.getToAccount().getId(),
+            payment.getFromAccount().getUser().getId(),
+            System.currentTimeMillis(),
+            payment.getId() != null ? payment.getId() : 0L,
+            Money.toMinor(payment.getAmount()),
+            payment.getCreatedAt() != null
+                ? payment.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L
+        );
+    }
+    
+    /**
+     * Rule-based score (0-100) from the individual risk factors.
+     * Factors are whole points, so they are summed as ints and only the total becomes a BigDecimal.
+     */
+    private BigDecimal calculateRuleScore(Payment payment, RiskFeatures features) {
+        long amountMinor = Money.toMinor(payment.getAmount());
+        int riskScore = 0;
         
         // 1. Amount Risk (0-30 points)
-        BigDecimal amountRisk = calculateAmountRisk(payment.getAmount());
-        riskScore = riskScore.add(amountRisk);
+        riskScore += calculateAmountRisk(amountMinor);
         
         // 2. Currency Risk (0-20 points)
-        BigDecimal currencyRisk = calculateCurrencyRisk(payment);
-        riskScore = riskScore.add(currencyRisk);
+        riskScore += calculateCurrencyRisk(payment);
         
         // 3. Transfer Type Risk (0-15 points)
-        BigDecimal transferTypeRisk = calculateTransferTypeRisk(payment);
-        riskScore = riskScore.add(transferTypeRisk);
+        riskScore += calculateTransferTypeRisk(payment);
         
         // 4. Time Risk (0-10 points)
-        BigDecimal timeRisk = calculateTimeRisk(payment.getCreatedAt());
-        riskScore = riskScore.add(timeRisk);
+        riskScore += calculateTimeRisk(payment.getCreatedAt());
         
         // 5. Account Balance Risk (0-15 points)
-        BigDecimal balanceRisk = calculateBalanceRisk(payment);
-        riskScore = riskScore.add(balanceRisk);
+        riskScore += calculateBalanceRisk(payment, amountMinor);
         
         // 6. User History Risk (0-10 points)
-        BigDecimal historyRisk = calculateHistoryRisk(payment);
-        riskScore = riskScore.add(historyRisk);
+        riskScore += calculateHistoryRisk(amountMinor, features);
         
-        // Cap at 100
-        if (riskScore.compareTo(BigDecimal.valueOf(100)) > 0) {
-            riskScore = BigDecimal.valueOf(100);
-        }
+        // 7. Network Risk (0-15 points)
+        riskScore += calculateNetworkRisk(payment);
         
-        return riskScore.setScale(2, RoundingMode.HALF_UP);
+        // Cap at 100
+        return BigDecimal.valueOf(Math.min(riskScore, 100)).setScale(2, RoundingMode.HALF_UP);
     }
     
-    private BigDecimal calculateAmountRisk(BigDecimal amount) {
-        // Amount thresholds
-        if (amount.compareTo(BigDecimal.valueOf(1000)) < 0) {
-            return BigDecimal.ZERO; // < $1,000 = 0 points
-        } else if (amount.compareTo(BigDecimal.valueOf(10000)) < 0) {
-            return BigDecimal.valueOf(5); // $1K-$10K = 5 points
-        } else if (amount.compareTo(BigDecimal.valueOf(50000)) < 0) {
-            return BigDecimal.valueOf(15); // $10K-$50K = 15 points
-        } else if (amount.compareTo(BigDecimal.valueOf(100000)) < 0) {
-            return BigDecimal.valueOf(25); // $50K-$100K = 25 points
+    private int calculateAmountRisk(long amountMinor) {
+        // Amount thresholds (in hundredths)
+        if (amountMinor < 1_000_00L) {
+            return 0; // < $1,000 = 0 points
+        } else if (amountMinor < 10_000_00L) {
+            return 5; // $1K-$10K = 5 points
+        } else if (amountMinor < 50_000_00L) {
+            return 15; // $10K-$50K = 15 points
+        } else if (amountMinor < 100_000_00L) {
+            return 25; // $50K-$100K = 25 points
         } else {
-            return BigDecimal.valueOf(30); // > $100K = 30 points
+            return 30; // > $100K = 30 points
         }
     }
     
-    private BigDecimal calculateCurrencyRisk(Payment payment) {
+    private int calculateCurrencyRisk(Payment payment) {
         // Different currency = higher risk
         String fromCurrency = payment.getFromAccount().getCurrency();
         String toCurrency = payment.getToAccount().getCurrency();
         
         if (!fromCurrency.equalsIgnoreCase(toCurrency)) {
-            return BigDecimal.valueOf(20); // International transfer
+            return 20; // International transfer
         }
-        return BigDecimal.ZERO; // Same currency
+        return 0; // Same currency
     }
     
-    private BigDecimal calculateTransferTypeRisk(Payment payment) {
+    private int calculateTransferTypeRisk(Payment payment) {
         // External transfers = higher risk
         if (payment.getTransferType() == Payment.TransferType.EXTERNAL) {
-            return BigDecimal.valueOf(15);
+            return 15;
         }
-        return BigDecimal.ZERO; // Internal transfer
+        return 0; // Internal transfer
     }
     
-    private BigDecimal calculateTimeRisk(LocalDateTime createdAt) {
+    private int calculateTimeRisk(LocalDateTime createdAt) {
         // Unusual hours = higher risk (2 AM - 6 AM)
         // If createdAt is null (payment not yet saved), use current time
         LocalDateTime timeToCheck = createdAt != null ? createdAt : LocalDateTime.now();
         LocalTime time = timeToCheck.toLocalTime();
         int hour = time.getHour();
         if (hour >= 2 && hour < 6) {
-            return BigDecimal.valueOf(10);
+            return 10;
         }
-        return BigDecimal.ZERO;
+        return 0;
     }
     
-    private BigDecimal calculateBalanceRisk(Payment payment) {
+    private int calculateBalanceRisk(Payment payment, long amountMinor) {
         // Low balance after payment = higher risk
-        BigDecimal currentBalance = payment.getFromAccount().getBalance();
-        BigDecimal paymentAmount = payment.getAmount();
-        BigDecimal remainingBalance = currentBalance.subtract(paymentAmount);
+        long remainingMinor = Money.toMinor(payment.getFromAccount().getBalance()) - amountMinor;
         
         // If remaining balance < 10% of payment amount
-        BigDecimal tenPercent = paymentAmount.multiply(BigDecimal.valueOf(0.1));
-        if (remainingBalance.compareTo(tenPercent) < 0) {
-            return BigDecimal.valueOf(15);
+        if (remainingMinor * 10 < amountMinor) {
+            return 15;
         }
         
         // If remaining balance < 50% of payment amount
-        BigDecimal fiftyPercent = paymentAmount.multiply(BigDecimal.valueOf(0.5));
-        if (remainingBalance.compareTo(fiftyPercent) < 0) {
-            return BigDecimal.valueOf(8);
+        if (remainingMinor * 2 < amountMinor) {
+            return 8;
         }
         
-        return BigDecimal.ZERO;
+        return 0;
     }
     
-    private BigDecimal calculateHistoryRisk(Payment payment) {
-        // First payment to this recipient = higher risk
-        // This would require checking payment history
-        // For now, return 0 (can be enhanced later)
-        return BigDecimal.ZERO;
+    private int calculateHistoryRisk(long amountMinor, RiskFeatures features) {
+        // Uses pre-aggregated history from the in-memory feature store (no payments query)
+        if (!features.isKnown()) {
+            return 0; // Store still warming up - don't penalize
+        }
+        
+        int points = 0;
+        
+        // New account or no payment history yet
+        long accountAgeDays = features.accountAgeDays(System.currentTimeMillis());
+        if (features.getLifetimeOutgoingCount() == 0 || (accountAgeDays >= 0 && accountAgeDays < 7)) {
+            points += 4;
+        }
+        
+        // First payment to this recipient
+        if (!features.isKnownCounterparty()) {
+            points += 3;
+        }
+        
+        // Amount well above the account's 30-day average
+        if (features.getOutgoingCount30d() >= 3) {
+            if (amountMinor > 3 * features.getAverageOutgoingMinor30d()) {
+                points += 3;
+            }
+        }
+        
+        return Math.min(points, 10);
+    }
+    
+    private int calculateNetworkRisk(Payment payment) {
+        // Round-tripping and mule patterns from the in-memory graph of recent approved transfers
+        TransferGraph.Signals signals = transferGraph.analyze(
+            payment.getFromAccount().getId(),
+            payment.getToAccount().getId(),
+            System.currentTimeMillis()
+        );
+        
+        int points = 0;
+        
+        // Money would return to the sender (A -> B -> ... -> A)
+        if (signals.closesCycle()) {
+            points += 10;
+        }
+        
+        // Recipient collecting from many accounts, or sender spraying to many
+        if (signals.isFanIn() || signals.isFanOut()) {
+            points += 5;
+        }
+        
+        // Sender received from many accounts and is now passing money on
+        if (signals.isPassThrough()) {
+            points += 5;
+        }
+        
+        return Math.min(points, 15);
     }
     
     /**
      * Get risk level from risk score
      */
     public Payment.RiskLevel getRiskLevel(BigDecimal riskScore) {
-        if (riskScore.compareTo(BigDecimal.valueOf(30)) <= 0) {
-            return Payment.RiskLevel.LOW;
-        } else if (riskScore.compareTo(BigDecimal.valueOf(60)) <= 0) {
-            return Payment.RiskLevel.MEDIUM;
-        } else if (riskScore.compareTo(BigDecimal.valueOf(80)) <= 0) {
-            return Payment.RiskLevel.HIGH;
-        } else {
-            return Payment.RiskLevel.VERY_HIGH;
-        }
+        return CURRENT_POLICY.riskLevel(riskScore);
     }
     
     /**
@@ -156,18 +295,13 @@ public class RiskScoreService {
      * - OR risk score <= 20 (very low risk, regardless of amount up to $10K)
      */
     public boolean shouldAutoApprove(Payment payment, BigDecimal riskScore) {
-        // Very low risk (<= 20) - auto-approve up to $10K
-        if (riskScore.compareTo(BigDecimal.valueOf(20)) <= 0) {
-            return payment.getAmount().compareTo(BigDecimal.valueOf(10000)) <= 0;
-        }
-        
-        // Low risk (21-30) AND small amount (<= $1000) - auto-approve
-        if (riskScore.compareTo(AUTO_APPROVE_MAX_RISK) <= 0) {
-            return payment.getAmount().compareTo(AUTO_APPROVE_MAX_AMOUNT) <= 0;
-        }
-        
-        // Medium or higher risk - requires manual approval
-        return false;
+        return CURRENT_POLICY.autoApproves(riskScore, payment.getAmount());
+    }
+    
+    /**
+     * Policy currently applied to new payments (used as the baseline for backtests)
+     */
+    public RiskPolicy getCurrentPolicy() {
+        return CURRENT_POLICY;
     }
 }
-
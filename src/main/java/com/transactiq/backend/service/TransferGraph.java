@@ -0,0 +1,351 @@
+package com.transactiq.backend.service;
+
+import com.transactiq.backend.event.PaymentLifecycleEvent;
+import com.transactiq.backend.util.LongHashSet;
+import com.transactiq.backend.util.LongKeyedMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory directed graph of recent money movements between accounts.
+ *
+ * Each account keeps compact parallel arrays of its outgoing and incoming neighbours with the
+ * last time money moved along each edge. Edges are added when a payment is approved (after
+ * commit) and fall out of the window lazily on reads and in a periodic sweep. Queries are
+ * bounded-depth, so checking a payment for round-tripping or mule fan-in/fan-out costs a few
+ * microseconds and never touches the database.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransferGraph {
+    
+    static final int MAX_DEGREE = 512; // Per direction; the stalest edge is replaced when full
+    private static final int MAX_EXPANSIONS = 4096; // Node budget for one cycle search
+    private static final long HOUR_MILLIS = 3_600_000L;
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${transactiq.risk.graph.window-hours:72}")
+    private long windowHours;
+    
+    @Value("${transactiq.risk.graph.max-depth:3}")
+    private int maxDepth;
+    
+    @Value("${transactiq.risk.graph.fan-threshold:8}")
+    private int fanThreshold;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private LongKeyedMap<Node> nodes = new LongKeyedMap<>(1024); // guarded by lock, replaced by warmUp
+    private List<long[]> pendingEdges; // {from, to, at, cutoff} seen while warmUp rebuilds off-lock
+    private volatile boolean ready;
+    
+    /**
+     * Network signals for a prospective payment fromAccountId -> toAccountId.
+     * The payment itself is counted in the fan-out/fan-in figures.
+     */
+    public Signals analyze(long fromAccountId, long toAccountId, long nowMillis) {
+        if (!ready) {
+            return Signals.NONE;
+        }
+        long cutoff = nowMillis - windowHours * HOUR_MILLIS;
+        lock.readLock().lock();
+        try {
+            Node sender = nodes.get(fromAccountId);
+            Node recipient = nodes.get(toAccountId);
+            int senderFanOut = sender != null ? sender.out.countSince(cutoff, toAccountId) : 0;
+            int senderFanIn = sender != null ? sender.in.countSince(cutoff, 0) : 0;
+            int recipientFanIn = recipient != null ? recipient.in.countSince(cutoff, fromAccountId) : 0;
+            int cycleLength = recipient != null ? shortestPathLength(toAccountId, fromAccountId, cutoff) : 0;
+            return new Signals(
+                cycleLength > 0 ? cycleLength + 1 : 0, // + the new edge closing the loop
+                senderFanOut + 1,
+                senderFanIn,
+                recipientFanIn + 1,
+                fanThreshold
+            );
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentEvent(PaymentLifecycleEvent event) {
+        if (event.getType() != PaymentLifecycleEvent.Type.APPROVED) {
+            return;
+        }
+        long cutoff = event.getOccurredAtMillis() - windowHours * HOUR_MILLIS;
+        lock.writeLock().lock();
+        try {
+            addEdge(nodes, event.getFromAccountId(), event.getToAccountId(), event.getOccurredAtMillis(), cutoff);
+            if (pendingEdges != null) {
+                pendingEdges.add(new long[] {event.getFromAccountId(), event.getToAccountId(),
+                    event.getOccurredAtMillis(), cutoff});
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Rebuild the window from approved payments into a new map without the lock, so
+     * analysis keeps reading the current graph meanwhile. Edges approved during the rebuild
+     * are buffered and merged in by max timestamp before the new map replaces the current one.
+     */
+    @Transactional(readOnly = true)
+    public synchronized void warmUp() {
+        long started = System.currentTimeMillis();
+        long cutoff = started - windowHours * HOUR_MILLIS;
+        long[] count = {0};
+        lock.writeLock().lock();
+        try {
+            pendingEdges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LongKeyedMap<Node> rebuilt = new LongKeyedMap<>(1024);
+        try {
+            jdbcTemplate.query(
+                "SELECT from_account_id, to_account_id, approved_at FROM payments " +
+                "WHERE status IN ('APPROVED', 'COMPLETED') AND approved_at >= ?",
+                rs -> {
+                    addEdge(rebuilt, rs.getLong(1), rs.getLong(2), rs.getTimestamp(3).getTime(), cutoff);
+                    count[0]++;
+                },
+                new Timestamp(cutoff));
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pendingEdges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            for (long[] edge : pendingEdges) {
+                addEdge(rebuilt, edge[0], edge[1], edge[2], edge[3]);
+            }
+            pendingEdges = null;
+            nodes = rebuilt;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Transfer graph ready: {} accounts from {} payments in the last {} h in {} ms",
+            rebuilt.size(), count[0], windowHours, System.currentTimeMillis() - started);
+    }
+    
+    /**
+     * Drop edges that slid out of the window and accounts left without edges
+     */
+    @Scheduled(fixedDelayString = "${transactiq.risk.graph.eviction-interval-ms:300000}",
+               initialDelayString = "${transactiq.risk.graph.eviction-interval-ms:300000}")
+    public void evictExpired() {
+        if (!ready) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - windowHours * HOUR_MILLIS;
+        lock.writeLock().lock();
+        try {
+            LongHashSet empty = new LongHashSet();
+            nodes.forEach((accountId, node) -> {
+                node.out.prune(cutoff);
+                node.in.prune(cutoff);
+                if (node.out.size == 0 && node.in.size == 0) {
+                    empty.add(accountId);
+                }
+            });
+            for (long accountId : empty.toArray()) {
+                nodes.remove(accountId);
+            }
+            log.debug("Transfer graph eviction: removed {} idle accounts, {} remain", empty.size(), nodes.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private static void addEdge(LongKeyedMap<Node> target, long fromAccountId, long toAccountId, long atMillis, long cutoff) {
+        if (atMillis < cutoff || fromAccountId == toAccountId) {
+            return;
+        }
+        target.computeIfAbsent(fromAccountId, id -> new Node()).out.upsert(toAccountId, atMillis, cutoff);
+        target.computeIfAbsent(toAccountId, id -> new Node()).in.upsert(fromAccountId, atMillis, cutoff);
+    }
+    
+    /**
+     * Number of edges on the shortest recent path source -> target within maxDepth, or 0.
+     * Breadth-first over live edges with a visited set and an expansion budget.
+     */
+    private int shortestPathLength(long source, long target, long cutoff) {
+        LongHashSet visited = new LongHashSet(64);
+        visited.add(source);
+        long[] frontier = {source};
+        int expansions = 0;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            long[] next = new long[16];
+            int nextSize = 0;
+            for (long accountId : frontier) {
+                Node node = nodes.get(accountId);
+                if (node == null) {
+                    continue;
+                }
+                if (++expansions > MAX_EXPANSIONS) {
+                    return 0;
+                }
+                Adjacency out = node.out;
+                for (int i = 0; i < out.size; i++) {
+                    if (out.seen[i] < cutoff) {
+                        continue;
+                    }
+                    long neighbour = out.ids[i];
+                    if (neighbour == target) {
+                        return depth;
+                    }
+                    if (depth < maxDepth && visited.add(neighbour)) {
+                        if (nextSize == next.length) {
+                            next = Arrays.copyOf(next, nextSize << 1);
+                        }
+                        next[nextSize++] = neighbour;
+                    }
+                }
+            }
+            if (nextSize == 0) {
+                return 0;
+            }
+            frontier = Arrays.copyOf(next, nextSize);
+        }
+        return 0;
+    }
+    
+    /**
+     * Graph-derived risk signals for one payment
+     */
+    @lombok.Value
+    public static class Signals {
+        public static final Signals NONE = new Signals(0, 0, 0, 0, Integer.MAX_VALUE);
+        
+        int cycleLength;        // Length of the loop this payment would close (0 = none)
+        int senderFanOut;       // Distinct recipients of the sender in the window
+        int senderFanIn;        // Distinct accounts that paid the sender in the window
+        int recipientFanIn;     // Distinct senders into the recipient in the window
+        int fanThreshold;
+        
+        public boolean closesCycle() {
+            return cycleLength > 0;
+        }
+        
+        /**
+         * Sender pays out to many accounts (distribution mule)
+         */
+        public boolean isFanOut() {
+            return senderFanOut >= fanThreshold;
+        }
+        
+        /**
+         * Recipient collects from many accounts (collection mule)
+         */
+        public boolean isFanIn() {
+            return recipientFanIn >= fanThreshold;
+        }
+        
+        /**
+         * Sender collected from many accounts and is now moving money on
+         */
+        public boolean isPassThrough() {
+            return senderFanIn >= fanThreshold;
+        }
+    }
+    
+    private static final class Node {
+        final Adjacency out = new Adjacency();
+        final Adjacency in = new Adjacency();
+    }
+    
+    /**
+     * Neighbour ids with the last time money moved along each edge (parallel arrays)
+     */
+    private static final class Adjacency {
+        long[] ids = new long[4];
+        long[] seen = new long[4];
+        int size;
+        
+        void upsert(long neighbour, long atMillis, long cutoff) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == neighbour) {
+                    seen[i] = Math.max(seen[i], atMillis);
+                    return;
+                }
+            }
+            if (size == MAX_DEGREE) {
+                prune(cutoff);
+            }
+            if (size == MAX_DEGREE) {
+                int stalest = 0;
+                for (int i = 1; i < size; i++) {
+                    if (seen[i] < seen[stalest]) {
+                        stalest = i;
+                    }
+                }
+                ids[stalest] = neighbour;
+                seen[stalest] = atMillis;
+                return;
+            }
+            if (size == ids.length) {
+                int capacity = Math.min(MAX_DEGREE, size << 1);
+                ids = Arrays.copyOf(ids, capacity);
+                seen = Arrays.copyOf(seen, capacity);
+            }
+            ids[size] = neighbour;
+            seen[size] = atMillis;
+            size++;
+        }
+        
+        /**
+         * Live edges, not counting the given neighbour (0 = count all)
+         */
+        int countSince(long cutoff, long excluding) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (seen[i] >= cutoff && ids[i] != excluding) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        
+        void prune(long cutoff) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (seen[i] >= cutoff) {
+                    ids[kept] = ids[i];
+                    seen[kept] = seen[i];
+                    kept++;
+                }
+            }
+            size = kept;
+            if (size == 0 && ids.length > 4) {
+                ids = new long[4];
+                seen = new long[4];
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.transactiq.backend.util;
+
+/**
+ * Consecutive-failure circuit breaker for calls to one remote service.
+ *
+ * CLOSED lets every call through. After failureThreshold failures in a row it turns OPEN and
+ * rejects calls without trying them for openMillis; then it lets a single probe call through
+ * (HALF_OPEN). A successful probe closes it again, a failed one re-opens it.
+ * Thread-safe.
+ */
+public class CircuitBreaker {
+    
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+    
+    private final int failureThreshold;
+    private final long openMillis;
+    
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtMillis;
+    private boolean probeInFlight;
+    private long rejected;
+    
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+    
+    /**
+     * Whether a call may be made now; every permitted call must be followed by
+     * onSuccess() or onFailure()
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAtMillis >= openMillis) {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+    
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+    
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtMillis = System.currentTimeMillis();
+        }
+        probeInFlight = false;
+    }
+    
+    /**
+     * Give back a permit whose call was never made, without counting it either way
+     */
+    public synchronized void release() {
+        probeInFlight = false;
+    }
+    
+    /**
+     * Whether a call would currently be permitted (without taking the half-open probe)
+     */
+    public synchronized boolean isCallPermitted() {
+        return state == State.CLOSED
+            || (state == State.OPEN && System.currentTimeMillis() - openedAtMillis >= openMillis)
+            || (state == State.HALF_OPEN && !probeInFlight);
+    }
+    
+    /**
+     * Milliseconds until an open breaker lets a probe through (0 unless open)
+     */
+    public synchronized long getRetryAfterMillis() {
+        return state == State.OPEN ? Math.max(0, openedAtMillis + openMillis - System.currentTimeMillis()) : 0;
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    public synchronized long getRejected() {
+        return rejected;
+    }
+}
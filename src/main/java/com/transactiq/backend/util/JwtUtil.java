@@ -22,6 +22,13 @@ public class JwtUtil {
     @Value("${spring.security.jwt.expiration}")
     private Long expiration;
     
+    private static final String SCOPE_CLAIM = "scope";
+    
+    /**
+     * Scope of tokens that only open the approval queue stream
+     */
+    public static final String STREAM_SCOPE = "approval-stream";
+    
     private SecretKey getSigningKey() {
         return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
     }
@@ -35,6 +42,13 @@ public class JwtUtil {
         return claims.get("userId", Long.class);
     }
     
+    /**
+     * Scope of a restricted token, or null for a regular login token
+     */
+    public String extractScope(String token) {
+        return extractClaim(token, claims -> claims.get(SCOPE_CLAIM, String.class));
+    }
+    
     public Date extractExpiration(String token) {
         return extractClaim(token, Claims::getExpiration);
     }
@@ -62,12 +76,28 @@ public class JwtUtil {
         return createToken(claims, email);
     }
     
+    /**
+     * Short-lived token that can only open the approval queue stream. Browsers' EventSource
+     * cannot send an Authorization header, so it goes in the query string instead, where it
+     * may end up in access logs - hence the narrow scope and the short lifetime.
+     */
+    public String generateStreamToken(Long userId, String email, long ttlMs) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("userId", userId);
+        claims.put(SCOPE_CLAIM, STREAM_SCOPE);
+        return createToken(claims, email, ttlMs);
+    }
+    
     private String createToken(Map<String, Object> claims, String subject) {
+        return createToken(claims, subject, expiration);
+    }
+    
+    private String createToken(Map<String, Object> claims, String subject, long ttlMs) {
         return Jwts.builder()
                 .claims(claims)
                 .subject(subject)
                 .issuedAt(new Date(System.currentTimeMillis()))
-                .expiration(new Date(System.currentTimeMillis() + expiration))
+                .expiration(new Date(System.currentTimeMillis() + ttlMs))
                 .signWith(getSigningKey())
                 .compact();
     }
@@ -0,0 +1,144 @@
+package com.transactiq.backend.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of primitive {@code long} values.
+ * Value 0 is reserved as the empty marker.
+ * Not thread-safe - callers guard access with their own lock.
+ */
+public class LongHashSet {
+    
+    private static final float LOAD_FACTOR = 0.6f;
+    
+    private long[] slots;
+    private int size;
+    private int resizeAt;
+    
+    public LongHashSet() {
+        this(8);
+    }
+    
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+    
+    /**
+     * Add a value
+     * @return true if the value was not already present
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            throw new IllegalArgumentException("Value 0 is reserved");
+        }
+        int mask = slots.length - 1;
+        int slot = LongKeyedMap.mix(value) & mask;
+        while (slots[slot] != 0) {
+            if (slots[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(slots.length << 1);
+        }
+        return true;
+    }
+    
+    public boolean contains(long value) {
+        if (value == 0) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        int slot = LongKeyedMap.mix(value) & mask;
+        while (slots[slot] != 0) {
+            if (slots[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+    
+    /**
+     * Remove a value using backward-shift deletion so probe chains stay intact
+     * @return true if the value was present
+     */
+    public boolean remove(long value) {
+        if (value == 0) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        int gap = LongKeyedMap.mix(value) & mask;
+        while (slots[gap] != value) {
+            if (slots[gap] == 0) {
+                return false;
+            }
+            gap = (gap + 1) & mask;
+        }
+        int next = (gap + 1) & mask;
+        while (slots[next] != 0) {
+            int home = LongKeyedMap.mix(slots[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = slots[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[gap] = 0;
+        size--;
+        return true;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+    
+    /**
+     * Copy the values into a new array (unordered)
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int i = 0;
+        for (long value : slots) {
+            if (value != 0) {
+                result[i++] = value;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Approximate heap footprint of the backing table in bytes
+     */
+    public long footprintBytes() {
+        return 16L + 8L * slots.length;
+    }
+    
+    private void rehash(int newCapacity) {
+        long[] old = slots;
+        allocate(newCapacity);
+        int mask = newCapacity - 1;
+        for (long value : old) {
+            if (value != 0) {
+                int slot = LongKeyedMap.mix(value) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = value;
+            }
+        }
+    }
+    
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+}
@@ -0,0 +1,171 @@
+package com.transactiq.backend.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point amount: a long count of hundredths plus the CurrencyRegistry index of its currency.
+ *
+ * Matches the numeric(19,2) amount and balance columns exactly, so values read from the
+ * database convert without loss. Rounding follows the database and the existing BigDecimal
+ * code: HALF_UP (half away from zero) to 2 dp. Arithmetic never silently overflows -
+ * adding or subtracting throws, and conversion falls back to BigDecimal for huge products.
+ * Amounts of different currencies cannot be combined.
+ */
+public final class Money implements Comparable<Money> {
+    
+    public static final int SCALE = 2;
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+        1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L
+    };
+    
+    private final long minor;
+    private final int currencyIndex;
+    
+    private Money(long minor, int currencyIndex) {
+        this.minor = minor;
+        this.currencyIndex = currencyIndex;
+    }
+    
+    public static Money ofMinor(long minor, int currencyIndex) {
+        return new Money(minor, currencyIndex);
+    }
+    
+    /**
+     * Amount rounded HALF_UP to hundredths (exact for values read from 2 dp columns)
+     */
+    public static Money of(BigDecimal amount, int currencyIndex) {
+        return new Money(toMinor(amount), currencyIndex);
+    }
+    
+    /**
+     * Hundredths of a decimal amount, rounded HALF_UP; throws if it does not fit a long
+     */
+    public static long toMinor(BigDecimal amount) {
+        int scale = amount.scale();
+        if (scale == 0) {
+            return Math.multiplyExact(amount.longValueExact(), POWERS_OF_TEN[SCALE]);
+        }
+        if (scale > 0 && scale <= SCALE) {
+            // Common case: no rounding needed (one small allocation, no BigInteger)
+            return amount.movePointRight(SCALE).longValueExact();
+        }
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).movePointRight(SCALE).longValueExact();
+    }
+    
+    public long getMinor() {
+        return minor;
+    }
+    
+    public int getCurrencyIndex() {
+        return currencyIndex;
+    }
+    
+    public Money plus(Money other) {
+        requireSameCurrency(other);
+        return new Money(Math.addExact(minor, other.minor), currencyIndex);
+    }
+    
+    public Money minus(Money other) {
+        requireSameCurrency(other);
+        return new Money(Math.subtractExact(minor, other.minor), currencyIndex);
+    }
+    
+    public boolean isLessThan(Money other) {
+        return compareTo(other) < 0;
+    }
+    
+    public int signum() {
+        return Long.signum(minor);
+    }
+    
+    /**
+     * Convert with a rate given as an unscaled long and its scale (1 this currency = rate target),
+     * rounding HALF_UP to hundredths
+     */
+    public Money convert(long rateUnscaled, int rateScale, int targetCurrencyIndex) {
+        return new Money(multiplyRounded(minor, rateUnscaled, rateScale), targetCurrencyIndex);
+    }
+    
+    /**
+     * Convert with a decimal rate (1 this currency = rate target), rounding HALF_UP to hundredths
+     */
+    public Money convert(BigDecimal rate, int targetCurrencyIndex) {
+        return new Money(convertMinor(minor, rate), targetCurrencyIndex);
+    }
+    
+    /**
+     * Hundredths times a decimal rate, rounded HALF_UP to hundredths
+     */
+    public static long convertMinor(long minor, BigDecimal rate) {
+        int rateScale = rate.scale();
+        if (rateScale >= 0 && rateScale < POWERS_OF_TEN.length && rate.precision() < 19) {
+            long rateUnscaled = rateScale == 0 ? rate.longValueExact() : rate.movePointRight(rateScale).longValueExact();
+            return multiplyRounded(minor, rateUnscaled, rateScale);
+        }
+        return toMinor(BigDecimal.valueOf(minor, SCALE).multiply(rate));
+    }
+    
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+    
+    @Override
+    public int compareTo(Money other) {
+        requireSameCurrency(other);
+        return Long.compare(minor, other.minor);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        Money other = (Money) o;
+        return minor == other.minor && currencyIndex == other.currencyIndex;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor) * 31 + currencyIndex;
+    }
+    
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString() + " #" + currencyIndex;
+    }
+    
+    /**
+     * value * rateUnscaled / 10^rateScale rounded HALF_UP, falling back to BigDecimal on overflow
+     */
+    static long multiplyRounded(long value, long rateUnscaled, int rateScale) {
+        long high = Math.multiplyHigh(value, rateUnscaled);
+        long product = value * rateUnscaled;
+        if ((high == 0 && product >= 0) || (high == -1 && product < 0)) {
+            if (rateScale == 0) {
+                return product;
+            }
+            long divisor = POWERS_OF_TEN[rateScale];
+            long quotient = product / divisor;
+            long remainder = product % divisor;
+            if (Math.abs(remainder) * 2 >= divisor) {
+                quotient += Long.signum(product);
+            }
+            return quotient;
+        }
+        return BigDecimal.valueOf(value).multiply(BigDecimal.valueOf(rateUnscaled))
+            .movePointLeft(rateScale)
+            .setScale(0, RoundingMode.HALF_UP)
+            .longValueExact();
+    }
+    
+    private void requireSameCurrency(Money other) {
+        if (currencyIndex != other.currencyIndex) {
+            throw new IllegalArgumentException("Cannot combine amounts in different currencies");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.transactiq.backend.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical computations: the first caller for a key runs it, callers
+ * arriving while it is in flight wait for and share its result (or its exception).
+ *
+ * Nothing is cached - the key is released as soon as the computation finishes, so the next
+ * caller starts a fresh one. Put everything the result depends on (endpoint, role, data
+ * version) into the key. Shared results must not be modified by callers. Waiting callers
+ * give up after waitTimeoutMs with a RuntimeException, so a stuck computation cannot pile
+ * up every request behind it. Thread-safe.
+ */
+public class SingleFlight<K, V> {
+    
+    private static final long DEFAULT_WAIT_TIMEOUT_MS = 30_000;
+    
+    private final long waitTimeoutMs;
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    
+    public SingleFlight() {
+        this(DEFAULT_WAIT_TIMEOUT_MS);
+    }
+    
+    public SingleFlight(long waitTimeoutMs) {
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+    
+    public V execute(K key, Supplier<V> computation) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            shared.increment();
+            return await(existing);
+        }
+        
+        executed.increment();
+        try {
+            V value = computation.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+    
+    private V await(CompletableFuture<V> flight) {
+        try {
+            return flight.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            throw new RuntimeException("Timed out after " + waitTimeoutMs + " ms waiting for a shared computation");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for a shared computation");
+        }
+    }
+    
+    /**
+     * Computations actually run
+     */
+    public long getExecuted() {
+        return executed.sum();
+    }
+    
+    /**
+     * Calls answered with another caller's in-flight result
+     */
+    public long getShared() {
+        return shared.sum();
+    }
+    
+    /**
+     * Waiting calls that gave up after waitTimeoutMs
+     */
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+}